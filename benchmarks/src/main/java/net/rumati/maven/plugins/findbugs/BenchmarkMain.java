@@ -0,0 +1,26 @@
+package net.rumati.maven.plugins.findbugs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate is reported with the throughput. Accepts the
+ * usual JMH command line options, such as <tt>-p bugs=1000000</tt> or a benchmark name pattern.
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args)
+            throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()){
+            options.include(ReportBenchmarks.class.getSimpleName());
+        }
+        options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
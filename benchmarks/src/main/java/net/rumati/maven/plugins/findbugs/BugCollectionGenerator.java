@@ -0,0 +1,266 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes synthetic FindBugs BugCollection XML, in the format written by <tt>-xml:withMessages</tt>, with a given
+ * number of packages, classes, bug types and bugs. The output only depends on the counts and the seed, so the same
+ * arguments always give the same file.
+ * <p>
+ * Usage: <tt>BugCollectionGenerator output packages classesPerPackage types bugs [seed]</tt>
+ */
+public class BugCollectionGenerator
+{
+    private static final String[] CATEGORIES = {"CORRECTNESS", "BAD_PRACTICE", "PERFORMANCE", "STYLE",
+        "MT_CORRECTNESS", "MALICIOUS_CODE", "SECURITY", "I18N"};
+    private int packages = 10;
+    private int classesPerPackage = 20;
+    private int types = 50;
+    private int bugs = 1000;
+    private long seed = 42;
+
+    public BugCollectionGenerator packages(int packages)
+    {
+        this.packages = packages;
+        return this;
+    }
+
+    public BugCollectionGenerator classesPerPackage(int classesPerPackage)
+    {
+        this.classesPerPackage = classesPerPackage;
+        return this;
+    }
+
+    public BugCollectionGenerator types(int types)
+    {
+        this.types = types;
+        return this;
+    }
+
+    public BugCollectionGenerator bugs(int bugs)
+    {
+        this.bugs = bugs;
+        return this;
+    }
+
+    public BugCollectionGenerator seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sizes the collection like a typical code base with the given number of bugs: about one bug per five classes,
+     * twenty classes per package, and up to two hundred bug types.
+     */
+    public static BugCollectionGenerator forBugs(int bugs)
+    {
+        int classes = Math.max(bugs / 5, 1);
+        return new BugCollectionGenerator().bugs(bugs).packages(Math.max(classes / 20, 1)).classesPerPackage(20)
+                .types(Math.min(Math.max(bugs / 10, 1), 200));
+    }
+
+    public void write(File file)
+            throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        try{
+            write(out);
+        }finally{
+            out.close();
+        }
+    }
+
+    public void write(OutputStream out)
+            throws IOException
+    {
+        try{
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writeCollection(xml);
+            xml.close();
+        }catch (XMLStreamException e){
+            throw new IOException("Could not write bug collection", e);
+        }
+    }
+
+    private void writeCollection(XMLStreamWriter xml)
+            throws XMLStreamException
+    {
+        Random random = new Random(seed);
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement("BugCollection");
+        xml.writeAttribute("version", "2.0.0");
+        xml.writeAttribute("sequence", "0");
+        xml.writeAttribute("timestamp", "0");
+        xml.writeAttribute("analysisTimestamp", "0");
+        xml.writeAttribute("release", "");
+
+        xml.writeStartElement("Project");
+        xml.writeAttribute("projectName", "synthetic");
+        xml.writeStartElement("Jar");
+        xml.writeCharacters("/synthetic/target/classes");
+        xml.writeEndElement();
+        xml.writeEndElement();
+
+        int classes = packages * classesPerPackage;
+        for (int i = 0; i < bugs; i++){
+            String type = getType(random.nextInt(types));
+            String className = getClassName(random.nextInt(classes));
+            String methodName = "method" + random.nextInt(40);
+            int line = 1 + random.nextInt(2000);
+            String sourcePath = className.replace('.', '/') + ".java";
+
+            xml.writeStartElement("BugInstance");
+            xml.writeAttribute("type", type);
+            xml.writeAttribute("priority", Integer.toString(1 + random.nextInt(3)));
+            xml.writeAttribute("abbrev", type.substring(0, 2));
+            xml.writeAttribute("category", getCategory(type));
+            xml.writeAttribute("instanceHash", Long.toHexString(random.nextLong()));
+            xml.writeAttribute("instanceOccurrenceNum", "0");
+            xml.writeAttribute("instanceOccurrenceMax", "0");
+
+            xml.writeStartElement("ShortMessage");
+            xml.writeCharacters("Synthetic bug of type " + type);
+            xml.writeEndElement();
+            xml.writeStartElement("LongMessage");
+            xml.writeCharacters("Synthetic bug of type " + type + " in " + className + "." + methodName
+                    + "(String, int) which dereferences a value that may be null on some path & more");
+            xml.writeEndElement();
+
+            xml.writeStartElement("Class");
+            xml.writeAttribute("classname", className);
+            xml.writeAttribute("primary", "true");
+            writeSourceLine(xml, className, sourcePath, 1, 2100, false);
+            xml.writeEndElement();
+
+            xml.writeStartElement("Method");
+            xml.writeAttribute("classname", className);
+            xml.writeAttribute("name", methodName);
+            xml.writeAttribute("signature", "(Ljava/lang/String;I)V");
+            xml.writeAttribute("isStatic", "false");
+            xml.writeAttribute("primary", "true");
+            writeSourceLine(xml, className, sourcePath, Math.max(line - 5, 1), line + 20, false);
+            xml.writeEndElement();
+
+            writeSourceLine(xml, className, sourcePath, line, line + random.nextInt(3), true);
+            xml.writeEndElement();
+        }
+
+        for (String category : CATEGORIES){
+            xml.writeStartElement("BugCategory");
+            xml.writeAttribute("category", category);
+            xml.writeStartElement("Description");
+            xml.writeCharacters(category.charAt(0) + category.substring(1).toLowerCase().replace('_', ' '));
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+
+        for (int i = 0; i < types; i++){
+            String type = getType(i);
+            xml.writeStartElement("BugPattern");
+            xml.writeAttribute("type", type);
+            xml.writeAttribute("abbrev", type.substring(0, 2));
+            xml.writeAttribute("category", getCategory(type));
+            xml.writeStartElement("ShortDescription");
+            xml.writeCharacters("Synthetic bug pattern " + type);
+            xml.writeEndElement();
+            xml.writeStartElement("Details");
+            StringBuilder details = new StringBuilder("<p>This is the description of synthetic bug pattern ");
+            details.append(type).append(".</p>");
+            for (int j = 0; j < 5; j++){
+                details.append("<p>The pattern is reported when the code does something that is usually a mistake, ")
+                        .append("such as <code>x.equals(x)</code> or ignoring a return value.</p>");
+            }
+            xml.writeCData(details.toString());
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+
+        xml.writeStartElement("Errors");
+        xml.writeAttribute("errors", "0");
+        xml.writeAttribute("missingClasses", "0");
+        xml.writeEndElement();
+
+        xml.writeStartElement("FindBugsSummary");
+        xml.writeAttribute("total_classes", Integer.toString(classes));
+        xml.writeAttribute("total_bugs", Integer.toString(bugs));
+        xml.writeAttribute("num_packages", Integer.toString(packages));
+        for (int p = 0; p < packages; p++){
+            xml.writeStartElement("PackageStats");
+            xml.writeAttribute("package", getPackageName(p));
+            for (int c = 0; c < classesPerPackage; c++){
+                xml.writeStartElement("ClassStats");
+                xml.writeAttribute("class", getClassName(p * classesPerPackage + c));
+                xml.writeAttribute("interface", "false");
+                xml.writeAttribute("size", Integer.toString(20 + random.nextInt(500)));
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+
+        xml.writeEndElement();
+        xml.writeEndDocument();
+    }
+
+    private static void writeSourceLine(XMLStreamWriter xml, String className, String sourcePath, int start, int end,
+            boolean primary)
+            throws XMLStreamException
+    {
+        xml.writeStartElement("SourceLine");
+        xml.writeAttribute("classname", className);
+        if (primary){
+            xml.writeAttribute("primary", "true");
+        }
+        xml.writeAttribute("start", Integer.toString(start));
+        xml.writeAttribute("end", Integer.toString(end));
+        xml.writeAttribute("sourcefile", sourcePath.substring(sourcePath.lastIndexOf('/') + 1));
+        xml.writeAttribute("sourcepath", sourcePath);
+        xml.writeEndElement();
+    }
+
+    private static String getType(int idx)
+    {
+        return "SY_PATTERN_" + idx;
+    }
+
+    private static String getCategory(String type)
+    {
+        int idx = Integer.parseInt(type.substring(type.lastIndexOf('_') + 1));
+        return CATEGORIES[idx % CATEGORIES.length];
+    }
+
+    private String getPackageName(int idx)
+    {
+        return "com.example.synthetic.module" + (idx % 10) + ".pkg" + idx;
+    }
+
+    private String getClassName(int idx)
+    {
+        return getPackageName(idx / classesPerPackage) + ".Synthetic" + idx;
+    }
+
+    public static void main(String[] args)
+            throws IOException
+    {
+        if (args.length < 5){
+            System.err.println("Usage: BugCollectionGenerator output packages classesPerPackage types bugs [seed]");
+            System.exit(1);
+        }
+        BugCollectionGenerator generator = new BugCollectionGenerator().packages(Integer.parseInt(args[1]))
+                .classesPerPackage(Integer.parseInt(args[2])).types(Integer.parseInt(args[3]))
+                .bugs(Integer.parseInt(args[4]));
+        if (args.length > 5){
+            generator.seed(Long.parseLong(args[5]));
+        }
+        generator.write(new File(args[0]));
+    }
+}
@@ -0,0 +1,488 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the plugin end to end on a generated multi-module project. The project is compiled, then the
+ * <tt>findbugs</tt> goal is run twice, offline, and the wall time, the peak resident set size of the Maven process
+ * tree and the peak heap use of the Maven JVM are recorded for each phase. The results are written as JSON, and can be
+ * compared with the results of an earlier run, in which case the exit code is <tt>1</tt> if a measurement regressed
+ * by more than the tolerance.
+ * <p>
+ * The resident set size is read from <tt>/proc</tt>, and the heap use is sampled with <tt>jstat</tt>, so memory is
+ * only measured on Linux with a JDK; elsewhere it is recorded as <tt>-1</tt>.
+ * <p>
+ * Options:
+ * <ul>
+ * <li><tt>--dir</tt> the directory for the generated project, default <tt>target/e2e-project</tt></li>
+ * <li><tt>--modules</tt>, <tt>--classes</tt>, <tt>--fan-out</tt>, <tt>--bugs-per-class</tt> the project shape</li>
+ * <li><tt>--plugin-version</tt> the version of the plugin to run, default <tt>2.0.0-SNAPSHOT</tt></li>
+ * <li><tt>--mvn</tt> the Maven executable, default <tt>mvn</tt></li>
+ * <li><tt>-Dname=value</tt> a property passed to Maven, such as <tt>-Dfindbugs.incremental=true</tt></li>
+ * <li><tt>--output</tt> the results file, default <tt>target/e2e-results.json</tt></li>
+ * <li><tt>--baseline</tt> an earlier results file to compare with</li>
+ * <li><tt>--tolerance</tt> the allowed increase over the baseline, in percent, default <tt>10</tt></li>
+ * </ul>
+ */
+public class EndToEndHarness
+{
+    private static final Pattern PHASE_PATTERN = Pattern.compile("\\{\"name\": \"([^\"]*)\", \"wallMillis\": (-?\\d+), "
+            + "\"peakRssBytes\": (-?\\d+), \"peakHeapBytes\": (-?\\d+)\\}");
+    private final ReactorGenerator generator = new ReactorGenerator();
+    private final List<String> properties = new ArrayList<String>();
+    private File directory = new File("target/e2e-project");
+    private String pluginVersion = "2.0.0-SNAPSHOT";
+    private String mvn = "mvn";
+    private File output = new File("target/e2e-results.json");
+    private File baseline;
+    private int tolerance = 10;
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        EndToEndHarness harness = new EndToEndHarness();
+        harness.parseArguments(args);
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    private void parseArguments(String[] args)
+    {
+        for (int i = 0; i < args.length; i++){
+            String arg = args[i];
+            if (arg.startsWith("-D")){
+                properties.add(arg);
+                continue;
+            }
+            if (i + 1 >= args.length){
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("--dir")){
+                directory = new File(value);
+            }else if (arg.equals("--modules")){
+                generator.modules(Integer.parseInt(value));
+            }else if (arg.equals("--classes")){
+                generator.classesPerModule(Integer.parseInt(value));
+            }else if (arg.equals("--fan-out")){
+                generator.fanOut(Integer.parseInt(value));
+            }else if (arg.equals("--bugs-per-class")){
+                generator.bugsPerClass(Integer.parseInt(value));
+            }else if (arg.equals("--plugin-version")){
+                pluginVersion = value;
+            }else if (arg.equals("--mvn")){
+                mvn = value;
+            }else if (arg.equals("--output")){
+                output = new File(value);
+            }else if (arg.equals("--baseline")){
+                baseline = new File(value);
+            }else if (arg.equals("--tolerance")){
+                tolerance = Integer.parseInt(value);
+            }else{
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if a measurement regressed against the baseline.
+     */
+    private boolean run()
+            throws Exception
+    {
+        System.out.println("Generating " + generator.getModules() + " modules in " + directory);
+        generator.generate(directory);
+
+        String goal = "net.rumati.maven.plugins:findbugs-maven-plugin:" + pluginVersion + ":findbugs";
+        Map<String, Measurement> phases = new LinkedHashMap<String, Measurement>();
+        phases.put("compile", runMaven("clean", "compile"));
+        phases.put("findbugs", runMaven(goal));
+        phases.put("findbugs-repeat", runMaven(goal));
+
+        writeResults(phases);
+        System.out.println("Results written to " + output);
+        if (baseline == null){
+            return true;
+        }
+        return compare(readResults(baseline), phases);
+    }
+
+    private Measurement runMaven(String... goals)
+            throws IOException, InterruptedException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add(mvn);
+        command.add("-o");
+        command.add("-B");
+        command.add("-q");
+        command.addAll(properties);
+        for (String goal : goals){
+            command.add(goal);
+        }
+        System.out.println("Running " + command);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(directory).inheritIO().start();
+        Sampler sampler = new Sampler(getPid(process));
+        sampler.start();
+        int exitCode = process.waitFor();
+        Measurement measurement = new Measurement();
+        measurement.wallMillis = (System.nanoTime() - start) / 1000000;
+        sampler.finish();
+        measurement.peakRssBytes = sampler.peakRss;
+        measurement.peakHeapBytes = sampler.peakHeap;
+        if (exitCode != 0){
+            throw new IOException("Maven failed with exit code " + exitCode);
+        }
+        System.out.println("  " + measurement);
+        return measurement;
+    }
+
+    private void writeResults(Map<String, Measurement> phases)
+            throws IOException
+    {
+        File parent = output.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+        try{
+            out.write("{\n");
+            out.write("  \"config\": {\"modules\": " + generator.getModules() + ", \"classesPerModule\": "
+                    + generator.getClassesPerModule() + ", \"fanOut\": " + generator.getFanOut()
+                    + ", \"bugsPerClass\": " + generator.getBugsPerClass() + ", \"properties\": \""
+                    + properties.toString().replace("\\", "\\\\").replace("\"", "\\\"") + "\"},\n");
+            out.write("  \"phases\": [\n");
+            int i = 0;
+            for (Map.Entry<String, Measurement> phase : phases.entrySet()){
+                Measurement m = phase.getValue();
+                out.write("    {\"name\": \"" + phase.getKey() + "\", \"wallMillis\": " + m.wallMillis
+                        + ", \"peakRssBytes\": " + m.peakRssBytes + ", \"peakHeapBytes\": " + m.peakHeapBytes + "}");
+                out.write(++i < phases.size() ? ",\n" : "\n");
+            }
+            out.write("  ]\n");
+            out.write("}\n");
+        }finally{
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the phases of a results file written by this harness.
+     */
+    private static Map<String, Measurement> readResults(File file)
+            throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try{
+            String line;
+            while ((line = in.readLine()) != null){
+                content.append(line).append('\n');
+            }
+        }finally{
+            in.close();
+        }
+        Map<String, Measurement> phases = new LinkedHashMap<String, Measurement>();
+        Matcher matcher = PHASE_PATTERN.matcher(content);
+        while (matcher.find()){
+            Measurement m = new Measurement();
+            m.wallMillis = Long.parseLong(matcher.group(2));
+            m.peakRssBytes = Long.parseLong(matcher.group(3));
+            m.peakHeapBytes = Long.parseLong(matcher.group(4));
+            phases.put(matcher.group(1), m);
+        }
+        return phases;
+    }
+
+    private boolean compare(Map<String, Measurement> baselinePhases, Map<String, Measurement> phases)
+    {
+        boolean ok = true;
+        for (Map.Entry<String, Measurement> phase : phases.entrySet()){
+            Measurement before = baselinePhases.get(phase.getKey());
+            if (before == null){
+                continue;
+            }
+            Measurement after = phase.getValue();
+            ok &= compare(phase.getKey(), "wall time", before.wallMillis, after.wallMillis);
+            ok &= compare(phase.getKey(), "peak RSS", before.peakRssBytes, after.peakRssBytes);
+            ok &= compare(phase.getKey(), "peak heap", before.peakHeapBytes, after.peakHeapBytes);
+        }
+        System.out.println(ok ? "No regressions against " + baseline : "Regressions against " + baseline);
+        return ok;
+    }
+
+    private boolean compare(String phase, String metric, long before, long after)
+    {
+        if (before <= 0 || after < 0){
+            return true;
+        }
+        long change = (after - before) * 100 / before;
+        boolean regressed = change > tolerance;
+        System.out.println((regressed ? "REGRESSION " : "           ") + phase + " " + metric + ": " + before + " -> "
+                + after + " (" + (change >= 0 ? "+" : "") + change + "%)");
+        return !regressed;
+    }
+
+    /**
+     * @return the pid of a process, from <tt>Process.pid()</tt> on Java 9 and later, or from the private field of the
+     *         Unix implementation on Java 8, or <tt>-1</tt> if neither is available.
+     */
+    private static int getPid(Process process)
+    {
+        try{
+            return ((Long)Process.class.getMethod("pid").invoke(process)).intValue();
+        }catch (Exception e){
+            // Java 8
+        }
+        try{
+            java.lang.reflect.Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        }catch (Exception e){
+            return -1;
+        }
+    }
+
+    private static class Measurement
+    {
+        private long wallMillis;
+        private long peakRssBytes = -1;
+        private long peakHeapBytes = -1;
+
+        @Override
+        public String toString()
+        {
+            return wallMillis + " ms, peak RSS " + (peakRssBytes >> 20) + " MB, peak heap " + (peakHeapBytes >> 20)
+                    + " MB";
+        }
+    }
+
+    /**
+     * Samples the resident set size of a process tree from <tt>/proc</tt>, and the heap use of the first JVM in the
+     * tree with <tt>jstat</tt>, until the process exits.
+     */
+    private static class Sampler
+            extends Thread
+    {
+        private static final long INTERVAL = 100;
+        private final int pid;
+        private volatile boolean finished;
+        private long peakRss = -1;
+        private long peakHeap = -1;
+        private Process jstat;
+
+        private Sampler(int pid)
+        {
+            this.pid = pid;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            if (pid < 0 || !new File("/proc/" + pid).isDirectory()){
+                return;
+            }
+            while (!finished){
+                Set<Integer> tree = getProcessTree(pid);
+                long rss = 0;
+                for (int p : tree){
+                    rss += readRss(p);
+                }
+                synchronized (this){
+                    peakRss = Math.max(peakRss, rss);
+                }
+                if (jstat == null){
+                    startJstat(tree);
+                }
+                try{
+                    Thread.sleep(INTERVAL);
+                }catch (InterruptedException e){
+                    return;
+                }
+            }
+        }
+
+        private void startJstat(Set<Integer> tree)
+        {
+            for (int p : tree){
+                if (!isJava(p)){
+                    continue;
+                }
+                try{
+                    File jstatExecutable = new File(new File(System.getProperty("java.home"), "bin"), "jstat");
+                    if (!jstatExecutable.isFile()){
+                        jstatExecutable = new File(new File(System.getProperty("java.home"), "../bin"), "jstat");
+                    }
+                    jstat = new ProcessBuilder(jstatExecutable.getPath(), "-gc", Integer.toString(p), "100")
+                            .redirectErrorStream(true).start();
+                }catch (IOException e){
+                    jstat = null;
+                    return;
+                }
+                final BufferedReader in = new BufferedReader(new InputStreamReader(jstat.getInputStream()));
+                Thread reader = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        readJstat(in);
+                    }
+                };
+                reader.setDaemon(true);
+                reader.start();
+                return;
+            }
+        }
+
+        /**
+         * Reads <tt>jstat -gc</tt> output, in which the used sizes of the survivor, eden and old spaces are in the
+         * columns ending with <tt>U</tt>, in kilobytes.
+         */
+        private void readJstat(BufferedReader in)
+        {
+            try{
+                String[] header = null;
+                String line;
+                while ((line = in.readLine()) != null){
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length > 0 && columns[0].equals("S0C")){
+                        header = columns;
+                        continue;
+                    }
+                    if (header == null || columns.length != header.length){
+                        continue;
+                    }
+                    double used = 0;
+                    for (int i = 0; i < header.length; i++){
+                        if (header[i].equals("S0U") || header[i].equals("S1U") || header[i].equals("EU")
+                                || header[i].equals("OU")){
+                            used += Double.parseDouble(columns[i]);
+                        }
+                    }
+                    synchronized (this){
+                        peakHeap = Math.max(peakHeap, (long)(used * 1024));
+                    }
+                }
+            }catch (IOException e){
+                // The JVM exited
+            }catch (NumberFormatException e){
+                // Not a sample line
+            }
+        }
+
+        private void finish()
+                throws InterruptedException
+        {
+            finished = true;
+            join();
+            if (jstat != null){
+                jstat.destroy();
+            }
+        }
+
+        private static Set<Integer> getProcessTree(int root)
+        {
+            Map<Integer, List<Integer>> children = new LinkedHashMap<Integer, List<Integer>>();
+            File[] processes = new File("/proc").listFiles();
+            if (processes != null){
+                for (File process : processes){
+                    if (!process.getName().matches("\\d+")){
+                        continue;
+                    }
+                    int ppid = readParent(process);
+                    if (ppid < 0){
+                        continue;
+                    }
+                    List<Integer> list = children.get(ppid);
+                    if (list == null){
+                        list = new ArrayList<Integer>();
+                        children.put(ppid, list);
+                    }
+                    list.add(Integer.parseInt(process.getName()));
+                }
+            }
+            Set<Integer> tree = new HashSet<Integer>();
+            List<Integer> queue = new ArrayList<Integer>();
+            queue.add(root);
+            while (!queue.isEmpty()){
+                int p = queue.remove(queue.size() - 1);
+                if (tree.add(p) && children.containsKey(p)){
+                    queue.addAll(children.get(p));
+                }
+            }
+            return tree;
+        }
+
+        private static int readParent(File process)
+        {
+            String stat = readFirstLine(new File(process, "stat"));
+            if (stat == null){
+                return -1;
+            }
+            /*
+             * The command name is in parentheses and may contain spaces, the parent pid is the second field after it.
+             */
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return fields.length > 1 ? Integer.parseInt(fields[1]) : -1;
+        }
+
+        private static long readRss(int pid)
+        {
+            BufferedReader in = null;
+            try{
+                in = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/" + pid + "/status"), "UTF-8"));
+                String line;
+                while ((line = in.readLine()) != null){
+                    if (line.startsWith("VmRSS:")){
+                        return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+                    }
+                }
+            }catch (IOException e){
+                // The process exited
+            }finally{
+                if (in != null){
+                    try{
+                        in.close();
+                    }catch (IOException e){
+                        // Ignore
+                    }
+                }
+            }
+            return 0;
+        }
+
+        private static boolean isJava(int pid)
+        {
+            String command = readFirstLine(new File("/proc/" + pid + "/comm"));
+            return command != null && command.trim().equals("java");
+        }
+
+        private static String readFirstLine(File file)
+        {
+            try{
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                try{
+                    return in.readLine();
+                }finally{
+                    in.close();
+                }
+            }catch (IOException e){
+                return null;
+            }
+        }
+    }
+}
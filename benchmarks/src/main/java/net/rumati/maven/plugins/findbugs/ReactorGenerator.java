@@ -0,0 +1,200 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Generates a synthetic multi-module Maven project for the end to end harness. Each module depends on up to
+ * <tt>fanOut</tt> of the modules before it, and each class uses classes of those modules and contains one of a set of
+ * bug patterns FindBugs reports, so the analysis has both bugs to report and dependencies to resolve.
+ */
+public class ReactorGenerator
+{
+    static final String GROUP_ID = "net.rumati.maven.plugins.benchmark";
+    private static final String[] BUG_PATTERNS = {"ES_COMPARING_STRINGS_WITH_EQ", "RV_RETURN_VALUE_IGNORED",
+        "NP_ALWAYS_NULL", "DM_STRING_CTOR", "URF_UNREAD_FIELD", "EC_UNRELATED_TYPES"};
+    private int modules = 10;
+    private int classesPerModule = 50;
+    private int fanOut = 2;
+    private int bugsPerClass = 1;
+
+    public ReactorGenerator modules(int modules)
+    {
+        this.modules = modules;
+        return this;
+    }
+
+    public ReactorGenerator classesPerModule(int classesPerModule)
+    {
+        this.classesPerModule = classesPerModule;
+        return this;
+    }
+
+    public ReactorGenerator fanOut(int fanOut)
+    {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    /**
+     * @param bugsPerClass the number of planted bugs per class, from <tt>0</tt> to the number of bug patterns.
+     */
+    public ReactorGenerator bugsPerClass(int bugsPerClass)
+    {
+        this.bugsPerClass = Math.min(bugsPerClass, BUG_PATTERNS.length);
+        return this;
+    }
+
+    public int getModules()
+    {
+        return modules;
+    }
+
+    public int getClassesPerModule()
+    {
+        return classesPerModule;
+    }
+
+    public int getFanOut()
+    {
+        return fanOut;
+    }
+
+    public int getBugsPerClass()
+    {
+        return bugsPerClass;
+    }
+
+    /**
+     * Writes the project. Existing files are overwritten.
+     * @param directory the directory of the parent project.
+     */
+    public void generate(File directory)
+            throws IOException
+    {
+        StringBuilder moduleList = new StringBuilder();
+        for (int m = 0; m < modules; m++){
+            moduleList.append("        <module>").append(getModuleName(m)).append("</module>\n");
+        }
+        write(new File(directory, "pom.xml"), "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>reactor</artifactId>\n"
+                + "    <version>1.0</version>\n"
+                + "    <packaging>pom</packaging>\n"
+                + "    <properties>\n"
+                + "        <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n"
+                + "        <maven.compiler.source>1.8</maven.compiler.source>\n"
+                + "        <maven.compiler.target>1.8</maven.compiler.target>\n"
+                + "    </properties>\n"
+                + "    <modules>\n" + moduleList + "    </modules>\n"
+                + "</project>\n");
+
+        for (int m = 0; m < modules; m++){
+            generateModule(new File(directory, getModuleName(m)), m);
+        }
+    }
+
+    private void generateModule(File directory, int module)
+            throws IOException
+    {
+        StringBuilder dependencies = new StringBuilder();
+        for (int d = Math.max(module - fanOut, 0); d < module; d++){
+            dependencies.append("        <dependency>\n")
+                    .append("            <groupId>").append(GROUP_ID).append("</groupId>\n")
+                    .append("            <artifactId>").append(getModuleName(d)).append("</artifactId>\n")
+                    .append("            <version>1.0</version>\n")
+                    .append("        </dependency>\n");
+        }
+        write(new File(directory, "pom.xml"), "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <parent>\n"
+                + "        <groupId>" + GROUP_ID + "</groupId>\n"
+                + "        <artifactId>reactor</artifactId>\n"
+                + "        <version>1.0</version>\n"
+                + "    </parent>\n"
+                + "    <artifactId>" + getModuleName(module) + "</artifactId>\n"
+                + "    <dependencies>\n" + dependencies + "    </dependencies>\n"
+                + "</project>\n");
+
+        String packageName = getPackageName(module);
+        File sourceDirectory = new File(directory, "src/main/java/" + packageName.replace('.', '/'));
+        for (int c = 0; c < classesPerModule; c++){
+            write(new File(sourceDirectory, getClassName(c) + ".java"), getSource(module, c));
+        }
+    }
+
+    private String getSource(int module, int index)
+    {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(getPackageName(module)).append(";\n\n");
+        source.append("public class ").append(getClassName(index)).append("\n{\n");
+        source.append("    private int unread;\n");
+        source.append("    private final java.util.List<String> values = new java.util.ArrayList<String>();\n\n");
+
+        source.append("    public int compute(String input)\n    {\n");
+        source.append("        int result = input.length();\n");
+        for (int d = Math.max(module - fanOut, 0); d < module; d++){
+            source.append("        result += new ").append(getPackageName(d)).append('.')
+                    .append(getClassName(index % classesPerModule)).append("().compute(input);\n");
+        }
+        if (index > 0){
+            source.append("        result += new ").append(getClassName(index - 1)).append("().compute(input);\n");
+        }
+        source.append("        for (String value : values){\n");
+        source.append("            result += value.hashCode();\n");
+        source.append("        }\n");
+        source.append("        return result;\n    }\n");
+
+        for (int b = 0; b < bugsPerClass; b++){
+            String pattern = BUG_PATTERNS[(index + b) % BUG_PATTERNS.length];
+            source.append("\n    public Object bug").append(b).append("(String input)\n    {\n");
+            if (pattern.equals("ES_COMPARING_STRINGS_WITH_EQ")){
+                source.append("        return input == \"expected\" ? Boolean.TRUE : Boolean.FALSE;\n");
+            }else if (pattern.equals("RV_RETURN_VALUE_IGNORED")){
+                source.append("        input.trim();\n        return input;\n");
+            }else if (pattern.equals("NP_ALWAYS_NULL")){
+                source.append("        String value = null;\n        return value.length() + input;\n");
+            }else if (pattern.equals("DM_STRING_CTOR")){
+                source.append("        return new String(\"constant\") + input;\n");
+            }else if (pattern.equals("URF_UNREAD_FIELD")){
+                source.append("        unread = input.length();\n        return input;\n");
+            }else{
+                source.append("        return Boolean.valueOf(input.equals(Integer.valueOf(1)));\n");
+            }
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    static String getModuleName(int module)
+    {
+        return "module" + module;
+    }
+
+    private static String getPackageName(int module)
+    {
+        return "com.example.benchmark.module" + module;
+    }
+
+    private static String getClassName(int index)
+    {
+        return "Generated" + index;
+    }
+
+    private static void write(File file, String content)
+            throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try{
+            out.write(content);
+        }finally{
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.doxia.module.xhtml.XhtmlSinkFactory;
+import org.apache.maven.doxia.sink.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the report code path: parsing the FindBugs XML output, computing the summary, and rendering the bugs
+ * by class and by category sections to an XHTML sink which discards its output. The bug collection is generated by
+ * {@link BugCollectionGenerator}, sized by the <tt>bugs</tt> parameter. Run with <tt>-p bugs=1000000</tt> for the
+ * largest size, which needs a larger heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ReportBenchmarks
+{
+    @Param({"100", "10000", "100000"})
+    private int bugs;
+    private File xmlFile;
+    private ReportModel model;
+    private ReportRenderer renderer;
+    private XhtmlSinkFactory sinkFactory;
+
+    @Setup(Level.Trial)
+    public void setUp()
+            throws Exception
+    {
+        xmlFile = File.createTempFile("findbugs-benchmark", ".xml");
+        BugCollectionGenerator.forBugs(bugs).write(xmlFile);
+        model = BugCollectionParser.parse(xmlFile);
+        renderer = new ReportRenderer(model, "default", "low", "./xref");
+        sinkFactory = new XhtmlSinkFactory();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        model.close();
+        xmlFile.delete();
+    }
+
+    /**
+     * Parses the bugs, and closes the model to delete the file to which it may have spilled the messages.
+     */
+    @Benchmark
+    public int parse()
+            throws Exception
+    {
+        ReportModel parsed = BugCollectionParser.parse(xmlFile);
+        try{
+            return parsed.getBugCount();
+        }finally{
+            parsed.close();
+        }
+    }
+
+    @Benchmark
+    public void summary(Blackhole blackhole)
+    {
+        blackhole.consume(model.getBugCount());
+        blackhole.consume(model.getBugCount(1));
+        blackhole.consume(model.getBugCount(2));
+        blackhole.consume(model.getBugCount(3));
+        blackhole.consume(model.getSize());
+        blackhole.consume(model.getClassCount());
+        blackhole.consume(model.getPackageCount());
+        blackhole.consume(model.getPackagesWithBugs());
+        for (ReportCategory category : model.getCategoriesWithBugs()){
+            blackhole.consume(model.getPatternsWithBugs(category.getCategory()));
+        }
+    }
+
+    @Benchmark
+    public long renderSummary()
+            throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream();
+        Sink sink = sinkFactory.createSink(out);
+        renderer.doSummary(sink);
+        sink.close();
+        return out.count;
+    }
+
+    @Benchmark
+    public long renderBugsByClass()
+            throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream();
+        Sink sink = sinkFactory.createSink(out);
+        renderer.doBugsByClassReport(sink);
+        sink.close();
+        return out.count;
+    }
+
+    @Benchmark
+    public long renderBugsByCategory()
+            throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream();
+        Sink sink = sinkFactory.createSink(out);
+        renderer.doBugsByCategoryReport(sink);
+        sink.close();
+        return out.count;
+    }
+
+    /**
+     * An in-memory destination for the rendered report, which only counts the bytes written.
+     */
+    private static class CountingOutputStream
+            extends OutputStream
+    {
+        private long count;
+
+        @Override
+        public void write(int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            count += len;
+        }
+    }
+}
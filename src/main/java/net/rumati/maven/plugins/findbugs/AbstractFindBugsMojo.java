@@ -0,0 +1,463 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * The parameters of the FindBugs analysis and the code which runs it, shared by the report and the other goals.
+ */
+public abstract class AbstractFindBugsMojo
+        extends AbstractMojo
+{
+    /**
+     * The project for which to run the analysis.
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+    /**
+     * The minimum priority which a bug must have to appear on the report. Possible values are
+     * <tt>low</tt>, <tt>medium</tt> and <tt>high</tt>. If <tt>threshold</tt> is <tt>low</tt>,
+     * bugs of priorities <tt>low</tt>, <tt>medium</tt> and <tt>high</tt> will be reported. If
+     * <tt>threshold</tt> is <tt>medium</tt> only bugs of priorities <tt>medium</tt> and <tt>high</tt>
+     * will be reported. If <tt>threshold</tt> is <tt>high</tt> only <tt>high</tt> priority bugs
+     * will be reported.
+     * @parameter default-value="medium"
+     */
+    private String threshold;
+    /**
+     * The amount of effort to use when looking for bugs. Possible values are
+     * <tt>min</tt>, <tt>less</tt>, <tt>default</tt>, <tt>more</tt> and <tt>max</tt>.
+     * @parameter default-value="default"
+     */
+    private String effort;
+    /**
+     * An exclude filter file, with a list of rules for bugs to exclude from the report.
+     * @parameter
+     */
+    private File excludeFilterFile;
+    /**
+     * Whether to run FindBugs inside the Maven JVM through the FindBugs engine API. If <tt>false</tt>, FindBugs is
+     * run through its command line launcher, using a temporary project file and XML output.
+     * @parameter default-value="true"
+     */
+    private boolean inProcess;
+    /**
+     * Whether to run FindBugs in a forked JVM, of which the heap is sized to the analyzed classes and dependencies,
+     * rather than in the Maven JVM. The heap use of each forked JVM is kept in <tt>fork.heap</tt> in the
+     * <tt>findbugs</tt> directory under the build directory, and used to size the JVMs of later builds. The JVMs
+     * forked for <tt>workers</tt> are sized the same way.
+     * @parameter expression="${findbugs.fork}" default-value="false"
+     */
+    private boolean fork;
+    /**
+     * The maximum heap of forked FindBugs JVMs, in megabytes, or 0 to size the heap to the analysis.
+     * @parameter expression="${findbugs.forkHeap}" default-value="0"
+     */
+    private int forkHeap;
+    /**
+     * The largest maximum heap, in megabytes, to which a forked FindBugs JVM is sized.
+     * @parameter expression="${findbugs.forkHeapLimit}" default-value="4096"
+     */
+    private int forkHeapLimit;
+    /**
+     * Whether to cache analysis results per class under the build directory, and only analyze the classes whose results
+     * may have changed since the previous build: the classes which changed, the classes which reference them directly
+     * or through other classes, and the classes which they reference or referenced.
+     * @parameter expression="${findbugs.incremental}" default-value="false"
+     */
+    private boolean incremental;
+    /**
+     * Whether to reuse the results of the previous build, without running FindBugs, when none of the analysis inputs
+     * changed. The inputs are the compiled classes, the source directories, the dependencies, the effort, the
+     * threshold, the exclude filter and the FindBugs version.
+     * @parameter expression="${findbugs.reuseResults}" default-value="false"
+     */
+    private boolean reuseResults;
+    /**
+     * The number of JVMs in which to analyze the classes concurrently. If greater than <tt>1</tt>, the classes are
+     * split by package into shards of similar size, each shard is analyzed in a forked JVM, and the results are
+     * merged. Detectors which look at the whole application, such as those for unread or unwritten fields, only see
+     * the classes of their own shard, so they may report slightly different results.
+     * @parameter expression="${findbugs.workers}" default-value="1"
+     */
+    private int workers;
+    /**
+     * The time, in seconds, within which to finish the analysis, or 0 for no limit. The classes are analyzed in
+     * batches, each at the highest effort, up to <tt>effort</tt>, at which the remaining classes are expected to be
+     * analyzed in time, based on the time per class size measured in earlier builds. When the time is spent, the
+     * running batch is stopped, keeping the bugs found so far, and the classes which are left are not analyzed. A
+     * forked analysis keeps no bugs when it is stopped, and an analysis through the command line launcher is not
+     * stopped. The report shows the effort at which each class was analyzed. The <tt>incremental</tt> and
+     * <tt>reuseResults</tt> parameters are ignored with a time budget.
+     * @parameter expression="${findbugs.timeBudget}" default-value="0"
+     */
+    private int timeBudget;
+    /**
+     * Whether to run the analysis in a long lived daemon JVM, which is shared by the modules of a build and by later
+     * builds, so that FindBugs is loaded and warmed up once. The daemon exits after <tt>daemonIdleTimeout</tt>.
+     * @parameter expression="${findbugs.daemon}" default-value="false"
+     */
+    private boolean daemon;
+    /**
+     * The time, in seconds, after which an idle analysis daemon exits.
+     * @parameter expression="${findbugs.daemonIdleTimeout}" default-value="900"
+     */
+    private int daemonIdleTimeout;
+    /**
+     * Whether to analyze against copies of the dependency jars which hold only their class files, stored without
+     * compression. The classes are copied unchanged, so the same bugs are found. The copies are kept in
+     * <tt>auxCacheDirectory</tt>, which may be shared by all projects on the machine.
+     * @parameter expression="${findbugs.auxCache}" default-value="false"
+     */
+    private boolean auxCache;
+    /**
+     * The directory in which the copies of the dependency jars are kept.
+     * @parameter expression="${findbugs.auxCacheDirectory}" default-value="${user.home}/.m2/findbugs-cache"
+     */
+    private File auxCacheDirectory;
+    /**
+     * The size, in megabytes, beyond which the least recently used jars are removed from <tt>auxCacheDirectory</tt>.
+     * Jars used within the last day are kept, as other builds may be using them.
+     * @parameter expression="${findbugs.auxCacheSize}" default-value="1024"
+     */
+    private int auxCacheSize;
+    /**
+     * Whether to leave out the dependency jars which hold none of the classes the analyzed classes reference, directly
+     * or through other dependency classes.
+     * @parameter expression="${findbugs.pruneAuxClasspath}" default-value="false"
+     */
+    private boolean pruneAuxClasspath;
+    /**
+     * A file with the fingerprints of known bugs, written by the <tt>baseline</tt> goal. If the file exists, only the
+     * bugs which are not in the baseline are shown and counted in the report. The fingerprint of a bug does not
+     * depend on its line numbers, so known bugs stay hidden when the code around them changes.
+     * @parameter expression="${findbugs.baseline}"
+     */
+    private File baseline;
+    /**
+     * The file to which to write the metrics of the report as JSON: the time spent writing the FindBugs project file,
+     * running FindBugs, parsing its output and rendering the report, the time spent in each detector, the number of
+     * classes, dependencies and bugs, and the peak heap use of the Maven JVM. With <tt>workers</tt>, the phases of the
+     * shards are summed under names of their own, such as <tt>shardFindbugs</tt>, and <tt>findbugs</tt> is the time
+     * from the start of the first shard to the end of the last. A summary is written to the log.
+     * @parameter expression="${findbugs.metricsFile}" default-value="${project.build.directory}/findbugs-metrics.json"
+     */
+    private File metricsFile;
+    /**
+     * A git revision, such as <tt>origin/master</tt>. If set, only the classes compiled from the Java source files
+     * which differ from the revision in the working tree are analyzed, with the other classes of the module on the
+     * auxiliary class path, so that the analysis takes time in proportion to the size of the change. The report then
+     * only shows the bugs in those classes. Detectors are not profiled and no history is kept for such reports. If
+     * git fails, all classes are analyzed.
+     * @parameter expression="${findbugs.changedSince}"
+     */
+    private String changedSince;
+    /**
+     * The artifacts of this plugin, used as the class path of forked FindBugs JVMs.
+     * @parameter default-value="${plugin.artifacts}"
+     * @required
+     * @readonly
+     */
+    private List<Artifact> pluginArtifacts;
+
+    protected MavenProject getProject()
+    {
+        return project;
+    }
+
+    String getThreshold()
+    {
+        return threshold;
+    }
+
+    String getEffort()
+    {
+        return effort;
+    }
+
+    File getBaseline()
+    {
+        return baseline;
+    }
+
+    /**
+     * @return whether the project has compiled classes to analyze.
+     */
+    boolean hasClasses()
+    {
+        for (MavenProject analyzed : getAnalyzedProjects()){
+            if (new File(analyzed.getBuild().getOutputDirectory()).isDirectory()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the projects of which the classes are analyzed together, which is only the project itself unless this
+     * is an aggregate report.
+     */
+    List<MavenProject> getAnalyzedProjects()
+    {
+        return Collections.singletonList(project);
+    }
+
+    /**
+     * @return whether the analysis runs in the Maven JVM, which is the only place where it can be stopped early.
+     */
+    boolean isStoppable()
+    {
+        return inProcess && workers <= 1 && !fork && !daemon;
+    }
+
+    /**
+     * Creates the analysis request for the project, validating the analysis parameters.
+     * @return the analysis request.
+     * @throws MojoExecutionException if a parameter is invalid.
+     */
+    private AnalysisRequest createAnalysisRequest()
+            throws MojoExecutionException
+    {
+        AnalysisRequest request = new AnalysisRequest();
+        request.setProjectName(project.getName());
+        List<MavenProject> analyzedProjects = new ArrayList<MavenProject>();
+        Set<String> analyzedKeys = new HashSet<String>();
+        for (MavenProject analyzed : getAnalyzedProjects()){
+            if (new File(analyzed.getBuild().getOutputDirectory()).isDirectory()){
+                analyzedProjects.add(analyzed);
+                analyzedKeys.add(analyzed.getGroupId() + ":" + analyzed.getArtifactId());
+            }
+        }
+        /*
+         * The dependencies shared by the analyzed projects are loaded once. Dependencies on analyzed projects are left
+         * out, as their classes are analyzed.
+         */
+        Set<File> auxClasspath = new LinkedHashSet<File>();
+        for (MavenProject analyzed : analyzedProjects){
+            request.getTargets().add(new File(analyzed.getBuild().getOutputDirectory()));
+            for (Object o : analyzed.getCompileSourceRoots()){
+                request.getSourceDirs().add(o.toString());
+            }
+            for (Object o : analyzed.getArtifacts()){
+                Artifact a = (Artifact)o;
+                if (analyzedProjects.size() == 1 || !analyzedKeys.contains(a.getGroupId() + ":" + a.getArtifactId())){
+                    auxClasspath.add(a.getFile());
+                }
+            }
+        }
+        request.getAuxClasspath().addAll(auxClasspath);
+
+        String thresholdName = threshold.toLowerCase();
+        if (!thresholdName.equals("low") && !thresholdName.equals("medium") && !thresholdName.equals("high")){
+            throw new MojoExecutionException("Unkown threshold: " + threshold);
+        }
+        request.setThreshold(thresholdName);
+
+        String effortName = effort.toLowerCase();
+        if (!effortName.equals("min") && !effortName.equals("less") && !effortName.equals("default")
+                && !effortName.equals("more") && !effortName.equals("max")){
+            throw new MojoExecutionException("Unknown effort: " + effort);
+        }
+        request.setEffort(effortName);
+
+        if (excludeFilterFile != null){
+            if (!excludeFilterFile.exists()){
+                throw new MojoExecutionException("Exclude file does not exist: "
+                        + excludeFilterFile.getAbsolutePath());
+            }
+            request.setExcludeFilterFile(excludeFilterFile);
+        }
+        return request;
+    }
+
+    private Analyzer getAnalyzer(AnalysisMetrics metrics, BugLimits limits)
+    {
+        Analyzer analyzer;
+        if (workers > 1){
+            analyzer = new ShardedAnalyzer(new ForkedAnalyzer(getForkedClasspath(), getJvmSizing(workers), metrics,
+                    "shard", getLog()), workers, metrics, getLog());
+        }else if (fork){
+            analyzer = new ForkedAnalyzer(getForkedClasspath(), getJvmSizing(1), metrics, getLog());
+        }else if (daemon){
+            analyzer = new DaemonAnalyzer(getForkedClasspath(), daemonIdleTimeout, metrics, getLog());
+        }else if (inProcess){
+            analyzer = new InProcessAnalyzer(metrics, limits);
+        }else{
+            analyzer = new LauncherAnalyzer(metrics);
+        }
+        if (auxCache){
+            analyzer = new AuxJarCachingAnalyzer(analyzer, auxCacheDirectory, auxCacheSize * 1024L * 1024L, getLog());
+        }
+        if (pruneAuxClasspath){
+            analyzer = new AuxClasspathPruningAnalyzer(analyzer, getLog());
+        }
+        if (timeBudget > 0){
+            return new BudgetedAnalyzer(analyzer, timeBudget * 1000L, new File(getWorkDirectory(), "effort.profile"),
+                    metrics, getLog());
+        }
+        if (incremental){
+            analyzer = new IncrementalAnalyzer(analyzer, new File(getWorkDirectory(), "incremental.cache"), getLog());
+        }
+        if (reuseResults){
+            analyzer = new MemoizingAnalyzer(analyzer, new File(getWorkDirectory(), "result.cache"), getLog());
+        }
+        return analyzer;
+    }
+
+    /**
+     * @return the class path of forked JVMs: this plugin and its dependencies.
+     */
+    private List<File> getForkedClasspath()
+    {
+        List<File> classpath = new LinkedList<File>();
+        URL location = getClass().getProtectionDomain().getCodeSource().getLocation();
+        try{
+            /*
+             * The path of the URL is encoded, so it differs from the file path when that has spaces or non-ASCII
+             * characters.
+             */
+            classpath.add(new File(location.toURI()));
+        }catch (URISyntaxException e){
+            classpath.add(new File(location.getPath()));
+        }
+        for (Artifact a : pluginArtifacts){
+            classpath.add(a.getFile());
+        }
+        return classpath;
+    }
+
+    /**
+     * @param jvms the number of forked JVMs which run concurrently, over which the processors are divided.
+     */
+    private JvmSizing getJvmSizing(int jvms)
+    {
+        int gcThreads = Math.max(Runtime.getRuntime().availableProcessors() / jvms, 1);
+        JvmSizing sizing = new JvmSizing(new File(getWorkDirectory(), "fork.heap"), forkHeap, forkHeapLimit, gcThreads);
+        try{
+            sizing.load();
+        }catch (IOException e){
+            getLog().warn("Could not read FindBugs JVM sizing, estimating the heap of forked JVMs", e);
+        }
+        return sizing;
+    }
+
+    /**
+     * @return the directory under the build directory in which the plugin keeps files between builds.
+     */
+    File getWorkDirectory()
+    {
+        return new File(project.getBuild().getDirectory(), "findbugs");
+    }
+
+    /**
+     * Finds the classes compiled from the source files which differ from the <tt>changedSince</tt> revision.
+     * @return the class files, or <tt>null</tt> if all classes should be analyzed.
+     */
+    List<File> getChangedClasses()
+    {
+        if (changedSince == null){
+            return null;
+        }
+        try{
+            List<File> changedFiles = GitChanges.getChangedFiles(project.getBasedir(), changedSince);
+            List<File> classFiles = new ArrayList<File>();
+            for (MavenProject analyzed : getAnalyzedProjects()){
+                List<String> sourceDirs = new ArrayList<String>();
+                for (Object o : analyzed.getCompileSourceRoots()){
+                    sourceDirs.add(o.toString());
+                }
+                classFiles.addAll(GitChanges.getClassFiles(sourceDirs,
+                        new File(analyzed.getBuild().getOutputDirectory()), changedFiles));
+            }
+            getLog().info(changedFiles.size() + " files changed since " + changedSince + ", analyzing "
+                    + classFiles.size() + " classes compiled from them");
+            return classFiles;
+        }catch (IOException e){
+            getLog().warn("Could not find the files changed since " + changedSince + ", analyzing all classes", e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the analysis of the project with the configured analyzers.
+     * @param metrics the metrics to which to add the time spent in the analysis.
+     * @param omittedDetectors the class names of the detectors not to run.
+     * @param classFiles the class files to analyze, with the other classes of the project on the auxiliary class
+     * path, or <tt>null</tt> to analyze all classes.
+     * @param limits the bug limits beyond which to stop the analysis, or <tt>null</tt> to always finish it. Only an
+     * analysis which runs in the Maven JVM can be stopped early, see {@link #isStoppable()}.
+     * @return the results of the analysis, which only cover part of the classes if it was stopped.
+     * @throws MojoExecutionException if a parameter is invalid, or the analysis failed.
+     */
+    ReportModel analyze(AnalysisMetrics metrics, List<String> omittedDetectors, List<File> classFiles,
+            BugLimits limits)
+            throws MojoExecutionException
+    {
+        AnalysisRequest request = createAnalysisRequest();
+        request.getOmittedDetectors().addAll(omittedDetectors);
+        if (classFiles != null){
+            metrics.setCount("changedClasses", classFiles.size());
+            if (classFiles.isEmpty()){
+                return new ReportModel();
+            }
+            List<File> classDirectories = new ArrayList<File>(request.getTargets());
+            request.getTargets().clear();
+            request.getTargets().addAll(classFiles);
+            request.getAuxClasspath().addAll(0, classDirectories);
+        }
+        long auxClasspathBytes = 0;
+        for (File entry : request.getAuxClasspath()){
+            auxClasspathBytes += entry.length();
+        }
+        metrics.setCount("auxClasspathEntries", request.getAuxClasspath().size());
+        metrics.setCount("auxClasspathBytes", auxClasspathBytes);
+
+        ReportModel model;
+        long start = System.nanoTime();
+        try{
+            model = getAnalyzer(metrics, limits).analyze(request);
+        }catch (BugLimitExceededException e){
+            getLog().info("Stopped the FindBugs analysis, as the bugs found so far exceed the limits");
+            model = e.getModel();
+        }catch (AnalysisException e){
+            throw new MojoExecutionException("Error running FindBugs", e);
+        }
+        metrics.addTime("analysis", start);
+        return model;
+    }
+
+    void writeMetrics(AnalysisMetrics metrics, ReportModel model)
+    {
+        metrics.setCount("classes", model.getClassCount());
+        metrics.setCount("packages", model.getPackageCount());
+        metrics.setCount("bugs", model.getBugCount());
+        metrics.setCount("highPriorityBugs", model.getBugCount(1));
+        metrics.setCount("mediumPriorityBugs", model.getBugCount(2));
+        metrics.setCount("lowPriorityBugs", model.getBugCount(3));
+        metrics.recordPeakHeap();
+
+        metrics.log(getLog());
+        if (metricsFile != null){
+            try{
+                metrics.write(metricsFile);
+            }catch (IOException e){
+                getLog().warn("Could not write FindBugs metrics " + metricsFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.util.List;
+import java.util.Locale;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Generates one FindBugs report for all modules of the reactor. The classes of all modules are analyzed in one
+ * FindBugs session, with the dependencies of the modules on one auxiliary class path, so dependencies which modules
+ * share are loaded once. The report shows the number of bugs of each module. With <tt>workers</tt>, the classes of
+ * all modules are split into shards which are analyzed in parallel.
+ * @goal aggregate
+ * @aggregator
+ * @execute phase="compile"
+ * @requiresDependencyResolution compile
+ * @requiresProject
+ */
+public class AggregateReport
+        extends FindBugsReport
+{
+    /**
+     * @parameter expression="${reactorProjects}"
+     * @required
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * The report is generated for the project at which the build was started.
+     */
+    @Override
+    public boolean canGenerateReport()
+    {
+        return getProject().isExecutionRoot() && hasClasses();
+    }
+
+    @Override
+    List<MavenProject> getAnalyzedProjects()
+    {
+        return reactorProjects;
+    }
+
+    @Override
+    public String getOutputName()
+    {
+        return "findbugs-aggregate";
+    }
+
+    @Override
+    public String getName(Locale locale)
+    {
+        return "FindBugs Aggregate Report";
+    }
+
+    @Override
+    public String getDescription(Locale locale)
+    {
+        return "Source code static analysis and bug report of all modules";
+    }
+}
@@ -0,0 +1,218 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * A long lived JVM which runs FindBugs analyses for {@link DaemonAnalyzer}. Because the JVM stays alive between
+ * analyses, the FindBugs plugins and detector factories are loaded once, and the analysis code is already compiled
+ * by the JIT when later modules are analyzed.
+ * <p>
+ * The daemon listens on a loopback port, and writes the port and a random token to its state file, which only its
+ * owner can read. Clients must send the token, as raw bytes, before each request; nothing is deserialized before the
+ * token matches, so other local users cannot make the daemon read objects. Requests are handled one at a time. The
+ * daemon exits when no request arrives for the idle timeout.
+ * <p>
+ * Arguments: the state file, and the idle timeout in milliseconds.
+ */
+public class AnalysisDaemon
+{
+    static final String RESPONSE_OK = "OK";
+    static final String RESPONSE_ERROR = "ERROR";
+    /**
+     * The response to a request which was stopped at its deadline, followed by the results found until then.
+     */
+    static final String RESPONSE_OUT_OF_TIME = "OUT_OF_TIME";
+    /**
+     * The time, in milliseconds, in which a client must send the token.
+     */
+    private static final int TOKEN_TIMEOUT = 10000;
+
+    private AnalysisDaemon()
+    {
+    }
+
+    public static void main(String[] args)
+            throws IOException
+    {
+        File stateFile = new File(args[0]);
+        int idleTimeout = Integer.parseInt(args[1]);
+
+        File logFile = new File(stateFile.getPath() + ".log");
+        createOwnerOnly(logFile);
+        PrintStream log = new PrintStream(new FileOutputStream(logFile), true);
+        System.setOut(log);
+        System.setErr(log);
+
+        byte[] tokenBytes = new byte[16];
+        new SecureRandom().nextBytes(tokenBytes);
+        String token = Fingerprint.digest(tokenBytes);
+
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try{
+            writeStateFile(stateFile, serverSocket.getLocalPort(), token);
+            serverSocket.setSoTimeout(idleTimeout);
+            while (true){
+                Socket socket;
+                try{
+                    socket = serverSocket.accept();
+                }catch (SocketTimeoutException e){
+                    log.println("Idle for " + idleTimeout + "ms, exiting");
+                    break;
+                }
+                try{
+                    handle(socket, token, log);
+                }catch (Exception e){
+                    e.printStackTrace(log);
+                }finally{
+                    socket.close();
+                }
+            }
+        }finally{
+            stateFile.delete();
+            serverSocket.close();
+        }
+        System.exit(0);
+    }
+
+    private static void handle(Socket socket, String token, PrintStream log)
+            throws IOException, ClassNotFoundException
+    {
+        byte[] expected = token.getBytes("US-ASCII");
+        byte[] received = new byte[expected.length];
+        socket.setSoTimeout(TOKEN_TIMEOUT);
+        try{
+            new DataInputStream(socket.getInputStream()).readFully(received);
+        }catch (IOException e){
+            log.println("Rejected a request without a token: " + e);
+            return;
+        }
+        if (!MessageDigest.isEqual(expected, received)){
+            log.println("Rejected a request with an invalid token");
+            return;
+        }
+        socket.setSoTimeout(0);
+
+        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        AnalysisRequest request = (AnalysisRequest)in.readObject();
+        log.println("Analyzing " + request.getProjectName());
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        String response = RESPONSE_OK;
+        ReportModel model;
+        try{
+            model = new InProcessAnalyzer(metrics, null).analyze(request);
+        }catch (TimeBudgetExceededException e){
+            response = RESPONSE_OUT_OF_TIME;
+            model = e.getModel();
+        }catch (Exception e){
+            writeError(out, e, log);
+            return;
+        }catch (Error e){
+            writeError(out, e, log);
+            return;
+        }
+        try{
+            out.writeObject(response);
+            out.writeObject(model);
+            out.writeObject(metrics);
+        }finally{
+            model.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Reports a failed analysis to the client, which would otherwise only see the connection close.
+     */
+    private static void writeError(ObjectOutputStream out, Throwable e, PrintStream log)
+            throws IOException
+    {
+        e.printStackTrace(log);
+        String message = e instanceof AnalysisException ? e.getMessage() : e.toString();
+        out.writeObject(RESPONSE_ERROR);
+        out.writeObject(message + (e.getCause() == null ? "" : ": " + e.getCause()));
+        out.flush();
+    }
+
+    private static void writeStateFile(File stateFile, int port, String token)
+            throws IOException
+    {
+        File tmpFile = new File(stateFile.getPath() + ".tmp");
+        createOwnerOnly(tmpFile);
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+        try{
+            out.write(port + "\n" + token + "\n");
+        }finally{
+            out.close();
+        }
+        stateFile.delete();
+        if (!tmpFile.renameTo(stateFile)){
+            throw new IOException("Could not rename " + tmpFile + " to " + stateFile);
+        }
+    }
+
+    /**
+     * Creates an empty file, or truncates an existing one, which only its owner can read and write. The permissions are
+     * set before anything is written to the file.
+     */
+    private static void createOwnerOnly(File file)
+            throws IOException
+    {
+        file.delete();
+        if (!file.createNewFile()){
+            throw new IOException("Could not create " + file);
+        }
+        restrictToOwner(file);
+    }
+
+    /**
+     * Makes a file or directory accessible to its owner only. Java 5 has no API for file permissions, so this runs
+     * <tt>chmod</tt>. On Windows nothing is changed: the files are kept under the profile directory of the user,
+     * which other users cannot access.
+     * @throws IOException if the permissions could not be changed.
+     */
+    static void restrictToOwner(File file)
+            throws IOException
+    {
+        if (File.separatorChar == '\\'){
+            return;
+        }
+        Process process = new ProcessBuilder("chmod", file.isDirectory() ? "700" : "600", file.getAbsolutePath())
+                .redirectErrorStream(true).start();
+        try{
+            process.getOutputStream().close();
+            InputStream in = process.getInputStream();
+            try{
+                while (in.read() >= 0){
+                    // chmod only writes errors, which its exit code reports
+                }
+            }finally{
+                in.close();
+            }
+            if (process.waitFor() != 0){
+                throw new IOException("Could not restrict the permissions of " + file);
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while restricting the permissions of " + file);
+        }finally{
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package net.rumati.maven.plugins.findbugs;
+
+/**
+ * Thrown when a FindBugs analysis could not be run.
+ */
+class AnalysisException
+        extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    AnalysisException(String message)
+    {
+        super(message);
+    }
+
+    AnalysisException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,250 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects the cost of creating a report: the time spent in each phase, counts such as the number of classes and
+ * bugs, and the time FindBugs spent in each detector and analysis engine. The time of a phase is the sum over all
+ * analyses which ran it. Analyses which run concurrently, such as the shards of {@link ShardedAnalyzer}, add their
+ * times to phases of their own, so that the <tt>findbugs</tt> phase is the time the analysis took, and the
+ * <tt>shardFindbugs</tt> phase the sum of the times of the shards.
+ */
+class AnalysisMetrics
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final int LOGGED_DETECTORS = 5;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    private final Map<String, long[]> detectors = new TreeMap<String, long[]>();
+
+    /**
+     * Adds to the time spent in a phase.
+     * @param phase the phase.
+     * @param start the value of {@link System#nanoTime()} when the phase started.
+     */
+    synchronized void addTime(String phase, long start)
+    {
+        long nanos = System.nanoTime() - start;
+        Long total = phases.get(phase);
+        phases.put(phase, total == null ? nanos : total + nanos);
+    }
+
+    synchronized void setCount(String name, long count)
+    {
+        counts.put(name, count);
+    }
+
+    /**
+     * Sets a count if it is larger than the current count, for peaks measured more than once, such as in each of
+     * several forked JVMs.
+     */
+    synchronized void setMaxCount(String name, long count)
+    {
+        Long current = counts.get(name);
+        if (current == null || current < count){
+            counts.put(name, count);
+        }
+    }
+
+    /**
+     * Adds to the time FindBugs spent in a detector or analysis engine.
+     * @param name the class name of the detector or engine.
+     * @param millis the time spent, in milliseconds.
+     * @param invocations the number of times it was invoked.
+     */
+    synchronized void addDetectorTime(String name, long millis, long invocations)
+    {
+        long[] cost = detectors.get(name);
+        if (cost == null){
+            cost = new long[2];
+            detectors.put(name, cost);
+        }
+        cost[0] += millis;
+        cost[1] += invocations;
+    }
+
+    /**
+     * Adds the phase times and detector times of metrics recorded elsewhere, such as in a daemon JVM.
+     */
+    synchronized void add(AnalysisMetrics other)
+    {
+        synchronized (other){
+            for (Map.Entry<String, Long> phase : other.phases.entrySet()){
+                Long total = phases.get(phase.getKey());
+                phases.put(phase.getKey(), total == null ? phase.getValue() : total + phase.getValue());
+            }
+            for (Map.Entry<String, long[]> detector : other.detectors.entrySet()){
+                addDetectorTime(detector.getKey(), detector.getValue()[0], detector.getValue()[1]);
+            }
+        }
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools, so that {@link #recordPeakHeap()} reports the peak since now.
+     */
+    static void resetPeakHeap()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()){
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Records the sum of the peak usage of the heap memory pools of this JVM as <tt>peakHeapBytes</tt>. The heap
+     * used by forked FindBugs JVMs is not included.
+     */
+    void recordPeakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()){
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        setCount("peakHeapBytes", peak);
+    }
+
+    /**
+     * @return the time spent in each detector and analysis engine, in milliseconds, by class name.
+     */
+    synchronized Map<String, Long> getDetectorMillis()
+    {
+        Map<String, Long> millis = new TreeMap<String, Long>();
+        for (Map.Entry<String, long[]> detector : detectors.entrySet()){
+            millis.put(detector.getKey(), detector.getValue()[0]);
+        }
+        return millis;
+    }
+
+    /**
+     * @return the detectors and analysis engines, most expensive first.
+     */
+    private synchronized List<Map.Entry<String, long[]>> getDetectorsByCost()
+    {
+        List<Map.Entry<String, long[]>> list = new ArrayList<Map.Entry<String, long[]>>(detectors.entrySet());
+        Collections.sort(list, new Comparator<Map.Entry<String, long[]>>()
+        {
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2)
+            {
+                long t1 = o1.getValue()[0];
+                long t2 = o2.getValue()[0];
+                return t1 > t2 ? -1 : t1 < t2 ? 1 : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Writes the metrics as JSON, with the phase times in milliseconds.
+     */
+    synchronized void write(File file)
+            throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try{
+            out.write("{\n  \"phases\": {");
+            String separator = "\n";
+            for (Map.Entry<String, Long> phase : phases.entrySet()){
+                out.write(separator + "    " + quote(phase.getKey()) + ": " + phase.getValue() / 1000000);
+                separator = ",\n";
+            }
+            out.write("\n  },\n  \"counts\": {");
+            separator = "\n";
+            for (Map.Entry<String, Long> count : counts.entrySet()){
+                out.write(separator + "    " + quote(count.getKey()) + ": " + count.getValue());
+                separator = ",\n";
+            }
+            out.write("\n  },\n  \"detectors\": [");
+            separator = "\n";
+            for (Map.Entry<String, long[]> detector : getDetectorsByCost()){
+                out.write(separator + "    {\"name\": " + quote(detector.getKey()) + ", \"millis\": "
+                        + detector.getValue()[0] + ", \"invocations\": " + detector.getValue()[1] + "}");
+                separator = ",\n";
+            }
+            out.write("\n  ]\n}\n");
+        }finally{
+            out.close();
+        }
+    }
+
+    /**
+     * Logs a summary of the metrics: the phase times and counts at info level, with the most expensive detectors,
+     * and the time of every detector at debug level.
+     */
+    synchronized void log(Log log)
+    {
+        StringBuilder sb = new StringBuilder("FindBugs report metrics:");
+        for (Map.Entry<String, Long> phase : phases.entrySet()){
+            sb.append(' ').append(phase.getKey()).append('=').append(formatMillis(phase.getValue() / 1000000));
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()){
+            sb.append(' ').append(count.getKey()).append('=').append(count.getValue());
+        }
+        log.info(sb.toString());
+
+        List<Map.Entry<String, long[]>> list = getDetectorsByCost();
+        if (list.isEmpty()){
+            return;
+        }
+        sb.setLength(0);
+        sb.append("Most expensive FindBugs detectors:");
+        for (int i = 0; i < Math.min(list.size(), LOGGED_DETECTORS); i++){
+            sb.append(' ').append(getSimpleName(list.get(i).getKey())).append('=')
+                    .append(formatMillis(list.get(i).getValue()[0]));
+        }
+        log.info(sb.toString());
+        if (log.isDebugEnabled()){
+            for (Map.Entry<String, long[]> detector : list){
+                log.debug("  " + detector.getKey() + ": " + detector.getValue()[0] + " ms, " + detector.getValue()[1]
+                        + " invocations");
+            }
+        }
+    }
+
+    private static String formatMillis(long millis)
+    {
+        return String.format(Locale.ENGLISH, "%.1fs", millis / 1000.0);
+    }
+
+    private static String getSimpleName(String className)
+    {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String quote(String s)
+    {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\'){
+                sb.append('\\').append(c);
+            }else if (c < 0x20){
+                sb.append(String.format("\\u%04x", (int)c));
+            }else{
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
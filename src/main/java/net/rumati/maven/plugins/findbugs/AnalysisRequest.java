@@ -0,0 +1,145 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes what FindBugs should analyze, and how.
+ */
+class AnalysisRequest
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private String projectName;
+    private final List<File> targets = new ArrayList<File>();
+    private final List<String> sourceDirs = new ArrayList<String>();
+    private final List<File> auxClasspath = new ArrayList<File>();
+    private String effort = "default";
+    private String threshold = "medium";
+    private File excludeFilterFile;
+    private final List<String> omittedDetectors = new ArrayList<String>();
+    private long deadline;
+
+    /**
+     * @return a copy of this request, which may be modified without affecting this request.
+     */
+    public AnalysisRequest copy()
+    {
+        AnalysisRequest copy = new AnalysisRequest();
+        copy.projectName = projectName;
+        copy.targets.addAll(targets);
+        copy.sourceDirs.addAll(sourceDirs);
+        copy.auxClasspath.addAll(auxClasspath);
+        copy.effort = effort;
+        copy.threshold = threshold;
+        copy.excludeFilterFile = excludeFilterFile;
+        copy.omittedDetectors.addAll(omittedDetectors);
+        copy.deadline = deadline;
+        return copy;
+    }
+
+    public String getProjectName()
+    {
+        return projectName;
+    }
+
+    public void setProjectName(String projectName)
+    {
+        this.projectName = projectName;
+    }
+
+    /**
+     * @return the class directories, jar files and class files to analyze.
+     */
+    public List<File> getTargets()
+    {
+        return targets;
+    }
+
+    public List<String> getSourceDirs()
+    {
+        return sourceDirs;
+    }
+
+    /**
+     * @return the class path entries which are referenced by, but not analyzed with, the targets.
+     */
+    public List<File> getAuxClasspath()
+    {
+        return auxClasspath;
+    }
+
+    /**
+     * @return the effort, one of <tt>min</tt>, <tt>less</tt>, <tt>default</tt>, <tt>more</tt> or <tt>max</tt>.
+     */
+    public String getEffort()
+    {
+        return effort;
+    }
+
+    public void setEffort(String effort)
+    {
+        this.effort = effort;
+    }
+
+    /**
+     * @return the threshold, one of <tt>low</tt>, <tt>medium</tt> or <tt>high</tt>.
+     */
+    public String getThreshold()
+    {
+        return threshold;
+    }
+
+    public void setThreshold(String threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the lowest bug priority to report, <tt>1</tt> being the highest priority.
+     */
+    public int getPriorityThreshold()
+    {
+        if (threshold.equals("high")){
+            return 1;
+        }else if (threshold.equals("medium")){
+            return 2;
+        }else{
+            return 3;
+        }
+    }
+
+    public File getExcludeFilterFile()
+    {
+        return excludeFilterFile;
+    }
+
+    public void setExcludeFilterFile(File excludeFilterFile)
+    {
+        this.excludeFilterFile = excludeFilterFile;
+    }
+
+    /**
+     * @return the class names of the detectors not to run.
+     */
+    public List<String> getOmittedDetectors()
+    {
+        return omittedDetectors;
+    }
+
+    /**
+     * @return the time, in milliseconds since the epoch, at which to stop the analysis, or <tt>0</tt> to always
+     *         finish it.
+     */
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+    }
+}
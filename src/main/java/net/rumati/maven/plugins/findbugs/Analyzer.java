@@ -0,0 +1,10 @@
+package net.rumati.maven.plugins.findbugs;
+
+/**
+ * Runs a FindBugs analysis and collects the results into a report model.
+ */
+interface Analyzer
+{
+    ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException;
+}
@@ -0,0 +1,217 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Removes the jars from the auxiliary class path which hold none of the classes the analyzed classes need. The needed
+ * classes are the transitive closure of the types referenced from the constant pools of the analyzed classes, over
+ * the classes on the auxiliary class path. Jars are kept or dropped as a whole, so the class hierarchy FindBugs sees
+ * for the classes it looks up does not change.
+ */
+class AuxClasspathPruningAnalyzer
+        implements Analyzer
+{
+    private final Analyzer analyzer;
+    private final Log log;
+
+    /**
+     * @param analyzer the analyzer to which the requests with the pruned auxiliary class path are passed.
+     * @param log the log to which to report the dropped jars.
+     */
+    AuxClasspathPruningAnalyzer(Analyzer analyzer, Log log)
+    {
+        this.analyzer = analyzer;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        for (File target : request.getTargets()){
+            if (!target.isDirectory() && !target.getName().endsWith(".class")){
+                /*
+                 * The references of classes in an analyzed jar are not known without reading it, so nothing is
+                 * dropped.
+                 */
+                return analyzer.analyze(request);
+            }
+        }
+
+        AnalysisRequest prunedRequest = request.copy();
+        try{
+            prune(prunedRequest.getAuxClasspath(), request.getTargets());
+        }catch (IOException e){
+            log.warn("Could not prune the FindBugs auxiliary class path, using it as is: " + e);
+            return analyzer.analyze(request);
+        }
+        return analyzer.analyze(prunedRequest);
+    }
+
+    private void prune(List<File> auxClasspath, List<File> targets)
+            throws IOException
+    {
+        Index index = new Index();
+        try{
+            Set<Integer> neededEntries = new HashSet<Integer>();
+            for (int i = 0; i < auxClasspath.size(); i++){
+                try{
+                    index.add(i, auxClasspath.get(i));
+                }catch (ZipException e){
+                    /*
+                     * Not a jar, keep it to be safe.
+                     */
+                    neededEntries.add(i);
+                }
+            }
+
+            LinkedList<String> queue = new LinkedList<String>();
+            Set<String> visited = new HashSet<String>();
+            for (File target : targets){
+                List<File> classFiles;
+                if (target.isDirectory()){
+                    classFiles = ClassFileInfo.findClassFiles(target);
+                }else{
+                    classFiles = Collections.singletonList(target);
+                }
+                for (File classFile : classFiles){
+                    ClassFileInfo info = ClassFileInfo.read(classFile);
+                    visited.add(info.getClassName());
+                    queue.addAll(info.getReferences());
+                }
+            }
+
+            while (!queue.isEmpty()){
+                String className = queue.removeFirst();
+                if (!visited.add(className)){
+                    continue;
+                }
+                Integer entry = index.entries.get(className);
+                if (entry == null){
+                    continue;
+                }
+                neededEntries.add(entry);
+                queue.addAll(index.read(className).getReferences());
+            }
+
+            int droppedJars = 0;
+            int droppedClasses = 0;
+            List<File> pruned = new ArrayList<File>();
+            for (int i = 0; i < auxClasspath.size(); i++){
+                File entry = auxClasspath.get(i);
+                if (entry.isFile() && !neededEntries.contains(i)){
+                    droppedJars++;
+                    droppedClasses += index.getClassCount(i);
+                }else{
+                    pruned.add(entry);
+                }
+            }
+            auxClasspath.clear();
+            auxClasspath.addAll(pruned);
+            log.info("Dropped " + droppedJars + " unreferenced jars with " + droppedClasses
+                    + " classes from the FindBugs auxiliary class path");
+        }finally{
+            index.close();
+        }
+    }
+
+    /**
+     * The classes on the auxiliary class path, by name. A class which is on the class path more than once is found in
+     * the first entry, as it would be by a class loader.
+     */
+    private static class Index
+    {
+        private final Map<String, Integer> entries = new HashMap<String, Integer>();
+        private final Map<String, File> classFiles = new HashMap<String, File>();
+        private final Map<Integer, ZipFile> jars = new HashMap<Integer, ZipFile>();
+        private final Map<Integer, Integer> classCounts = new HashMap<Integer, Integer>();
+
+        private void add(int idx, File entry)
+                throws IOException
+        {
+            int count = 0;
+            if (entry.isDirectory()){
+                String prefix = entry.getAbsolutePath() + File.separator;
+                for (File classFile : ClassFileInfo.findClassFiles(entry)){
+                    String path = classFile.getAbsolutePath().substring(prefix.length());
+                    String className = toClassName(path.replace(File.separatorChar, '/'));
+                    if (!entries.containsKey(className)){
+                        entries.put(className, idx);
+                        classFiles.put(className, classFile);
+                    }
+                    count++;
+                }
+            }else if (entry.isFile()){
+                ZipFile jar = new ZipFile(entry);
+                jars.put(idx, jar);
+                Enumeration<? extends ZipEntry> zipEntries = jar.entries();
+                while (zipEntries.hasMoreElements()){
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if (zipEntry.isDirectory() || !zipEntry.getName().endsWith(".class")){
+                        continue;
+                    }
+                    String className = toClassName(zipEntry.getName());
+                    if (!entries.containsKey(className)){
+                        entries.put(className, idx);
+                    }
+                    count++;
+                }
+            }
+            classCounts.put(idx, count);
+        }
+
+        private ClassFileInfo read(String className)
+                throws IOException
+        {
+            File classFile = classFiles.get(className);
+            if (classFile != null){
+                return ClassFileInfo.read(classFile);
+            }
+            ZipFile jar = jars.get(entries.get(className));
+            ZipEntry zipEntry = jar.getEntry(className.replace('.', '/') + ".class");
+            InputStream in = jar.getInputStream(zipEntry);
+            try{
+                byte[] bytes = ClassFileInfo.readFully(in, (int)Math.max(zipEntry.getSize(), 0));
+                return ClassFileInfo.read(new File(jar.getName() + "!" + zipEntry.getName()), bytes);
+            }finally{
+                in.close();
+            }
+        }
+
+        private int getClassCount(int idx)
+        {
+            Integer count = classCounts.get(idx);
+            return count == null ? 0 : count.intValue();
+        }
+
+        private void close()
+        {
+            for (ZipFile jar : jars.values()){
+                try{
+                    jar.close();
+                }catch (IOException e){
+                    // Ignore
+                }
+            }
+        }
+
+        private static String toClassName(String path)
+        {
+            return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Replaces the jars on the auxiliary class path with copies which hold only their class files, stored without
+ * compression, so that FindBugs neither lists the resources of the jars nor inflates their classes for every module
+ * and every build.
+ * <p>
+ * The class files are copied unchanged. FindBugs runs its first passes over the referenced auxiliary classes, which
+ * fill the interprocedural databases such as the unconditionally dereferenced parameters, from their method bodies,
+ * so the copies must find the same bugs as the original jars.
+ * <p>
+ * The copies are kept in a cache directory which is shared by all projects on the machine. They are named by the
+ * digest of the jar contents, so that a jar is copied once no matter where it is. The digests are kept in an index in
+ * the cache directory, by the path, size and modification time of the jar, so that a jar is only read to compute its
+ * digest when it is new or changed. The least recently used jars are removed when the cache grows beyond its maximum
+ * size, under a lock file, and never within a grace period after their last use, as other builds may be using them.
+ */
+class AuxJarCachingAnalyzer
+        implements Analyzer
+{
+    private static final String CACHE_FORMAT = "2";
+    private static final String INDEX_FILE = "keys-" + CACHE_FORMAT + ".index";
+    private static final String LOCK_FILE = "cache.lock";
+    private static final long TOUCH_INTERVAL = 60 * 60 * 1000L;
+    /**
+     * The time since their last use within which cached jars are not removed. Builds touch the jars they use at most
+     * every {@link #TOUCH_INTERVAL}, so this is much longer.
+     */
+    private static final long GRACE_PERIOD = 24 * 60 * 60 * 1000L;
+    private static final int MAX_KEYS = 4096;
+    /**
+     * The cache keys of the most recently used jars, by path, size and modification time, so that the index is
+     * usually only read once per JVM.
+     */
+    private static final Map<String, String> KEYS = new LinkedHashMap<String, String>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > MAX_KEYS;
+        }
+    };
+    /**
+     * The index files which were loaded into {@link #KEYS}.
+     */
+    private static final Set<File> LOADED_INDEXES = new HashSet<File>();
+    /**
+     * Held while the lock file is locked, as a JVM may only lock a file once.
+     */
+    private static final Object JVM_LOCK = new Object();
+    private final Analyzer analyzer;
+    private final File cacheDirectory;
+    private final long maxSize;
+    private final Log log;
+
+    /**
+     * @param analyzer the analyzer to which the requests with the cached auxiliary class path are passed.
+     * @param cacheDirectory the directory which holds the stripped jars.
+     * @param maxSize the size, in bytes, beyond which the least recently used jars are removed from the cache.
+     * @param log the log to which to report the use of the cache.
+     */
+    AuxJarCachingAnalyzer(Analyzer analyzer, File cacheDirectory, long maxSize, Log log)
+    {
+        this.analyzer = analyzer;
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        cacheDirectory.mkdirs();
+        loadIndex();
+        AnalysisRequest cachedRequest = request.copy();
+        List<File> auxClasspath = cachedRequest.getAuxClasspath();
+        Map<File, String> computedKeys = new HashMap<File, String>();
+        int created = 0;
+        for (int i = 0; i < auxClasspath.size(); i++){
+            File entry = auxClasspath.get(i);
+            if (!entry.isFile() || !entry.getName().endsWith(".jar")){
+                continue;
+            }
+            try{
+                File cached = new File(cacheDirectory, getKey(entry, computedKeys) + ".jar");
+                if (cached.isFile()){
+                    touch(cached);
+                }else{
+                    copyClasses(entry, cached);
+                    created++;
+                }
+                auxClasspath.set(i, cached);
+            }catch (IOException e){
+                log.warn("Could not cache auxiliary class path entry " + entry + ", using it as is: " + e);
+            }
+        }
+        if (created > 0){
+            log.info("Added " + created + " jars to the FindBugs auxiliary class path cache");
+        }
+        if (!computedKeys.isEmpty() || created > 0){
+            update(computedKeys, created > 0);
+        }
+        return analyzer.analyze(cachedRequest);
+    }
+
+    private static String getStamp(File jar)
+    {
+        return jar.getAbsolutePath() + File.pathSeparator + jar.length() + File.pathSeparator + jar.lastModified();
+    }
+
+    /**
+     * @param computedKeys the map to which to add the key if it had to be computed.
+     * @return the cache key of a jar. The jar is read outside of the lock on the keys, so that analyses of other
+     *         modules are not held up; two analyses may compute the key of the same jar at the same time.
+     */
+    private static String getKey(File jar, Map<File, String> computedKeys)
+            throws IOException
+    {
+        String stamp = getStamp(jar);
+        synchronized (KEYS){
+            String key = KEYS.get(stamp);
+            if (key != null){
+                return key;
+            }
+        }
+        String key = new Fingerprint().add(CACHE_FORMAT).addContents(jar).getValue();
+        synchronized (KEYS){
+            KEYS.put(stamp, key);
+        }
+        computedKeys.put(jar, key);
+        return key;
+    }
+
+    /**
+     * Loads the keys computed by earlier builds, once per JVM. Only the keys of the jars which did not change since
+     * are loaded.
+     */
+    private void loadIndex()
+    {
+        File indexFile = new File(cacheDirectory, INDEX_FILE);
+        synchronized (KEYS){
+            if (!LOADED_INDEXES.add(indexFile)){
+                return;
+            }
+        }
+        Properties index = readIndex(indexFile);
+        synchronized (KEYS){
+            for (Map.Entry<Object, Object> entry : index.entrySet()){
+                File jar = new File((String)entry.getKey());
+                String key = getIndexedKey(jar, (String)entry.getValue());
+                if (key != null){
+                    KEYS.put(getStamp(jar), key);
+                }
+            }
+        }
+    }
+
+    private Properties readIndex(File indexFile)
+    {
+        Properties index = new Properties();
+        if (!indexFile.isFile()){
+            return index;
+        }
+        try{
+            InputStream in = new FileInputStream(indexFile);
+            try{
+                index.load(in);
+            }finally{
+                in.close();
+            }
+        }catch (IOException e){
+            log.warn("Could not read FindBugs auxiliary class path cache index " + indexFile + ": " + e);
+            index.clear();
+        }
+        return index;
+    }
+
+    /**
+     * @param value the value of the index entry of the jar: its size, modification time and key.
+     * @return the key of the index entry, or <tt>null</tt> if the jar no longer exists, or changed.
+     */
+    private static String getIndexedKey(File jar, String value)
+    {
+        String[] parts = value.split(" ");
+        if (parts.length != 3 || !parts[0].equals(Long.toString(jar.length()))
+                || !parts[1].equals(Long.toString(jar.lastModified())) || !jar.isFile()){
+            return null;
+        }
+        return parts[2];
+    }
+
+    /**
+     * Adds the computed keys to the index and removes the least recently used jars, under the lock file, so that
+     * concurrent builds neither lose each other's keys nor remove the same jars.
+     */
+    private void update(Map<File, String> computedKeys, boolean evict)
+    {
+        synchronized (JVM_LOCK){
+            try{
+                RandomAccessFile lockFile = new RandomAccessFile(new File(cacheDirectory, LOCK_FILE), "rw");
+                try{
+                    FileLock lock = lockFile.getChannel().lock();
+                    try{
+                        if (!computedKeys.isEmpty()){
+                            writeIndex(computedKeys);
+                        }
+                        if (evict){
+                            evict();
+                        }
+                    }finally{
+                        lock.release();
+                    }
+                }finally{
+                    lockFile.close();
+                }
+            }catch (IOException e){
+                log.warn("Could not update the FindBugs auxiliary class path cache " + cacheDirectory + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Adds keys to the index. The entries of jars which no longer exist, or changed, are left out.
+     */
+    private void writeIndex(Map<File, String> computedKeys)
+            throws IOException
+    {
+        File indexFile = new File(cacheDirectory, INDEX_FILE);
+        Properties index = readIndex(indexFile);
+        for (Map.Entry<File, String> entry : computedKeys.entrySet()){
+            File jar = entry.getKey();
+            index.setProperty(jar.getAbsolutePath(), jar.length() + " " + jar.lastModified() + " " + entry.getValue());
+        }
+        for (Iterator<Map.Entry<Object, Object>> i = index.entrySet().iterator(); i.hasNext();){
+            Map.Entry<Object, Object> entry = i.next();
+            if (getIndexedKey(new File((String)entry.getKey()), (String)entry.getValue()) == null){
+                i.remove();
+            }
+        }
+        File tmpFile = File.createTempFile(INDEX_FILE, ".tmp", cacheDirectory);
+        try{
+            OutputStream out = new FileOutputStream(tmpFile);
+            try{
+                index.store(out, "FindBugs auxiliary class path cache keys: size, modification time and key by jar");
+            }finally{
+                out.close();
+            }
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)){
+                throw new IOException("Could not rename " + tmpFile + " to " + indexFile);
+            }
+        }finally{
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Writes a copy of a jar which holds only its class files, unchanged and stored without compression. The copy is
+     * written under a temporary name and then renamed, so that concurrent builds never see a partial jar.
+     */
+    private static void copyClasses(File jar, File cached)
+            throws IOException
+    {
+        File tmpFile = File.createTempFile(cached.getName(), ".tmp", cached.getParentFile());
+        try{
+            ZipInputStream in = new ZipInputStream(new FileInputStream(jar));
+            try{
+                ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                try{
+                    ZipEntry entry;
+                    while ((entry = in.getNextEntry()) != null){
+                        if (entry.isDirectory() || !entry.getName().endsWith(".class")){
+                            continue;
+                        }
+                        byte[] bytes = ClassFileInfo.readFully(in, (int)Math.max(entry.getSize(), 0));
+                        CRC32 crc = new CRC32();
+                        crc.update(bytes);
+                        ZipEntry storedEntry = new ZipEntry(entry.getName());
+                        storedEntry.setMethod(ZipEntry.STORED);
+                        storedEntry.setSize(bytes.length);
+                        storedEntry.setCompressedSize(bytes.length);
+                        storedEntry.setCrc(crc.getValue());
+                        out.putNextEntry(storedEntry);
+                        out.write(bytes);
+                        out.closeEntry();
+                    }
+                }finally{
+                    out.close();
+                }
+            }finally{
+                in.close();
+            }
+            if (!tmpFile.renameTo(cached) && !cached.isFile()){
+                throw new IOException("Could not rename " + tmpFile + " to " + cached);
+            }
+        }finally{
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Marks a cached jar as recently used. The modification time is only updated now and then, to keep the cache
+     * cheap to use.
+     */
+    private static void touch(File cached)
+    {
+        long now = System.currentTimeMillis();
+        if (now - cached.lastModified() > TOUCH_INTERVAL){
+            cached.setLastModified(now);
+        }
+    }
+
+    /**
+     * Removes the least recently used jars until the cache is no larger than its maximum size. Jars used within the
+     * grace period are never removed, which includes those of the current analysis.
+     */
+    private void evict()
+    {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null){
+            return;
+        }
+        List<File> jars = new ArrayList<File>();
+        long size = 0;
+        for (File file : files){
+            if (file.getName().endsWith(".jar")){
+                jars.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= maxSize){
+            return;
+        }
+        Collections.sort(jars, new Comparator<File>()
+        {
+            public int compare(File o1, File o2)
+            {
+                long m1 = o1.lastModified();
+                long m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 > m2 ? 1 : 0);
+            }
+        });
+        long usedSince = System.currentTimeMillis() - GRACE_PERIOD;
+        int removed = 0;
+        for (File jar : jars){
+            if (size <= maxSize || jar.lastModified() > usedSince){
+                break;
+            }
+            long length = jar.length();
+            if (jar.delete()){
+                size -= length;
+                removed++;
+            }
+        }
+        if (removed > 0 && log.isDebugEnabled()){
+            log.debug("Removed " + removed + " least recently used jars from the FindBugs auxiliary class path cache");
+        }
+        if (size > maxSize && log.isDebugEnabled()){
+            log.debug("The FindBugs auxiliary class path cache is larger than its maximum size, but all of its jars "
+                    + "were used recently");
+        }
+    }
+}
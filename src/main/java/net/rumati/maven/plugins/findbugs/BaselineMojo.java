@@ -0,0 +1,44 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Analyzes the project and writes the fingerprints of all bugs found to the <tt>baseline</tt> file, so that the
+ * FindBugs report only shows bugs found after this. The analysis is configured with the same parameters as the
+ * report. The goal analyzes the classes compiled earlier in the build, so it is run after compiling, as in
+ * <tt>mvn compile findbugs:baseline</tt>.
+ * @goal baseline
+ * @phase verify
+ * @requiresDependencyResolution compile
+ * @requiresProject
+ */
+public class BaselineMojo
+        extends AbstractFindBugsMojo
+{
+    public void execute()
+            throws MojoExecutionException
+    {
+        File baseline = getBaseline();
+        if (baseline == null){
+            throw new MojoExecutionException("The baseline file to write must be set with findbugs.baseline");
+        }
+        if (!hasClasses()){
+            getLog().info("No classes to analyze, not writing a FindBugs baseline");
+            return;
+        }
+        ReportModel model = analyze(new AnalysisMetrics(), Collections.<String>emptyList(), null, null);
+        try{
+            long[] fingerprints = model.getFingerprints();
+            BugBaseline.write(baseline, fingerprints);
+            getLog().info("Wrote " + fingerprints.length + " fingerprints of " + model.getBugCount()
+                    + " bugs to FindBugs baseline " + baseline);
+        }catch (IOException e){
+            throw new MojoExecutionException("Error writing baseline " + baseline, e);
+        }finally{
+            model.close();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Analyzes the classes within a time budget. The classes are split into batches, which are analyzed one after the
+ * other. Each batch is analyzed at the highest effort, up to the requested effort, at which the remaining classes are
+ * expected to be analyzed within the remaining time. When the budget is spent, the running batch is stopped through
+ * the deadline of its request, keeping the bugs found so far, and the remaining batches are not analyzed. The effort
+ * at which each class was analyzed is kept in the coverage of the results.
+ * <p>
+ * The expected time is the size of the classes times the time per kilobyte at an effort, which is learnt from the
+ * batches of this and earlier builds and kept in a profile file. For an effort at which nothing was analyzed yet, the
+ * time is derived from that of another effort.
+ */
+class BudgetedAnalyzer
+        implements Analyzer
+{
+    /**
+     * The effort of the classes which were not analyzed, in the coverage of the results.
+     */
+    static final String NOT_ANALYZED = "none";
+    /**
+     * The effort of the classes of which the analysis was stopped when the budget was spent, in the coverage of the
+     * results.
+     */
+    static final String PARTLY_ANALYZED = "partial";
+    /**
+     * The efforts, lowest first.
+     */
+    static final String[] EFFORTS = {"min", "less", "default", "more", "max"};
+    private static final double[] DEFAULT_MILLIS_PER_KB = {10, 15, 30, 40, 50};
+    /**
+     * The number of batches. More batches follow the budget more closely, but each batch adds the time of starting an
+     * analysis.
+     */
+    private static final int BATCHES = 8;
+    private final Analyzer analyzer;
+    private final long budgetMillis;
+    private final File profileFile;
+    private final AnalysisMetrics metrics;
+    private final Log log;
+    private final double[] millisPerKb = new double[EFFORTS.length];
+
+    /**
+     * @param analyzer the analyzer of each batch.
+     * @param budgetMillis the time budget, in milliseconds.
+     * @param profileFile the file in which the time per kilobyte of each effort is kept between builds.
+     * @param metrics the metrics to which to add the number of classes analyzed at a lower effort, in part, or not
+     *        at all.
+     * @param log the log to which to report lowering the effort.
+     */
+    BudgetedAnalyzer(Analyzer analyzer, long budgetMillis, File profileFile, AnalysisMetrics metrics, Log log)
+    {
+        this.analyzer = analyzer;
+        this.budgetMillis = budgetMillis;
+        this.profileFile = profileFile;
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        int requestedEffort = getEffortIndex(request.getEffort());
+        loadProfile();
+
+        List<List<File>> batches = ShardedAnalyzer.partition(request.getTargets(), BATCHES);
+        long[] batchBytes = new long[batches.size()];
+        long remainingBytes = 0;
+        for (int i = 0; i < batches.size(); i++){
+            for (File file : batches.get(i)){
+                batchBytes[i] += file.length();
+            }
+            remainingBytes += batchBytes[i];
+        }
+
+        Map<String, String> coverage = new TreeMap<String, String>();
+        List<ReportModel> results = new ArrayList<ReportModel>();
+        try{
+            int lowestEffort = requestedEffort;
+            for (int i = 0; i < batches.size(); i++){
+                long remainingMillis = deadline - System.currentTimeMillis();
+                int effort = remainingMillis <= 0 ? -1 : chooseEffort(requestedEffort, remainingBytes, remainingMillis);
+                if (effort < lowestEffort){
+                    if (effort < 0){
+                        log.warn("The FindBugs time budget is spent, not analyzing the remaining classes");
+                    }else{
+                        log.info("Lowering the FindBugs effort to " + EFFORTS[effort]
+                                + " to stay within the time budget");
+                    }
+                    lowestEffort = effort;
+                }
+                if (effort < 0){
+                    addCoverage(coverage, batches.get(i), NOT_ANALYZED);
+                    continue;
+                }
+
+                AnalysisRequest batchRequest = request.copy();
+                batchRequest.getTargets().clear();
+                batchRequest.getTargets().addAll(batches.get(i));
+                int idx = 0;
+                for (File target : request.getTargets()){
+                    if (target.isDirectory()){
+                        batchRequest.getAuxClasspath().add(idx++, target);
+                    }
+                }
+                batchRequest.setEffort(EFFORTS[effort]);
+                batchRequest.setDeadline(deadline);
+                long start = System.currentTimeMillis();
+                try{
+                    results.add(analyzer.analyze(batchRequest));
+                }catch (TimeBudgetExceededException e){
+                    /*
+                     * The time of a stopped batch says nothing about the time per kilobyte, so it is not learnt.
+                     */
+                    log.warn("The FindBugs time budget was spent during the analysis, keeping the bugs found so far");
+                    results.add(e.getModel());
+                    addCoverage(coverage, batches.get(i), PARTLY_ANALYZED);
+                    remainingBytes -= batchBytes[i];
+                    continue;
+                }catch (BugLimitExceededException e){
+                    results.add(e.getModel());
+                    throw new BugLimitExceededException(ReportModel.merge(results));
+                }
+                learn(effort, batchBytes[i], System.currentTimeMillis() - start);
+                addCoverage(coverage, batches.get(i), EFFORTS[effort]);
+                remainingBytes -= batchBytes[i];
+            }
+            saveProfile();
+
+            int degraded = 0;
+            int partlyAnalyzed = 0;
+            int notAnalyzed = 0;
+            for (String effort : coverage.values()){
+                if (effort.equals(NOT_ANALYZED)){
+                    notAnalyzed++;
+                }else if (effort.equals(PARTLY_ANALYZED)){
+                    partlyAnalyzed++;
+                }else if (getEffortIndex(effort) < requestedEffort){
+                    degraded++;
+                }
+            }
+            metrics.setCount("lowerEffortClasses", degraded);
+            metrics.setCount("partlyAnalyzedClasses", partlyAnalyzed);
+            metrics.setCount("notAnalyzedClasses", notAnalyzed);
+
+            ReportModel model = ReportModel.merge(results);
+            model.setCoverage(coverage);
+            return model;
+        }finally{
+            for (ReportModel result : results){
+                result.close();
+            }
+        }
+    }
+
+    static int getEffortIndex(String effort)
+    {
+        for (int i = 0; i < EFFORTS.length; i++){
+            if (EFFORTS[i].equals(effort)){
+                return i;
+            }
+        }
+        return 2;
+    }
+
+    /**
+     * @param classEffort the effort at which a class was analyzed, from the coverage of the results.
+     * @param requestedEffort the index of the requested effort.
+     * @return whether the class was analyzed completely at the requested effort.
+     */
+    static boolean isFullyAnalyzed(String classEffort, int requestedEffort)
+    {
+        return !classEffort.equals(NOT_ANALYZED) && !classEffort.equals(PARTLY_ANALYZED)
+                && getEffortIndex(classEffort) >= requestedEffort;
+    }
+
+    /**
+     * @return the highest effort, up to the requested effort, at which the remaining classes are expected to be
+     *         analyzed in the remaining time, or the lowest effort if there is none.
+     */
+    private int chooseEffort(int requestedEffort, long remainingBytes, long remainingMillis)
+    {
+        for (int effort = requestedEffort; effort > 0; effort--){
+            if (getMillisPerKb(effort) * remainingBytes / 1024 <= remainingMillis){
+                return effort;
+            }
+        }
+        return 0;
+    }
+
+    private double getMillisPerKb(int effort)
+    {
+        if (millisPerKb[effort] > 0){
+            return millisPerKb[effort];
+        }
+        for (int known = EFFORTS.length - 1; known >= 0; known--){
+            if (millisPerKb[known] > 0){
+                return millisPerKb[known] * DEFAULT_MILLIS_PER_KB[effort] / DEFAULT_MILLIS_PER_KB[known];
+            }
+        }
+        return DEFAULT_MILLIS_PER_KB[effort];
+    }
+
+    private void learn(int effort, long bytes, long millis)
+    {
+        double observed = millis * 1024.0 / Math.max(bytes, 1);
+        millisPerKb[effort] = millisPerKb[effort] > 0 ? (millisPerKb[effort] + observed) / 2 : observed;
+    }
+
+    private static void addCoverage(Map<String, String> coverage, List<File> classFiles, String effort)
+            throws AnalysisException
+    {
+        for (File file : classFiles){
+            try{
+                coverage.put(ClassFileInfo.read(file).getClassName(), effort);
+            }catch (IOException e){
+                throw new AnalysisException("Error reading class " + file, e);
+            }
+        }
+    }
+
+    private void loadProfile()
+    {
+        if (!profileFile.isFile()){
+            return;
+        }
+        Properties properties = new Properties();
+        try{
+            InputStream in = new FileInputStream(profileFile);
+            try{
+                properties.load(in);
+            }finally{
+                in.close();
+            }
+            for (int i = 0; i < EFFORTS.length; i++){
+                String value = properties.getProperty(EFFORTS[i]);
+                if (value != null){
+                    millisPerKb[i] = Double.parseDouble(value);
+                }
+            }
+        }catch (Exception e){
+            log.warn("Could not read FindBugs effort profile " + profileFile + ", discarding it", e);
+            for (int i = 0; i < EFFORTS.length; i++){
+                millisPerKb[i] = 0;
+            }
+        }
+    }
+
+    private void saveProfile()
+    {
+        Properties properties = new Properties();
+        for (int i = 0; i < EFFORTS.length; i++){
+            if (millisPerKb[i] > 0){
+                properties.setProperty(EFFORTS[i], Double.toString(millisPerKb[i]));
+            }
+        }
+        try{
+            profileFile.getAbsoluteFile().getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(profileFile);
+            try{
+                properties.store(out, "FindBugs analysis time per kilobyte of classes, in milliseconds, by effort");
+            }finally{
+                out.close();
+            }
+        }catch (IOException e){
+            log.warn("Could not write FindBugs effort profile " + profileFile, e);
+        }
+    }
+}
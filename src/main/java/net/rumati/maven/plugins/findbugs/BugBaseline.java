@@ -0,0 +1,116 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The fingerprints of the known bugs of a project, used to report only the bugs which are not known. The baseline is
+ * stored as a header followed by the distinct fingerprints, sorted, as big endian longs. The file is memory mapped
+ * and searched in place, so loading a baseline takes the same time whatever its size.
+ * <p>
+ * The fingerprint of a bug does not depend on its lines, so a known bug stays known when code around it changes. Bugs
+ * of the same type in the same method or field may have the same fingerprint, in which case a new bug of that type
+ * is not reported if another one is known.
+ */
+class BugBaseline
+{
+    private static final int MAGIC = 0x46424253;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 16;
+    private final LongBuffer fingerprints;
+
+    private BugBaseline(LongBuffer fingerprints)
+    {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Maps a baseline file.
+     * @throws IOException if the file cannot be read, or is not a baseline file.
+     */
+    static BugBaseline load(File file)
+            throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try{
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_SIZE){
+                throw new IOException("Not a FindBugs baseline file: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT){
+                throw new IOException("Not a FindBugs baseline file, or written by another version: " + file);
+            }
+            long count = buffer.getLong(8);
+            if (count < 0 || HEADER_SIZE + count * 8 != channel.size()){
+                throw new IOException("Truncated FindBugs baseline file: " + file);
+            }
+            buffer.position(HEADER_SIZE);
+            return new BugBaseline(buffer.slice().asLongBuffer());
+        }finally{
+            /*
+             * The mapping stays valid after the channel is closed.
+             */
+            in.close();
+        }
+    }
+
+    /**
+     * Writes fingerprints as a baseline, replacing the file if it exists.
+     * @param fingerprints the distinct fingerprints, sorted.
+     */
+    static void write(File file, long[] fingerprints)
+            throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 65536));
+        try{
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(fingerprints.length);
+            for (long fingerprint : fingerprints){
+                out.writeLong(fingerprint);
+            }
+        }finally{
+            out.close();
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file)){
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * @return the number of fingerprints in the baseline.
+     */
+    int size()
+    {
+        return fingerprints.limit();
+    }
+
+    boolean contains(long fingerprint)
+    {
+        int low = 0;
+        int high = fingerprints.limit() - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            long value = fingerprints.get(mid);
+            if (value < fingerprint){
+                low = mid + 1;
+            }else if (value > fingerprint){
+                high = mid - 1;
+            }else{
+                return true;
+            }
+        }
+        return false;
+    }
+}
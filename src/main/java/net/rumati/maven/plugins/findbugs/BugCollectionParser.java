@@ -0,0 +1,240 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streams a FindBugs <tt>BugCollection</tt> XML file into a {@link ReportModel}. Only the elements used by the report
+ * are kept, and repeated strings such as class names, bug types and categories are shared, so memory use depends on
+ * the number of bugs rather than on the size of the XML file.
+ */
+class BugCollectionParser
+        extends DefaultHandler
+{
+    private final ReportModel model = new ReportModel();
+    private final AnalysisMetrics metrics;
+    private final Map<String, String> strings = new HashMap<String, String>();
+    private final StringBuilder text = new StringBuilder();
+    private int depth;
+    private String section;
+    private boolean capturing;
+    /*
+     * State of the BugInstance, BugCategory or BugPattern currently being parsed.
+     */
+    private String type;
+    private String category;
+    private String priority;
+    private String className;
+    private boolean primaryClass;
+    private String method;
+    private boolean primaryMethod;
+    private String field;
+    private boolean primaryField;
+    private String instanceHash;
+    private String start;
+    private String end;
+    private String message;
+    private String description;
+    private String shortDescription;
+    private String details;
+
+    private BugCollectionParser(AnalysisMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Parses a FindBugs XML output file, as written with <tt>-xml:withMessages</tt>.
+     * @param file the file to parse.
+     * @return the report model.
+     */
+    public static ReportModel parse(File file)
+            throws IOException, SAXException, ParserConfigurationException
+    {
+        return parse(file, null);
+    }
+
+    /**
+     * Parses a FindBugs XML output file, as written with <tt>-xml:withMessages</tt>, recording the time spent in
+     * each detector, from the <tt>FindBugsProfile</tt> of the file.
+     * @param file the file to parse.
+     * @param metrics the metrics to which to add the detector times, or <code>null</code>.
+     * @return the report model.
+     */
+    public static ReportModel parse(File file, AnalysisMetrics metrics)
+            throws IOException, SAXException, ParserConfigurationException
+    {
+        BugCollectionParser parser = new BugCollectionParser(metrics);
+        SAXParserFactory.newInstance().newSAXParser().parse(file, parser);
+        return parser.model;
+    }
+
+    /**
+     * Parses a <tt>FindBugsProfile</tt>, as written by the FindBugs profiler, adding the time spent in each detector
+     * to the metrics.
+     */
+    public static void parseProfile(InputStream in, AnalysisMetrics metrics)
+            throws IOException, SAXException, ParserConfigurationException
+    {
+        SAXParserFactory.newInstance().newSAXParser().parse(in, new BugCollectionParser(metrics));
+    }
+
+    private String intern(String s)
+    {
+        if (s == null){
+            return null;
+        }
+        String interned = strings.get(s);
+        if (interned == null){
+            strings.put(s, s);
+            interned = s;
+        }
+        return interned;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+            throws SAXException
+    {
+        depth++;
+        if (qName.equals("ClassProfile")){
+            if (metrics != null){
+                metrics.addDetectorTime(attributes.getValue("name"), parseInt(attributes.getValue("totalMilliseconds")),
+                        parseInt(attributes.getValue("invocations")));
+            }
+        }else if (depth == 1){
+            model.setVersion(valueOf(attributes.getValue("version")));
+        }else if (depth == 2){
+            section = qName;
+            if (qName.equals("BugInstance")){
+                type = intern(attributes.getValue("type"));
+                category = intern(attributes.getValue("category"));
+                priority = attributes.getValue("priority");
+                className = null;
+                primaryClass = false;
+                method = null;
+                primaryMethod = false;
+                field = null;
+                primaryField = false;
+                instanceHash = attributes.getValue("instanceHash");
+                start = null;
+                end = null;
+                message = "";
+            }else if (qName.equals("BugCategory")){
+                category = intern(attributes.getValue("category"));
+                description = "";
+            }else if (qName.equals("BugPattern")){
+                type = intern(attributes.getValue("type"));
+                category = intern(attributes.getValue("category"));
+                shortDescription = "";
+                details = "";
+            }
+        }else if (depth == 3){
+            if (section.equals("BugInstance")){
+                if (qName.equals("Class")){
+                    if (className == null || (!primaryClass && "true".equals(attributes.getValue("primary")))){
+                        className = intern(attributes.getValue("classname"));
+                        primaryClass = "true".equals(attributes.getValue("primary"));
+                    }
+                }else if (qName.equals("Method")){
+                    if (method == null || (!primaryMethod && "true".equals(attributes.getValue("primary")))){
+                        method = attributes.getValue("name") + attributes.getValue("signature");
+                        primaryMethod = "true".equals(attributes.getValue("primary"));
+                    }
+                }else if (qName.equals("Field")){
+                    if (field == null || (!primaryField && "true".equals(attributes.getValue("primary")))){
+                        field = attributes.getValue("name");
+                        primaryField = "true".equals(attributes.getValue("primary"));
+                    }
+                }else if (qName.equals("SourceLine") && start == null){
+                    start = valueOf(attributes.getValue("start"));
+                    end = valueOf(attributes.getValue("end"));
+                }else if (qName.equals("LongMessage")){
+                    startCapture();
+                }
+            }else if (section.equals("BugCategory")){
+                if (qName.equals("Description")){
+                    startCapture();
+                }
+            }else if (section.equals("BugPattern")){
+                if (qName.equals("ShortDescription") || qName.equals("Details")){
+                    startCapture();
+                }
+            }
+        }else if (depth == 4 && section.equals("FindBugsSummary") && qName.equals("ClassStats")){
+            model.addClass(intern(attributes.getValue("class")), parseInt(attributes.getValue("size")));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException
+    {
+        if (depth == 2){
+            if (qName.equals("BugInstance")){
+                String bugClassName = className == null ? "" : className;
+                model.addBug(new ReportBug(type, category, parseInt(priority), bugClassName, parseInt(start),
+                        parseInt(end), message, ReportBug.getFingerprint(type, bugClassName, method, field,
+                                instanceHash)));
+            }else if (qName.equals("BugCategory")){
+                model.addCategory(new ReportCategory(category, description));
+            }else if (qName.equals("BugPattern")){
+                model.addPattern(new ReportBugPattern(type, category, shortDescription, details));
+            }
+            section = null;
+        }else if (depth == 3 && capturing){
+            String value = text.toString();
+            if (qName.equals("LongMessage")){
+                message = value;
+            }else if (qName.equals("Description")){
+                description = value;
+            }else if (qName.equals("ShortDescription")){
+                shortDescription = value;
+            }else if (qName.equals("Details")){
+                details = value;
+            }
+            capturing = false;
+        }
+        depth--;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException
+    {
+        if (capturing){
+            text.append(ch, start, length);
+        }
+    }
+
+    private void startCapture()
+    {
+        text.setLength(0);
+        capturing = true;
+    }
+
+    private static String valueOf(String value)
+    {
+        return value == null ? "" : value;
+    }
+
+    private static int parseInt(String value)
+    {
+        if (value == null){
+            return -1;
+        }
+        try{
+            return Integer.parseInt(value);
+        }catch (NumberFormatException e){
+            return -1;
+        }
+    }
+}
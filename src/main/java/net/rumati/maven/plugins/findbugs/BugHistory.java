@@ -0,0 +1,457 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append only file with the bug counts of past builds, from which the report renders the bug trend. After each
+ * report, a record is appended with the bug counts by priority, package, category, class and type, and the
+ * fingerprints of the bugs.
+ * <p>
+ * Each record starts with its length and with the length of its summary, which holds the module of the build and the
+ * counts shown on the report. Reading the history therefore only reads the summaries and skips the rest, so rendering
+ * the trend does not depend on the number of classes or bugs of earlier builds. The numbers of bugs new and fixed
+ * since the previous build of the module are computed from the fingerprints when a record is appended, and kept in
+ * the summary. The modules of a build may share a history file, as each module only reads its own records.
+ * <p>
+ * When the file holds twice the number of builds to retain of a module, it is compacted to the most recent builds of
+ * each module. A record which was not completely written is discarded. A lock file serializes builds which share the
+ * history: appending takes an exclusive lock, and reading takes a shared lock, so that a history is never read while
+ * it is compacted. File locks are held by the JVM, so analyses in the same JVM are serialized by a lock of their own.
+ */
+class BugHistory
+{
+    private static final int MAGIC = 0x46424248;
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final Object JVM_LOCK = new Object();
+    private final File file;
+    private final String module;
+    private final int retention;
+
+    /**
+     * @param file the history file.
+     * @param module the key of the module, such as its group and artifact id.
+     * @param retention the number of builds of the module to keep.
+     */
+    BugHistory(File file, String module, int retention)
+    {
+        this.file = file;
+        this.module = module;
+        this.retention = Math.max(retention, 1);
+    }
+
+    /**
+     * Appends the counts and fingerprints of the bugs of a build.
+     * @param model the bugs of the build.
+     * @param timestamp the time of the build.
+     */
+    void append(ReportModel model, long timestamp)
+            throws IOException
+    {
+        synchronized (JVM_LOCK){
+            appendLocked(model, timestamp);
+        }
+    }
+
+    private void appendLocked(ReportModel model, long timestamp)
+            throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        RandomAccessFile lockFile = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw");
+        try{
+            FileLock lock = lockFile.getChannel().lock();
+            try{
+                long[] fingerprints = model.getFingerprints();
+                RandomAccessFile out = new RandomAccessFile(file, "rw");
+                try{
+                    if (out.length() == 0){
+                        out.writeInt(MAGIC);
+                        out.writeInt(FORMAT);
+                    }
+                    List<Long> offsets = readOffsets(out);
+                    List<String> modules = readModules(out, offsets);
+                    long[] previous = new long[0];
+                    int last = modules.lastIndexOf(module);
+                    if (last >= 0){
+                        previous = readFingerprints(out, offsets.get(last));
+                    }
+                    byte[] record = encode(module, model, timestamp, fingerprints, previous);
+                    long end = offsets.isEmpty() ? HEADER_SIZE : getEnd(out, offsets.get(offsets.size() - 1));
+                    out.setLength(end);
+                    out.seek(end);
+                    out.write(record);
+                    offsets.add(end);
+                    modules.add(module);
+                    if (Collections.frequency(modules, module) >= retention * 2){
+                        compact(out, offsets, modules);
+                    }
+                }finally{
+                    out.close();
+                }
+            }finally{
+                lock.release();
+            }
+        }finally{
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Reads the summaries of the most recent builds of the module.
+     * @param count the maximum number of builds to read.
+     * @return the builds, most recent first, or an empty list if there is no history.
+     */
+    List<Build> read(int count)
+            throws IOException
+    {
+        if (!file.isFile()){
+            return Collections.emptyList();
+        }
+        synchronized (JVM_LOCK){
+            RandomAccessFile lockFile = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw");
+            try{
+                FileLock lock = lockFile.getChannel().lock(0, Long.MAX_VALUE, true);
+                try{
+                    return readLocked(count);
+                }finally{
+                    lock.release();
+                }
+            }finally{
+                lockFile.close();
+            }
+        }
+    }
+
+    private List<Build> readLocked(int count)
+            throws IOException
+    {
+        if (!file.isFile() || file.length() == 0){
+            return Collections.emptyList();
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try{
+            List<Long> offsets = readOffsets(in);
+            List<Build> builds = new ArrayList<Build>();
+            for (int i = offsets.size() - 1; i >= 0 && builds.size() < count; i--){
+                in.seek(offsets.get(i) + 8);
+                if (in.readUTF().equals(module)){
+                    builds.add(readSummary(in));
+                }
+            }
+            return builds;
+        }finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Checks the header, and finds the offsets of the complete records.
+     */
+    private static List<Long> readOffsets(RandomAccessFile in)
+            throws IOException
+    {
+        in.seek(0);
+        if (in.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != FORMAT){
+            throw new IOException("Not a FindBugs history file, or written by another version");
+        }
+        List<Long> offsets = new ArrayList<Long>();
+        long offset = HEADER_SIZE;
+        long length = in.length();
+        while (offset + 8 <= length){
+            long end = getEnd(in, offset);
+            if (end < offset + 8 || end > length){
+                break;
+            }
+            offsets.add(offset);
+            offset = end;
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the module of each record.
+     */
+    private static List<String> readModules(RandomAccessFile in, List<Long> offsets)
+            throws IOException
+    {
+        List<String> modules = new ArrayList<String>();
+        for (long offset : offsets){
+            in.seek(offset + 8);
+            modules.add(in.readUTF());
+        }
+        return modules;
+    }
+
+    private static long getEnd(RandomAccessFile in, long offset)
+            throws IOException
+    {
+        in.seek(offset);
+        return offset + 4 + in.readInt();
+    }
+
+    /**
+     * Replaces the history with the most recent records of each module. The records are copied to a new file, which
+     * replaces the history file, so an interrupted compaction leaves the history intact.
+     * @param offsets the offsets of the records.
+     * @param modules the module of each record.
+     */
+    private void compact(RandomAccessFile in, List<Long> offsets, List<String> modules)
+            throws IOException
+    {
+        boolean[] retained = new boolean[offsets.size()];
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = offsets.size() - 1; i >= 0; i--){
+            Integer count = counts.get(modules.get(i));
+            count = count == null ? 1 : count + 1;
+            counts.put(modules.get(i), count);
+            retained[i] = count <= retention;
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmpFile, "rw");
+        try{
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            for (int i = 0; i < offsets.size(); i++){
+                if (retained[i]){
+                    byte[] record = new byte[(int)(getEnd(in, offsets.get(i)) - offsets.get(i))];
+                    in.seek(offsets.get(i));
+                    in.readFully(record);
+                    out.write(record);
+                }
+            }
+        }finally{
+            out.close();
+        }
+        in.close();
+        file.delete();
+        if (!tmpFile.renameTo(file)){
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+
+    private static byte[] encode(String module, ReportModel model, long timestamp, long[] fingerprints,
+            long[] previous)
+            throws IOException
+    {
+        int common = 0;
+        for (int i = 0, j = 0; i < fingerprints.length && j < previous.length;){
+            if (fingerprints[i] < previous[j]){
+                i++;
+            }else if (fingerprints[i] > previous[j]){
+                j++;
+            }else{
+                common++;
+                i++;
+                j++;
+            }
+        }
+
+        ByteArrayOutputStream summaryBytes = new ByteArrayOutputStream();
+        DataOutputStream summary = new DataOutputStream(summaryBytes);
+        summary.writeUTF(module);
+        summary.writeLong(timestamp);
+        summary.writeInt(model.getBugCount(1));
+        summary.writeInt(model.getBugCount(2));
+        summary.writeInt(model.getBugCount(3));
+        summary.writeInt(fingerprints.length - common);
+        summary.writeInt(previous.length - common);
+        Map<String, Integer> packageCounts = new LinkedHashMap<String, Integer>();
+        for (ReportPackage reportPackage : model.getPackagesWithBugs()){
+            packageCounts.put(reportPackage.getName(), reportPackage.getBugCount());
+        }
+        writeCounts(summary, packageCounts);
+        writeCounts(summary, model.getBugCountsByCategory());
+        summary.close();
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeInt(0);
+        record.writeInt(summaryBytes.size());
+        summaryBytes.writeTo(record);
+        writeCounts(record, model.getBugCountsByType());
+        Map<String, Integer> classCounts = new LinkedHashMap<String, Integer>();
+        for (ReportPackage reportPackage : model.getPackagesWithBugs()){
+            for (ReportClass reportClass : reportPackage.getClasses()){
+                if (reportClass.getBugCount() > 0){
+                    classCounts.put(reportClass.getName(), reportClass.getBugCount());
+                }
+            }
+        }
+        writeCounts(record, classCounts);
+        /*
+         * The fingerprints are sorted, so they are written as variable length differences.
+         */
+        record.writeInt(fingerprints.length);
+        long last = 0;
+        for (long fingerprint : fingerprints){
+            long delta = fingerprint - last;
+            while ((delta & ~0x7fL) != 0){
+                record.writeByte((int)(delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            record.writeByte((int)delta);
+            last = fingerprint;
+        }
+        record.close();
+
+        byte[] bytes = recordBytes.toByteArray();
+        int length = bytes.length - 4;
+        bytes[0] = (byte)(length >>> 24);
+        bytes[1] = (byte)(length >>> 16);
+        bytes[2] = (byte)(length >>> 8);
+        bytes[3] = (byte)length;
+        return bytes;
+    }
+
+    private static void writeCounts(DataOutput out, Map<String, Integer> counts)
+            throws IOException
+    {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()){
+            out.writeUTF(count.getKey());
+            out.writeInt(count.getValue());
+        }
+    }
+
+    private static Map<String, Integer> readCounts(DataInput in)
+            throws IOException
+    {
+        int size = in.readInt();
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < size; i++){
+            counts.put(in.readUTF(), in.readInt());
+        }
+        return counts;
+    }
+
+    /**
+     * Reads the summary of the record at the position of the file, after the record and summary lengths and the
+     * module.
+     */
+    private static Build readSummary(RandomAccessFile in)
+            throws IOException
+    {
+        Build build = new Build();
+        build.timestamp = in.readLong();
+        build.bugsByPriority[0] = in.readInt();
+        build.bugsByPriority[1] = in.readInt();
+        build.bugsByPriority[2] = in.readInt();
+        build.newBugs = in.readInt();
+        build.fixedBugs = in.readInt();
+        build.bugsByPackage = readCounts(in);
+        build.bugsByCategory = readCounts(in);
+        return build;
+    }
+
+    private static long[] readFingerprints(RandomAccessFile in, long offset)
+            throws IOException
+    {
+        long end = getEnd(in, offset);
+        int summaryLength = in.readInt();
+        byte[] detail = new byte[(int)(end - offset - 8 - summaryLength)];
+        in.seek(offset + 8 + summaryLength);
+        in.readFully(detail);
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(detail));
+        readCounts(data);
+        readCounts(data);
+        long[] fingerprints = new long[data.readInt()];
+        long last = 0;
+        for (int i = 0; i < fingerprints.length; i++){
+            long delta = 0;
+            int shift = 0;
+            int b;
+            do{
+                b = data.read();
+                if (b < 0){
+                    throw new EOFException();
+                }
+                delta |= (long)(b & 0x7f) << shift;
+                shift += 7;
+            }while ((b & 0x80) != 0);
+            last += delta;
+            fingerprints[i] = last;
+        }
+        return fingerprints;
+    }
+
+    /**
+     * The bug counts of a past build.
+     */
+    static class Build
+    {
+        private long timestamp;
+        private final int[] bugsByPriority = new int[3];
+        private int newBugs;
+        private int fixedBugs;
+        private Map<String, Integer> bugsByPackage;
+        private Map<String, Integer> bugsByCategory;
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public int getBugCount()
+        {
+            return bugsByPriority[0] + bugsByPriority[1] + bugsByPriority[2];
+        }
+
+        /**
+         * @param priority the priority, <tt>1</tt> (high), <tt>2</tt> (medium) or <tt>3</tt> (low).
+         */
+        public int getBugCount(int priority)
+        {
+            return bugsByPriority[priority - 1];
+        }
+
+        /**
+         * @return the number of bugs which were not found by the previous build.
+         */
+        public int getNewBugCount()
+        {
+            return newBugs;
+        }
+
+        /**
+         * @return the number of bugs found by the previous build which were not found by this build.
+         */
+        public int getFixedBugCount()
+        {
+            return fixedBugs;
+        }
+
+        /**
+         * @return the number of bugs per package, for the packages with bugs.
+         */
+        public Map<String, Integer> getBugsByPackage()
+        {
+            return bugsByPackage;
+        }
+
+        /**
+         * @return the number of bugs per category, for the categories with bugs.
+         */
+        public Map<String, Integer> getBugsByCategory()
+        {
+            return bugsByCategory;
+        }
+    }
+}
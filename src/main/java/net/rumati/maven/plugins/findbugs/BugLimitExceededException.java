@@ -0,0 +1,26 @@
+package net.rumati.maven.plugins.findbugs;
+
+/**
+ * Thrown when an analysis is stopped because the bugs found so far exceed the bug limits. The results found until
+ * then are kept, so they can be reported; they are not cached, as they do not cover all classes.
+ */
+class BugLimitExceededException
+        extends AnalysisException
+{
+    private static final long serialVersionUID = 1L;
+    private final ReportModel model;
+
+    BugLimitExceededException(ReportModel model)
+    {
+        super("The bugs found exceed the limits");
+        this.model = model;
+    }
+
+    /**
+     * @return the results found before the analysis was stopped.
+     */
+    ReportModel getModel()
+    {
+        return model;
+    }
+}
@@ -0,0 +1,64 @@
+package net.rumati.maven.plugins.findbugs;
+
+/**
+ * The maximum number of bugs of each priority a project may have, not counting the bugs in a baseline.
+ */
+class BugLimits
+{
+    private final int[] maxBugs;
+    private final BugBaseline baseline;
+
+    /**
+     * @param maxHigh the maximum number of high priority bugs, or a negative number for no maximum.
+     * @param maxMedium the maximum number of medium priority bugs, or a negative number for no maximum.
+     * @param maxLow the maximum number of low priority bugs, or a negative number for no maximum.
+     * @param baseline the known bugs, which are not counted, or <tt>null</tt> to count all bugs.
+     */
+    BugLimits(int maxHigh, int maxMedium, int maxLow, BugBaseline baseline)
+    {
+        this.maxBugs = new int[]{maxHigh, maxMedium, maxLow};
+        this.baseline = baseline;
+    }
+
+    /**
+     * @return whether a bug counts towards the limits, which it does unless it is in the baseline.
+     */
+    boolean counts(ReportBug bug)
+    {
+        return baseline == null || !baseline.contains(bug.getFingerprint());
+    }
+
+    /**
+     * @param bugCounts the number of counted bugs of each priority, high priority first.
+     * @return whether there are more bugs of any priority than allowed.
+     */
+    boolean isExceeded(int[] bugCounts)
+    {
+        for (int i = 0; i < maxBugs.length; i++){
+            if (maxBugs[i] >= 0 && bugCounts[i] > maxBugs[i]){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param bugCounts the number of counted bugs of each priority, high priority first.
+     * @return a description of the limits which are exceeded, such as
+     * <tt>3 High priority bugs (at most 0 allowed)</tt>.
+     */
+    String describe(int[] bugCounts)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < maxBugs.length; i++){
+            if (maxBugs[i] >= 0 && bugCounts[i] > maxBugs[i]){
+                if (sb.length() > 0){
+                    sb.append(", ");
+                }
+                sb.append(bugCounts[i]).append(' ').append(ReportRenderer.getPriorityName(i + 1))
+                        .append(" priority bugs (at most ").append(maxBugs[i]).append(" allowed)");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,343 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact store for the bugs of a report. The type, category, class, priority, lines and fingerprint of each bug are
+ * kept in an int array, with the strings pooled. The messages, which are most of the size of a bug, are kept in
+ * memory up to a limit, beyond which they are spilled to a temporary file and read back when a bug is requested. Bugs
+ * are identified by the order in which they were added, and {@link ReportBug} objects are only created when a bug is
+ * requested.
+ * <p>
+ * A store must be closed when it is no longer used, which deletes the spill file; the bugs of a closed store which
+ * spilled can no longer be read.
+ */
+class BugStore
+        implements Serializable, Closeable
+{
+    private static final long serialVersionUID = 1L;
+    /**
+     * The total length of the messages, in characters, beyond which the messages are spilled to disk.
+     */
+    private static final long SPILL_THRESHOLD = 4L * 1024 * 1024;
+    private static final int TYPE = 0;
+    private static final int CATEGORY = 1;
+    private static final int CLASS_NAME = 2;
+    private static final int PRIORITY = 3;
+    private static final int START_LINE = 4;
+    private static final int END_LINE = 5;
+    private static final int FINGERPRINT_HIGH = 6;
+    private static final int FINGERPRINT_LOW = 7;
+    private static final int FIELDS = 8;
+    private transient List<String> strings = new ArrayList<String>();
+    private transient Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private transient int[] data = new int[FIELDS * 64];
+    private transient int size;
+    private transient List<String> messages = new ArrayList<String>();
+    private transient long messageLength;
+    private transient File spillFile;
+    private transient DataOutputStream spillOut;
+    private transient long spillLength;
+    private transient int spilledCount;
+    private transient long[] messageOffsets;
+    private transient RandomAccessFile spillIn;
+    private transient boolean closed;
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds a bug.
+     * @return the id of the bug.
+     */
+    public synchronized int add(ReportBug bug)
+    {
+        if ((size + 1) * FIELDS > data.length){
+            int[] newData = new int[data.length * 2];
+            System.arraycopy(data, 0, newData, 0, size * FIELDS);
+            data = newData;
+        }
+        int offset = size * FIELDS;
+        data[offset + TYPE] = getStringId(bug.getType());
+        data[offset + CATEGORY] = getStringId(bug.getCategory());
+        data[offset + CLASS_NAME] = getStringId(bug.getClassName());
+        data[offset + PRIORITY] = bug.getPriority();
+        data[offset + START_LINE] = bug.getStartLine();
+        data[offset + END_LINE] = bug.getEndLine();
+        data[offset + FINGERPRINT_HIGH] = (int)(bug.getFingerprint() >>> 32);
+        data[offset + FINGERPRINT_LOW] = (int)bug.getFingerprint();
+        addMessage(bug.getMessage() == null ? "" : bug.getMessage());
+        return size++;
+    }
+
+    private int getStringId(String value)
+    {
+        Integer id = stringIds.get(value);
+        if (id == null){
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void addMessage(String message)
+    {
+        try{
+            if (spillFile == null){
+                messages.add(message);
+                messageLength += message.length();
+                if (messageLength > SPILL_THRESHOLD){
+                    spill();
+                }
+            }else{
+                writeMessage(message);
+            }
+        }catch (IOException e){
+            throw new IllegalStateException("Could not write bug messages to " + spillFile, e);
+        }
+    }
+
+    /**
+     * Moves the messages held in memory to the spill file.
+     */
+    private void spill()
+            throws IOException
+    {
+        spillFile = File.createTempFile("findbugs-bugs", ".tmp");
+        /*
+         * Stores are closed explicitly; this only cleans up after a store which was not, such as on an error.
+         */
+        spillFile.deleteOnExit();
+        spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), 65536));
+        messageOffsets = new long[Math.max(data.length / FIELDS, 64)];
+        for (String message : messages){
+            writeMessage(message);
+        }
+        messages = null;
+    }
+
+    private void writeMessage(String message)
+            throws IOException
+    {
+        int id = spilledCount;
+        if (id == messageOffsets.length){
+            long[] newOffsets = new long[messageOffsets.length * 2];
+            System.arraycopy(messageOffsets, 0, newOffsets, 0, id);
+            messageOffsets = newOffsets;
+        }
+        messageOffsets[id] = spillLength;
+        byte[] bytes = message.getBytes("UTF-8");
+        spillOut.writeInt(bytes.length);
+        spillOut.write(bytes);
+        spillLength += 4 + bytes.length;
+        spilledCount++;
+    }
+
+    private String readMessage(int id)
+            throws IOException
+    {
+        if (spillIn == null){
+            spillIn = new RandomAccessFile(spillFile, "r");
+        }
+        spillOut.flush();
+        spillIn.seek(messageOffsets[id]);
+        byte[] bytes = new byte[spillIn.readInt()];
+        spillIn.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    public synchronized ReportBug get(int id)
+    {
+        checkId(id);
+        int offset = id * FIELDS;
+        String message;
+        if (spillFile == null){
+            message = messages.get(id);
+        }else{
+            try{
+                message = readMessage(id);
+            }catch (IOException e){
+                throw new IllegalStateException("Could not read bug messages from " + spillFile, e);
+            }
+        }
+        return new ReportBug(strings.get(data[offset + TYPE]), strings.get(data[offset + CATEGORY]),
+                data[offset + PRIORITY], strings.get(data[offset + CLASS_NAME]), data[offset + START_LINE],
+                data[offset + END_LINE], message, getFingerprint(id));
+    }
+
+    /**
+     * @return the fingerprint of a bug, without reading its message.
+     */
+    public synchronized long getFingerprint(int id)
+    {
+        checkId(id);
+        int offset = id * FIELDS;
+        return ((long)data[offset + FINGERPRINT_HIGH] << 32) | (data[offset + FINGERPRINT_LOW] & 0xffffffffL);
+    }
+
+    /**
+     * @return the type of a bug, without reading its message.
+     */
+    public synchronized String getType(int id)
+    {
+        checkId(id);
+        return strings.get(data[id * FIELDS + TYPE]);
+    }
+
+    /**
+     * @return the class name of a bug, without reading its message.
+     */
+    public synchronized String getClassName(int id)
+    {
+        checkId(id);
+        return strings.get(data[id * FIELDS + CLASS_NAME]);
+    }
+
+    /**
+     * @return the priority of a bug, without reading its message.
+     */
+    public synchronized int getPriority(int id)
+    {
+        checkId(id);
+        return data[id * FIELDS + PRIORITY];
+    }
+
+    private void checkId(int id)
+    {
+        if (id < 0 || id >= size){
+            throw new IndexOutOfBoundsException("Bug " + id + " of " + size);
+        }
+    }
+
+    /**
+     * @return a read only view of the bugs with the given ids, of which a bug is created each time it is requested.
+     */
+    public List<ReportBug> asList(final IntList ids)
+    {
+        return new AbstractList<ReportBug>()
+        {
+            @Override
+            public ReportBug get(int index)
+            {
+                return BugStore.this.get(ids.get(index));
+            }
+
+            @Override
+            public int size()
+            {
+                return ids.size();
+            }
+        };
+    }
+
+    /**
+     * @return a read only view of all bugs, in the order in which they were added.
+     */
+    public List<ReportBug> asList()
+    {
+        return new AbstractList<ReportBug>()
+        {
+            @Override
+            public ReportBug get(int index)
+            {
+                return BugStore.this.get(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return BugStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Closes and deletes the spill file, if any. Closing a closed store does nothing.
+     */
+    public synchronized void close()
+            throws IOException
+    {
+        if (closed){
+            return;
+        }
+        closed = true;
+        try{
+            if (spillOut != null){
+                spillOut.close();
+                spillOut = null;
+            }
+            if (spillIn != null){
+                spillIn.close();
+                spillIn = null;
+            }
+        }finally{
+            if (spillFile != null){
+                spillFile.delete();
+            }
+        }
+    }
+
+    /*
+     * The bugs are written one at a time, so a spilled store is never read into memory as a whole.
+     */
+    private synchronized void writeObject(ObjectOutputStream out)
+            throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++){
+            ReportBug bug = get(i);
+            out.writeObject(bug.getType());
+            out.writeObject(bug.getCategory());
+            out.writeObject(bug.getClassName());
+            out.writeInt(bug.getPriority());
+            out.writeInt(bug.getStartLine());
+            out.writeInt(bug.getEndLine());
+            out.writeLong(bug.getFingerprint());
+            byte[] message = bug.getMessage().getBytes("UTF-8");
+            out.writeInt(message.length);
+            out.write(message);
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        strings = new ArrayList<String>();
+        stringIds = new HashMap<String, Integer>();
+        data = new int[FIELDS * 64];
+        messages = new ArrayList<String>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++){
+            String type = (String)in.readObject();
+            String category = (String)in.readObject();
+            String className = (String)in.readObject();
+            int priority = in.readInt();
+            int startLine = in.readInt();
+            int endLine = in.readInt();
+            long fingerprint = in.readLong();
+            byte[] message = new byte[in.readInt()];
+            in.readFully(message);
+            add(new ReportBug(type, category, priority, className, startLine, endLine, new String(message, "UTF-8"),
+                    fingerprint));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Analyzes the project and fails the build if it has more bugs of a priority than allowed, without rendering a
+ * report. The analysis is configured with the same parameters as the report, and the bugs in the <tt>baseline</tt>
+ * are not counted. The bugs found are written to the log. The goal is bound to the <tt>verify</tt> phase, and analyzes
+ * the classes compiled earlier in the build.
+ * @goal check
+ * @phase verify
+ * @requiresDependencyResolution compile
+ * @requiresProject
+ */
+public class CheckMojo
+        extends AbstractFindBugsMojo
+{
+    /**
+     * The maximum number of high priority bugs, or -1 for no maximum.
+     * @parameter expression="${findbugs.maxHighPriorityBugs}" default-value="0"
+     */
+    private int maxHighPriorityBugs;
+    /**
+     * The maximum number of medium priority bugs, or -1 for no maximum.
+     * @parameter expression="${findbugs.maxMediumPriorityBugs}" default-value="-1"
+     */
+    private int maxMediumPriorityBugs;
+    /**
+     * The maximum number of low priority bugs, or -1 for no maximum.
+     * @parameter expression="${findbugs.maxLowPriorityBugs}" default-value="-1"
+     */
+    private int maxLowPriorityBugs;
+    /**
+     * Whether to stop the analysis as soon as the bugs found exceed a maximum, rather than finding all bugs. The
+     * analysis can only be stopped when FindBugs runs in the Maven JVM, which is when <tt>inProcess</tt> is set and
+     * none of <tt>fork</tt>, <tt>workers</tt> and <tt>daemon</tt> are; otherwise all bugs are found, and a warning is
+     * logged.
+     * @parameter expression="${findbugs.failFast}" default-value="true"
+     */
+    private boolean failFast;
+
+    public void execute()
+            throws MojoExecutionException, MojoFailureException
+    {
+        if (!hasClasses()){
+            getLog().info("No classes to analyze, skipping the FindBugs check");
+            return;
+        }
+        BugBaseline known = null;
+        File baseline = getBaseline();
+        if (baseline != null){
+            if (baseline.isFile()){
+                try{
+                    known = BugBaseline.load(baseline);
+                }catch (IOException e){
+                    throw new MojoExecutionException("Error reading baseline " + baseline, e);
+                }
+            }else{
+                getLog().warn("FindBugs baseline " + baseline + " does not exist, counting all bugs");
+            }
+        }
+        BugLimits limits = new BugLimits(maxHighPriorityBugs, maxMediumPriorityBugs, maxLowPriorityBugs, known);
+
+        if (failFast && !isStoppable()){
+            getLog().warn("failFast has no effect when FindBugs does not run in the Maven JVM, finding all bugs");
+        }
+
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        ReportModel model = analyze(metrics, Collections.<String>emptyList(), getChangedClasses(),
+                failFast ? limits : null);
+        ReportModel checked = model;
+        try{
+            if (known != null){
+                checked = model.withoutBaseline(known);
+            }
+            writeMetrics(metrics, checked);
+
+            for (ReportBug bug : checked.getBugs()){
+                getLog().warn("[" + ReportRenderer.getPriorityName(bug.getPriority()) + "] " + bug.getType() + " in "
+                        + bug.getClassName() + (bug.getStartLine() < 0 ? "" : ":" + bug.getStartLine()) + " "
+                        + bug.getMessage());
+            }
+            int[] bugCounts = new int[]{checked.getBugCount(1), checked.getBugCount(2), checked.getBugCount(3)};
+            if (limits.isExceeded(bugCounts)){
+                throw new MojoFailureException("FindBugs found " + limits.describe(bugCounts));
+            }
+            getLog().info("FindBugs found " + checked.getBugCount() + " bugs, which is within the limits");
+        }finally{
+            if (checked != model){
+                checked.close();
+            }
+            model.close();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The name, content digest and referenced types of a class file, read from its constant pool, and the name of the
+ * source file it was compiled from.
+ */
+class ClassFileInfo
+{
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    private final File file;
+    private final String className;
+    private final String digest;
+    private final long size;
+    private final Set<String> references;
+    private final String sourceFile;
+
+    private ClassFileInfo(File file, String className, String digest, long size, Set<String> references,
+            String sourceFile)
+    {
+        this.file = file;
+        this.className = className;
+        this.digest = digest;
+        this.size = size;
+        this.references = references;
+        this.sourceFile = sourceFile;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the name of the class, such as <tt>com.example.Outer$Inner</tt>.
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * @return the hex encoded digest of the class file contents.
+     */
+    public String getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * @return the size of the class file, in bytes.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the names of the classes referenced by this class, excluding the class itself.
+     */
+    public Set<String> getReferences()
+    {
+        return references;
+    }
+
+    /**
+     * @return the name of the source file the class was compiled from, without directory, such as
+     * <tt>Outer.java</tt>, or <tt>null</tt> if the class was compiled without debug information.
+     */
+    public String getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /**
+     * Reads a class file.
+     * @param file the class file.
+     * @return the class file information.
+     * @throws IOException if the file could not be read, or is not a valid class file.
+     */
+    public static ClassFileInfo read(File file)
+            throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        byte[] bytes;
+        try{
+            bytes = readFully(in, (int)file.length());
+        }finally{
+            in.close();
+        }
+        return read(file, bytes);
+    }
+
+    static ClassFileInfo read(File file, byte[] bytes)
+            throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE){
+            throw new IOException("Not a class file: " + file);
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIndexes = new int[count];
+        for (int i = 1; i < count; i++){
+            int tag = in.readUnsignedByte();
+            switch (tag){
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.readLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " in " + file);
+            }
+        }
+        in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+        in.readUnsignedShort();
+        in.skipBytes(in.readUnsignedShort() * 2);
+        for (int members = 0; members < 2; members++){
+            int memberCount = in.readUnsignedShort();
+            for (int i = 0; i < memberCount; i++){
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+        }
+        String sourceFile = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++){
+            String attributeName = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("SourceFile".equals(attributeName)){
+                sourceFile = utf8[in.readUnsignedShort()];
+            }else{
+                in.skipBytes(length);
+            }
+        }
+
+        String className = utf8[classNameIndexes[thisClass]];
+        if (className == null){
+            throw new IOException("Invalid class file: " + file);
+        }
+        className = className.replace('/', '.');
+
+        Set<String> references = new HashSet<String>();
+        for (int i = 1; i < count; i++){
+            if (classNameIndexes[i] == 0){
+                continue;
+            }
+            String name = utf8[classNameIndexes[i]];
+            if (name.startsWith("[")){
+                addDescriptorReferences(name, references);
+            }else{
+                references.add(name.replace('/', '.'));
+            }
+        }
+        for (int i = 1; i < count; i++){
+            /*
+             * Field, method and generic signatures refer to types which need not appear as class constants.
+             */
+            if (utf8[i] != null && utf8[i].length() > 0 && "(L[<".indexOf(utf8[i].charAt(0)) >= 0){
+                addDescriptorReferences(utf8[i], references);
+            }
+        }
+        references.remove(className);
+        return new ClassFileInfo(file, className, Fingerprint.digest(bytes), bytes.length,
+                Collections.unmodifiableSet(references), sourceFile);
+    }
+
+    private static void skipAttributes(DataInputStream in)
+            throws IOException
+    {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++){
+            in.readUnsignedShort();
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static void addDescriptorReferences(String descriptor, Set<String> references)
+    {
+        int idx = descriptor.indexOf('L');
+        while (idx >= 0){
+            int end = descriptor.indexOf(';', idx);
+            if (end < 0){
+                return;
+            }
+            int generic = descriptor.indexOf('<', idx);
+            if (generic >= 0 && generic < end){
+                end = generic;
+            }
+            String name = descriptor.substring(idx + 1, end);
+            if (name.length() > 0 && name.indexOf('(') < 0 && name.indexOf(')') < 0){
+                references.add(name.replace('/', '.'));
+            }
+            idx = descriptor.indexOf('L', end);
+        }
+    }
+
+    static byte[] readFully(InputStream in, int sizeHint)
+            throws IOException
+    {
+        byte[] buffer = new byte[Math.max(sizeHint, 1024)];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) >= 0){
+            length += read;
+            if (length == buffer.length){
+                byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Finds the class files in a directory, recursively.
+     * @param directory the directory to search.
+     * @return the class files.
+     */
+    public static List<File> findClassFiles(File directory)
+    {
+        List<File> files = new ArrayList<File>();
+        findClassFiles(directory, files);
+        return files;
+    }
+
+    private static void findClassFiles(File directory, List<File> files)
+    {
+        File[] children = directory.listFiles();
+        if (children == null){
+            return;
+        }
+        for (File child : children){
+            if (child.isDirectory()){
+                findClassFiles(child, files);
+            }else if (child.getName().endsWith(".class")){
+                files.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Sends analyses to an {@link AnalysisDaemon}, starting the daemon if it is not running. The daemon is shared by all
+ * builds on the machine which use the same plugin class path, and keeps running between builds until it has been
+ * idle for the idle timeout.
+ */
+class DaemonAnalyzer
+        implements Analyzer
+{
+    private static final long STARTUP_TIMEOUT = 60000;
+    private final List<File> classpath;
+    private final int idleTimeout;
+    private final AnalysisMetrics metrics;
+    private final Log log;
+
+    /**
+     * @param classpath the class path of the daemon JVM, which must contain this plugin and FindBugs.
+     * @param idleTimeout the time, in seconds, after which an idle daemon exits.
+     * @param metrics the metrics to which to add the time of the analysis, as measured by the daemon.
+     * @param log the log to which to report starting the daemon.
+     */
+    DaemonAnalyzer(List<File> classpath, int idleTimeout, AnalysisMetrics metrics, Log log)
+    {
+        this.classpath = classpath;
+        this.idleTimeout = idleTimeout;
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        try{
+            File stateFile = getStateFile();
+            Socket socket = connect(stateFile);
+            if (socket == null){
+                socket = startDaemon(stateFile);
+            }
+            try{
+                String[] state = readState(stateFile);
+                if (state == null){
+                    throw new AnalysisException("The FindBugs daemon state file " + stateFile + " disappeared");
+                }
+                socket.getOutputStream().write(state[1].getBytes("US-ASCII"));
+                ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+                out.flush();
+                ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+                out.writeObject(request);
+                out.flush();
+                Object response = in.readObject();
+                if (AnalysisDaemon.RESPONSE_OK.equals(response)
+                        || AnalysisDaemon.RESPONSE_OUT_OF_TIME.equals(response)){
+                    ReportModel model = (ReportModel)in.readObject();
+                    metrics.add((AnalysisMetrics)in.readObject());
+                    if (AnalysisDaemon.RESPONSE_OUT_OF_TIME.equals(response)){
+                        throw new TimeBudgetExceededException(model);
+                    }
+                    return model;
+                }
+                throw new AnalysisException("FindBugs daemon analysis failed: " + in.readObject());
+            }finally{
+                socket.close();
+            }
+        }catch (AnalysisException e){
+            throw e;
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AnalysisException("FindBugs analysis was interrupted", e);
+        }catch (Exception e){
+            throw new AnalysisException("Error running FindBugs in the daemon", e);
+        }
+    }
+
+    /**
+     * @return the state file of the daemon for this plugin class path, so that different plugin versions use
+     *         different daemons. The state file holds the token of the daemon, so it is kept in a directory of the
+     *         user which only the user can access.
+     */
+    private File getStateFile()
+            throws IOException
+    {
+        Fingerprint fingerprint = new Fingerprint();
+        for (File entry : classpath){
+            fingerprint.addStamp(entry);
+        }
+        File directory = new File(System.getProperty("user.home"), ".findbugs-maven-plugin");
+        directory.mkdirs();
+        AnalysisDaemon.restrictToOwner(directory);
+        return new File(directory, "daemon-" + fingerprint.getValue() + ".state");
+    }
+
+    /**
+     * Connects to the daemon described by the state file.
+     * @return the connection, or <code>null</code> if the daemon is not running.
+     */
+    private static Socket connect(File stateFile)
+    {
+        String[] state = readState(stateFile);
+        if (state == null){
+            return null;
+        }
+        try{
+            return new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(state[0]));
+        }catch (IOException e){
+            return null;
+        }catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * @return the port and token from the state file, or <code>null</code> if the file does not exist.
+     */
+    private static String[] readState(File stateFile)
+    {
+        if (!stateFile.isFile()){
+            return null;
+        }
+        try{
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+            try{
+                String port = in.readLine();
+                String token = in.readLine();
+                if (port == null || token == null){
+                    return null;
+                }
+                return new String[]{port, token};
+            }finally{
+                in.close();
+            }
+        }catch (IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * Starts the daemon and connects to it. A lock file prevents concurrent builds from starting more than one
+     * daemon.
+     */
+    private Socket startDaemon(File stateFile)
+            throws IOException, InterruptedException, AnalysisException
+    {
+        RandomAccessFile lockFile = new RandomAccessFile(new File(stateFile.getPath() + ".lock"), "rw");
+        try{
+            FileLock lock = lockFile.getChannel().lock();
+            try{
+                Socket socket = connect(stateFile);
+                if (socket != null){
+                    return socket;
+                }
+                stateFile.delete();
+                log.info("Starting FindBugs analysis daemon");
+
+                List<String> command = new ArrayList<String>();
+                command.add(ForkedAnalyzer.getJavaExecutable());
+                command.add("-cp");
+                command.add(ForkedAnalyzer.toPath(classpath));
+                command.add(AnalysisDaemon.class.getName());
+                command.add(stateFile.getAbsolutePath());
+                command.add(Integer.toString(idleTimeout * 1000));
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                process.getOutputStream().close();
+                process.getInputStream().close();
+
+                long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+                while (System.currentTimeMillis() < deadline){
+                    socket = connect(stateFile);
+                    if (socket != null){
+                        return socket;
+                    }
+                    Thread.sleep(100);
+                }
+                process.destroy();
+                throw new AnalysisException("FindBugs daemon did not start, see " + stateFile.getPath() + ".log");
+            }finally{
+                lock.release();
+            }
+        }finally{
+            lockFile.close();
+        }
+    }
+}
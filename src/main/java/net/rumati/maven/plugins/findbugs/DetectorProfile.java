@@ -0,0 +1,170 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The cost and the number of bugs found of each detector over the past builds of a module, from which the detectors
+ * to skip in adaptive mode are chosen. The profile is kept in a tab separated text file, so it can be inspected.
+ * <p>
+ * A detector is skipped when it found no bugs in its last runs, and its last run took longer than a threshold. Only
+ * detectors which report bugs are skipped; detectors which only collect information for other detectors are always
+ * run. All detectors are run again after a number of builds with skipped detectors, or when the size of the compiled
+ * classes changed by more than {@link #CHANGE_THRESHOLD} percent since the last build which ran all detectors.
+ */
+class DetectorProfile
+{
+    private static final String HEADER = "#detector\truns\tzeroRuns\tlastMillis\ttotalMillis\ttotalBugs";
+    private static final String STATE = "#state";
+    /**
+     * The change in the size of the compiled classes, in percent, beyond which all detectors are run again.
+     */
+    static final int CHANGE_THRESHOLD = 20;
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+    private long fullRunClassBytes = -1;
+    private int runsSinceFullRun;
+
+    /**
+     * Reads a profile file.
+     * @return the profile, which is empty if the file does not exist.
+     */
+    static DetectorProfile load(File file)
+            throws IOException
+    {
+        DetectorProfile profile = new DetectorProfile();
+        if (!file.isFile()){
+            return profile;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try{
+            String line;
+            while ((line = in.readLine()) != null){
+                String[] fields = line.split("\t");
+                try{
+                    if (fields[0].equals(STATE) && fields.length == 3){
+                        profile.fullRunClassBytes = Long.parseLong(fields[1]);
+                        profile.runsSinceFullRun = Integer.parseInt(fields[2]);
+                    }else if (!fields[0].startsWith("#") && fields.length == 6){
+                        Entry entry = new Entry();
+                        entry.runs = Integer.parseInt(fields[1]);
+                        entry.zeroRuns = Integer.parseInt(fields[2]);
+                        entry.lastMillis = Long.parseLong(fields[3]);
+                        entry.totalMillis = Long.parseLong(fields[4]);
+                        entry.totalBugs = Long.parseLong(fields[5]);
+                        profile.entries.put(fields[0], entry);
+                    }
+                }catch (NumberFormatException e){
+                    throw new IOException("Invalid line in detector profile " + file + ": " + line);
+                }
+            }
+        }finally{
+            in.close();
+        }
+        return profile;
+    }
+
+    void save(File file)
+            throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try{
+            out.write(STATE + "\t" + fullRunClassBytes + "\t" + runsSinceFullRun + "\n");
+            out.write(HEADER + "\n");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()){
+                Entry e = entry.getValue();
+                out.write(entry.getKey() + "\t" + e.runs + "\t" + e.zeroRuns + "\t" + e.lastMillis + "\t"
+                        + e.totalMillis + "\t" + e.totalBugs + "\n");
+            }
+        }finally{
+            out.close();
+        }
+    }
+
+    /**
+     * Chooses the detectors to skip in the next build.
+     * @param costThreshold the time, in milliseconds, above which a detector which finds no bugs is skipped.
+     * @param zeroRuns the number of consecutive runs in which a detector must have found no bugs to be skipped.
+     * @param recheckRuns the number of builds with skipped detectors after which all detectors are run again.
+     * @param classBytes the size of the compiled classes of the module.
+     * @return the class names of the detectors to skip.
+     */
+    List<String> getDetectorsToSkip(long costThreshold, int zeroRuns, int recheckRuns, long classBytes)
+    {
+        List<String> skipped = new ArrayList<String>();
+        if (fullRunClassBytes < 0 || runsSinceFullRun >= recheckRuns
+                || Math.abs(classBytes - fullRunClassBytes) * 100 > fullRunClassBytes * CHANGE_THRESHOLD){
+            return skipped;
+        }
+        for (Map.Entry<String, Entry> entry : entries.entrySet()){
+            Entry e = entry.getValue();
+            if (e.zeroRuns >= zeroRuns && e.lastMillis >= costThreshold){
+                skipped.add(entry.getKey());
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Records the cost and the number of bugs of the detectors which ran in a build. Detectors which do not report
+     * bugs are not recorded.
+     * @param metrics the metrics of the build, with the time spent in each detector.
+     * @param model the bugs found by the build.
+     * @param skipped the detectors which were skipped in the build.
+     * @param classBytes the size of the compiled classes of the module.
+     */
+    void update(AnalysisMetrics metrics, ReportModel model, List<String> skipped, long classBytes)
+    {
+        Map<String, Integer> bugsByType = model.getBugCountsByType();
+        Map<String, Long> detectorMillis = metrics.getDetectorMillis();
+        for (Map.Entry<String, Set<String>> detector : FindBugsRegistry.getReportedBugTypes().entrySet()){
+            Long millis = detectorMillis.get(detector.getKey());
+            if (millis == null){
+                continue;
+            }
+            int bugs = 0;
+            for (String type : detector.getValue()){
+                Integer count = bugsByType.get(type);
+                if (count != null){
+                    bugs += count;
+                }
+            }
+            Entry entry = entries.get(detector.getKey());
+            if (entry == null){
+                entry = new Entry();
+                entries.put(detector.getKey(), entry);
+            }
+            entry.runs++;
+            entry.zeroRuns = bugs == 0 ? entry.zeroRuns + 1 : 0;
+            entry.lastMillis = millis;
+            entry.totalMillis += millis;
+            entry.totalBugs += bugs;
+        }
+        if (skipped.isEmpty()){
+            fullRunClassBytes = classBytes;
+            runsSinceFullRun = 0;
+        }else{
+            runsSinceFullRun++;
+        }
+    }
+
+    private static class Entry
+    {
+        private int runs;
+        private int zeroRuns;
+        private long lastMillis;
+        private long totalMillis;
+        private long totalBugs;
+    }
+}
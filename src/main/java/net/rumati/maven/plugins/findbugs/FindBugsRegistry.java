@@ -0,0 +1,107 @@
+package net.rumati.maven.plugins.findbugs;
+
+import edu.umd.cs.findbugs.BugPattern;
+import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.I18N;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.classfile.Global;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The FindBugs detector factories and bug pattern metadata, shared by the analyses of all modules which run in the
+ * Maven JVM. Maven keeps the class loader of a plugin for the whole session, so the FindBugs plugins and message files
+ * are loaded by the first module which is analyzed, and later modules only pay for their own analysis. The report
+ * objects for bug patterns and categories, which are immutable, are also created once.
+ * <p>
+ * FindBugs keeps the state of an analysis, including the classes it read, for the thread which ran it. That state is
+ * released with {@link #releaseAnalysisState()} after each analysis, so that a module does not hold on to the classes
+ * of the module analyzed before it on the same thread.
+ */
+final class FindBugsRegistry
+{
+    private static final ConcurrentMap<String, ReportBugPattern> PATTERNS
+            = new ConcurrentHashMap<String, ReportBugPattern>();
+    private static final ConcurrentMap<String, ReportCategory> CATEGORIES
+            = new ConcurrentHashMap<String, ReportCategory>();
+    private static Map<String, Set<String>> reportedBugTypes;
+
+    private FindBugsRegistry()
+    {
+    }
+
+    /**
+     * @return the detector factories of the core and installed FindBugs plugins, loaded the first time this is called.
+     */
+    static DetectorFactoryCollection getDetectorFactories()
+    {
+        return DetectorFactoryCollection.instance();
+    }
+
+    static ReportBugPattern getPattern(BugPattern pattern)
+    {
+        ReportBugPattern reportPattern = PATTERNS.get(pattern.getType());
+        if (reportPattern == null){
+            reportPattern = new ReportBugPattern(pattern.getType(), pattern.getCategory(),
+                    pattern.getShortDescription(), pattern.getDetailText());
+            ReportBugPattern existing = PATTERNS.putIfAbsent(pattern.getType(), reportPattern);
+            if (existing != null){
+                reportPattern = existing;
+            }
+        }
+        return reportPattern;
+    }
+
+    static ReportCategory getCategory(String category)
+    {
+        ReportCategory reportCategory = CATEGORIES.get(category);
+        if (reportCategory == null){
+            reportCategory = new ReportCategory(category, I18N.instance().getBugCategoryDescription(category));
+            ReportCategory existing = CATEGORIES.putIfAbsent(category, reportCategory);
+            if (existing != null){
+                reportCategory = existing;
+            }
+        }
+        return reportCategory;
+    }
+
+    /**
+     * @return the types of the bugs each detector reports, by the class name of the detector. Detectors which report
+     *         no bugs are left out.
+     */
+    static synchronized Map<String, Set<String>> getReportedBugTypes()
+    {
+        if (reportedBugTypes == null){
+            Map<String, Set<String>> types = new HashMap<String, Set<String>>();
+            Iterator<DetectorFactory> factories = getDetectorFactories().factoryIterator();
+            while (factories.hasNext()){
+                DetectorFactory factory = factories.next();
+                Set<String> patternTypes = new HashSet<String>();
+                for (BugPattern pattern : factory.getReportedBugPatterns()){
+                    patternTypes.add(pattern.getType());
+                }
+                if (!patternTypes.isEmpty()){
+                    types.put(factory.getFullName(), Collections.unmodifiableSet(patternTypes));
+                }
+            }
+            reportedBugTypes = Collections.unmodifiableMap(types);
+        }
+        return reportedBugTypes;
+    }
+
+    /**
+     * Releases the analysis context and class cache FindBugs keeps for the current thread after an analysis.
+     */
+    static void releaseAnalysisState()
+    {
+        AnalysisContext.removeCurrentAnalysisContext();
+        Global.removeAnalysisCacheForCurrentThread();
+    }
+}
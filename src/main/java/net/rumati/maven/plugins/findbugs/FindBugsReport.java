@@ -1,47 +1,37 @@
 package net.rumati.maven.plugins.findbugs;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.LinkedList;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.apache.maven.artifact.Artifact;
+import java.util.Map;
+import java.util.Set;
 import org.apache.maven.doxia.sink.Sink;
+import org.apache.maven.doxia.sink.SinkFactory;
 import org.apache.maven.doxia.siterenderer.Renderer;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.reporting.AbstractMavenReport;
+import org.apache.maven.reporting.MavenMultiPageReport;
 import org.apache.maven.reporting.MavenReportException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
- * Generates the FindBugs report.
+ * Generates the FindBugs report. The analysis is shared with the other goals through {@link AbstractFindBugsMojo}, so
+ * the writing of the report, as a site report or on its own, is left to an {@link AbstractMavenReport} to which this
+ * report delegates.
  * @goal findbugs
  * @execute phase="compile"
  * @requiresDependencyResolution compile
  * @requiresProject
  */
 public class FindBugsReport
-        extends AbstractMavenReport
+        extends AbstractFindBugsMojo
+        implements MavenMultiPageReport
 {
     /**
      * The output directory for the report.
@@ -50,13 +40,6 @@ public class FindBugsReport
      * @readonly
      */
     private File outputDirectory;
-    /**
-     * The project for which to run the report.
-     * @parameter default-value="${project}"
-     * @required
-     * @readonly
-     */
-    private MavenProject project;
     /**
      * The site renderer to use when creating content.
      * @component
@@ -72,739 +55,406 @@ public class FindBugsReport
      */
     private String xrefPath;
     /**
-     * The minimum priority which a bug must have to appear on the report. Possible values are
-     * <tt>low</tt>, <tt>medium</tt> and <tt>high</tt>. If <tt>threshold</tt> is <tt>low</tt>,
-     * bugs of priorities <tt>low</tt>, <tt>medium</tt> and <tt>high</tt> will be reported. If
-     * <tt>threshold</tt> is <tt>medium</tt> only bugs of priorities <tt>medium</tt> and <tt>high</tt>
-     * will be reported. If <tt>threshold</tt> is <tt>high</tt> only <tt>high</tt> priority bugs
-     * will be reported.
-     * @parameter default-value="medium"
+     * Whether to show the source lines of each bug, with <tt>sourceSnippetLines</tt> lines before and after them, in
+     * the report. The lines are read from the compile source roots, so no cross referenced source is needed.
+     * @parameter expression="${findbugs.sourceSnippets}" default-value="false"
      */
-    private String threshold;
+    private boolean sourceSnippets;
     /**
-     * The amount of effort to use when looking for bugs. Possible values are
-     * <tt>min</tt>, <tt>less</tt>, <tt>default</tt>, <tt>more</tt> and <tt>max</tt>.
-     * @parameter default-value="default"
+     * The number of lines to show before and after the lines of a bug with <tt>sourceSnippets</tt>.
+     * @parameter expression="${findbugs.sourceSnippetLines}" default-value="2"
      */
-    private String effort;
+    private int sourceSnippetLines;
     /**
-     * An exclude filter file, with a list of rules for bugs to exclude from the report.
-     * @parameter
+     * The encoding of the source files, for <tt>sourceSnippets</tt>. The platform encoding is used if not set.
+     * @parameter expression="${findbugs.sourceEncoding}" default-value="${project.build.sourceEncoding}"
      */
-    private File excludeFilterFile;
-
-    @Override
-    protected Renderer getSiteRenderer()
-    {
-        return siteRenderer;
-    }
-
-    @Override
-    protected String getOutputDirectory()
-    {
-        return outputDirectory.getAbsolutePath();
-    }
-
-    @Override
-    protected MavenProject getProject()
+    private String sourceEncoding;
+    /**
+     * Whether to write the report as an index page with the summary, and a separate page per package and per bug
+     * pattern, instead of as one page. This keeps the pages small for projects with many bugs. If no sink factory is
+     * available to create the extra pages, one page is written.
+     * @parameter expression="${findbugs.multiPage}" default-value="false"
+     */
+    private boolean multiPage;
+    /**
+     * The number of threads on which to render the package and category sections of the report, or the package and
+     * bug pattern pages. The output is the same as when rendering on one thread.
+     * @parameter expression="${findbugs.renderThreads}" default-value="1"
+     */
+    private int renderThreads;
+    /**
+     * Whether to record the time spent in each detector and the number of bugs it found, over the builds of the
+     * module, in <tt>detectors.profile</tt> in the <tt>findbugs</tt> directory under the build directory.
+     * @parameter expression="${findbugs.profileDetectors}" default-value="false"
+     */
+    private boolean profileDetectors;
+    /**
+     * Whether to skip the detectors which found no bugs in the last <tt>adaptiveZeroRuns</tt> builds, and of which the
+     * last run took longer than <tt>adaptiveCostThreshold</tt>. Detectors are profiled as with
+     * <tt>profileDetectors</tt>. All detectors are run again after <tt>adaptiveRecheckRuns</tt> builds, or when the
+     * size of the compiled classes changed by more than 20 percent. The skipped detectors are listed on the report.
+     * @parameter expression="${findbugs.adaptiveDetectors}" default-value="false"
+     */
+    private boolean adaptiveDetectors;
+    /**
+     * The time, in milliseconds, above which a detector which finds no bugs is skipped in adaptive mode.
+     * @parameter expression="${findbugs.adaptiveCostThreshold}" default-value="1000"
+     */
+    private int adaptiveCostThreshold;
+    /**
+     * The number of consecutive builds in which a detector must have found no bugs to be skipped in adaptive mode.
+     * @parameter expression="${findbugs.adaptiveZeroRuns}" default-value="5"
+     */
+    private int adaptiveZeroRuns;
+    /**
+     * The number of builds with skipped detectors after which all detectors are run again in adaptive mode.
+     * @parameter expression="${findbugs.adaptiveRecheckRuns}" default-value="10"
+     */
+    private int adaptiveRecheckRuns;
+    /**
+     * A file in which to keep the bug counts of each build, from which the report shows the trend of the bugs over
+     * the last <tt>trendBuilds</tt> builds. The file should be outside the build directory, so that it survives
+     * <tt>mvn clean</tt>. If not set, no history is kept. The history counts all bugs, including those in the
+     * <tt>baseline</tt>. The builds are kept by the group and artifact id of the project, so that modules may share
+     * the file. Builds which did not look for all bugs are not kept: those which skipped detectors through
+     * <tt>adaptiveDetectors</tt>, or did not analyze all classes at the configured effort within the
+     * <tt>timeBudget</tt>, as the bugs they did not look for would show up as fixed.
+     * @parameter expression="${findbugs.historyFile}"
+     */
+    private File historyFile;
+    /**
+     * The number of builds to keep in the history file.
+     * @parameter expression="${findbugs.historyRetention}" default-value="100"
+     */
+    private int historyRetention;
+    /**
+     * The number of most recent builds to show in the trend section of the report.
+     * @parameter expression="${findbugs.trendBuilds}" default-value="10"
+     */
+    private int trendBuilds;
+    private final AbstractMavenReport report = new AbstractMavenReport()
     {
-        return project;
-    }
+        @Override
+        protected Renderer getSiteRenderer()
+        {
+            return siteRenderer;
+        }
 
-    @Override
-    public boolean canGenerateReport()
-    {
-        return new File(project.getBuild().getOutputDirectory()).isDirectory();
-    }
+        @Override
+        protected String getOutputDirectory()
+        {
+            return outputDirectory.getAbsolutePath();
+        }
 
-    private void writeFindBugsProjectFile(MavenProject project, File outputFile)
-            throws ParserConfigurationException, TransformerException, IOException
-    {
-        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        Element projectElement = doc.createElement("Project");
-        doc.appendChild(projectElement);
-        projectElement.setAttribute("projectName", project.getName());
+        @Override
+        protected MavenProject getProject()
+        {
+            return FindBugsReport.this.getProject();
+        }
 
-        Element jar = doc.createElement("Jar");
-        jar.setTextContent(project.getBuild().getOutputDirectory());
-        projectElement.appendChild(jar);
+        @Override
+        protected void executeReport(Locale locale)
+                throws MavenReportException
+        {
+            FindBugsReport.this.executeReport(locale);
+        }
 
-        for (Object o : project.getCompileSourceRoots()){
-            Element el = doc.createElement("SrcDir");
-            el.setTextContent(o.toString());
-            projectElement.appendChild(el);
+        @Override
+        public boolean canGenerateReport()
+        {
+            return FindBugsReport.this.canGenerateReport();
         }
 
-        for (Object o : project.getArtifacts()){
-            Artifact a = (Artifact)o;
-            Element el = doc.createElement("AuxClasspathEntry");
-            el.setTextContent(a.getFile().getAbsolutePath());
-            projectElement.appendChild(el);
+        public String getOutputName()
+        {
+            return FindBugsReport.this.getOutputName();
         }
 
-        Transformer trans = TransformerFactory.newInstance().newTransformer();
-        trans.setOutputProperty(OutputKeys.METHOD, "xml");
-        trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        trans.setOutputProperty(OutputKeys.INDENT, "yes");
-        trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        public String getName(Locale locale)
+        {
+            return FindBugsReport.this.getName(locale);
+        }
 
-        OutputStream out = new FileOutputStream(outputFile);
-        try {
-            trans.transform(new DOMSource(doc), new StreamResult(out));
-        }finally{
-            out.close();
+        public String getDescription(Locale locale)
+        {
+            return FindBugsReport.this.getDescription(locale);
         }
+    };
+
+    public void execute()
+            throws MojoExecutionException
+    {
+        report.setLog(getLog());
+        report.execute();
     }
 
-    @Override
-    protected void executeReport(Locale locale)
+    public void generate(org.codehaus.doxia.sink.Sink sink, Locale locale)
             throws MavenReportException
     {
-        if (!canGenerateReport()){
-            return;
-        }
-        try{
-            File tmpProjectFile = File.createTempFile("findbugs", ".fbp");
-            try{
-                writeFindBugsProjectFile(project, tmpProjectFile);
-                File outputFile = File.createTempFile("findbug", ".xml");
-                try{
-                    String bugPriorityLevel = null;
-                    if (threshold.toLowerCase().equals("low")){
-                        bugPriorityLevel = "-low";
-                    }else if (threshold.toLowerCase().equals("medium")){
-                        bugPriorityLevel = "-medium";
-                    }else if (threshold.toLowerCase().equals("high")){
-                        bugPriorityLevel = "-high";
-                    }else{
-                        throw new MavenReportException("Unkown threshold: " + threshold);
-                    }
-
-                    String effortArg = null;
-                    if (effort.toLowerCase().equals("min")){
-                        effortArg = "-effort:min";
-                    }else if (effort.toLowerCase().equals("less")){
-                        effortArg = "-effort:less";
-                    }else if (effort.toLowerCase().equals("default")){
-                        effortArg = "-effort:default";
-                    }else if (effort.toLowerCase().equals("more")){
-                        effortArg = "-effort:more";
-                    }else if (effort.toLowerCase().equals("max")){
-                        effortArg = "-effort:max";
-                    }
-
-                    List<String> args = new LinkedList<String>();
-                    args.add("-textui");
-                    args.add(effortArg);
-                    args.add(bugPriorityLevel);
-
-                    if (excludeFilterFile != null){
-                        if (!excludeFilterFile.exists()){
-                            throw new MavenReportException("Exclude file does not exist: " + excludeFilterFile.getAbsolutePath());
-                        }
-                        args.add("-exclude");
-                        args.add(excludeFilterFile.getAbsolutePath());
-                    }
-
-                    args.add("-project");
-                    args.add(tmpProjectFile.getAbsolutePath());
-                    args.add("-xml:withMessages");
-                    args.add("-output");
-                    args.add(outputFile.getAbsolutePath());
-
-                    edu.umd.cs.findbugs.LaunchAppropriateUI.main(args.toArray(new String[args.size()]));
-                    Document doc =
-                            DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(outputFile);
-                    XPath xpath = XPathFactory.newInstance().newXPath();
-
-                    Sink sink = getSink();
-
-                    sink.head();
-                    sink.title();
-                    sink.text("FindBugs Report");
-                    sink.title_();
-                    sink.head_();
+        report.setLog(getLog());
+        report.generate(sink, locale);
+    }
 
-                    sink.body();
+    public void generate(Sink sink, SinkFactory sinkFactory, Locale locale)
+            throws MavenReportException
+    {
+        report.setLog(getLog());
+        report.generate(sink, sinkFactory, locale);
+    }
 
-                    sink.section1();
-                    sink.sectionTitle1();
-                    sink.text("FindBugs Report");
-                    sink.sectionTitle1_();
+    public String getCategoryName()
+    {
+        return report.getCategoryName();
+    }
 
-                    sink.paragraph();
-                    sink.text("This is a report of possible bugs found by the ");
-                    sink.link("http://findbugs.sourceforge.net/");
-                    sink.text("FindBugs");
-                    sink.link_();
-                    sink.text(" program, which uses static analysis to find bugs in Java code. The report was generated with the following parameters:");
-                    sink.paragraph_();
+    public void setReportOutputDirectory(File reportOutputDirectory)
+    {
+        report.setReportOutputDirectory(reportOutputDirectory);
+    }
 
-                    sink.text("FindBugs version: " + xpath.evaluate("/BugCollection/attribute::version", doc));
-                    sink.lineBreak();
-                    sink.text("Effort: " + effort.toLowerCase());
-                    sink.lineBreak();
-                    sink.text("Bug Priority Threshold: " + threshold.toLowerCase());
+    public File getReportOutputDirectory()
+    {
+        return report.getReportOutputDirectory();
+    }
 
-                    sink.section1_();
+    public boolean isExternalReport()
+    {
+        return report.isExternalReport();
+    }
 
-                    if (doSummary(sink, xpath, doc)){
-                        /*
-                         * Only do reports if bugs were actually found.
-                         */
-                        doBugsByClassReport(sink, doc, xpath);
-                        doBugsByCategoryReport(sink, doc, xpath);
-                    }
+    public boolean canGenerateReport()
+    {
+        return hasClasses();
+    }
 
-                    sink.body_();
+    /**
+     * @return the names of the classes of each analyzed project, by project name, for the module section of the report.
+     */
+    private Map<String, Set<String>> getClassesByModule()
+    {
+        Map<String, Set<String>> classesByModule = new LinkedHashMap<String, Set<String>>();
+        for (MavenProject analyzed : getAnalyzedProjects()){
+            File classDirectory = new File(analyzed.getBuild().getOutputDirectory());
+            if (!classDirectory.isDirectory()){
+                continue;
+            }
+            Set<String> classNames = new HashSet<String>();
+            int prefixLength = classDirectory.getAbsolutePath().length() + 1;
+            for (File file : ClassFileInfo.findClassFiles(classDirectory)){
+                String path = file.getAbsolutePath();
+                classNames.add(path.substring(prefixLength, path.length() - ".class".length())
+                        .replace(File.separatorChar, '.'));
+            }
+            String name = analyzed.getName() != null ? analyzed.getName() : analyzed.getArtifactId();
+            Set<String> existing = classesByModule.get(name);
+            if (existing != null){
+                existing.addAll(classNames);
+            }else{
+                classesByModule.put(name, classNames);
+            }
+        }
+        return classesByModule;
+    }
 
-                    sink.flush();
-                    sink.close();
-                }finally{
-                    outputFile.delete();
+    /**
+     * @return the total size of the class files under a directory.
+     */
+    private static long getClassBytes(File directory)
+    {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null){
+            for (File file : files){
+                if (file.isDirectory()){
+                    size += getClassBytes(file);
+                }else if (file.getName().endsWith(".class")){
+                    size += file.length();
                 }
-            }finally{
-                tmpProjectFile.delete();
             }
-        }catch (Exception e){
-            throw new MavenReportException("Error creating report", e);
         }
+        return size;
     }
 
     /**
-     * Generated the summary part of the report, returning an indication of whether or not bugs were found.
-     * @param sink
-     * @param xpath
-     * @param doc
-     * @return <code>true</code> if bugs were found, or <code>false</code> if no bugs were reported.
-     * @throws XPathExpressionException
+     * Analyzes the project and renders the report to the sink of the report.
      */
-    private boolean doSummary(Sink sink, XPath xpath, Document doc)
-            throws XPathExpressionException
+    void executeReport(Locale locale)
+            throws MavenReportException
     {
-        sink.section1();
-        sink.sectionTitle1();
-        sink.text("Summary");
-        sink.sectionTitle1_();
-        try{
-
-            String totalBugs = xpath.evaluate("/BugCollection/FindBugsSummary/attribute::total_bugs", doc);
-            if (totalBugs.equals("0")){
-                sink.paragraph();
-                sink.text("No bugs were found!");
-                sink.paragraph_();
-                return false;
+        if (!hasClasses()){
+            return;
+        }
+        AnalysisMetrics.resetPeakHeap();
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        List<File> changedClasses = getChangedClasses();
+        File profileFile = new File(getWorkDirectory(), "detectors.profile");
+        DetectorProfile profile = null;
+        List<String> skippedDetectors = Collections.emptyList();
+        long classBytes = 0;
+        for (MavenProject analyzed : getAnalyzedProjects()){
+            classBytes += getClassBytes(new File(analyzed.getBuild().getOutputDirectory()));
+        }
+        if ((profileDetectors || adaptiveDetectors) && changedClasses == null){
+            try{
+                profile = DetectorProfile.load(profileFile);
+            }catch (IOException e){
+                getLog().warn("Could not read FindBugs detector profile " + profileFile + ", discarding it", e);
+                profile = new DetectorProfile();
             }
-
-            String p1 = xpath.evaluate("/BugCollection/FindBugsSummary/attribute::priority_1", doc);
-            String p2 = xpath.evaluate("/BugCollection/FindBugsSummary/attribute::priority_2", doc);
-            String p3 = xpath.evaluate("/BugCollection/FindBugsSummary/attribute::priority_3", doc);
-            boolean hasP1 = false;
-            if (p1 != null && p1.length() > 0 && !p1.equals("0")){
-                hasP1 = true;
+            if (adaptiveDetectors){
+                skippedDetectors = profile.getDetectorsToSkip(adaptiveCostThreshold, adaptiveZeroRuns,
+                        adaptiveRecheckRuns, classBytes);
+                if (!skippedDetectors.isEmpty()){
+                    getLog().info("Skipping " + skippedDetectors.size()
+                            + " FindBugs detectors which found no bugs in recent builds");
+                }
+                metrics.setCount("skippedDetectors", skippedDetectors.size());
             }
-            boolean hasP2 = false;
-            if (p2 != null && p2.length() > 0 && !p2.equals("0")){
-                hasP2 = true;
+        }
+
+        ReportModel model;
+        try{
+            model = analyze(metrics, skippedDetectors, changedClasses, null);
+        }catch (MojoExecutionException e){
+            throw new MavenReportException(e.getMessage(), e);
+        }
+        ReportModel reported = model;
+        try{
+            if (profile != null && !metrics.getDetectorMillis().isEmpty()){
+                /*
+                 * No detector times are recorded when the results are reused, so there is nothing to profile.
+                 */
+                profile.update(metrics, model, skippedDetectors, classBytes);
+                try{
+                    profile.save(profileFile);
+                }catch (IOException e){
+                    getLog().warn("Could not write FindBugs detector profile " + profileFile, e);
+                }
             }
-            boolean hasP3 = false;
-            if (p3 != null && p3.length() > 0 && !p3.equals("0")){
-                hasP3 = true;
+            File baseline = getBaseline();
+            if (baseline != null){
+                if (baseline.isFile()){
+                    try{
+                        reported = model.withoutBaseline(BugBaseline.load(baseline));
+                    }catch (IOException e){
+                        throw new MavenReportException("Error reading baseline " + baseline, e);
+                    }
+                    metrics.setCount("baselineBugs", reported.getBaselineBugCount());
+                }else{
+                    getLog().warn("FindBugs baseline " + baseline + " does not exist, reporting all bugs");
+                }
             }
-            sink.paragraph();
-            sink.bold();
-            sink.text(totalBugs);
-            sink.bold_();
-            sink.text(" bug");
-            if (Integer.parseInt(totalBugs) > 1){
-                sink.text("s");
+
+            ReportRenderer renderer = new ReportRenderer(reported, getEffort(), getThreshold(), xrefPath);
+            renderer.setRenderThreads(renderThreads);
+            renderer.setSkippedDetectors(skippedDetectors);
+            if (getAnalyzedProjects().size() > 1){
+                renderer.setModules(getClassesByModule());
             }
-            if (hasP1){
-                sink.text(", consisting of ");
-                sink.bold();
-                sink.text(p1);
-                sink.bold_();
-                sink.text(" ");
-                sink.italic();
-                sink.text("High");
-                sink.italic_();
-                sink.text(" priority bug");
-                if (Integer.parseInt(p1) > 1){
-                    sink.text("s");
-                }
+            SourceIndex sources = null;
+            if (sourceSnippets){
+                sources = createSourceIndex();
+                renderer.setSourceIndex(sources);
             }
-            if (hasP2){
-                if (!hasP1){
-                    sink.text(", consisting of ");
-                }else{
-                    if (hasP3){
-                        sink.text(", ");
+            if (historyFile != null && changedClasses == null){
+                long start = System.nanoTime();
+                BugHistory history = new BugHistory(historyFile,
+                        getProject().getGroupId() + ":" + getProject().getArtifactId(), historyRetention);
+                try{
+                    if (isCompleteAnalysis(model, skippedDetectors)){
+                        /*
+                         * The history counts all bugs, so that updating the baseline does not show up as fixed bugs.
+                         */
+                        history.append(model, System.currentTimeMillis());
                     }else{
-                        sink.text(" and ");
+                        getLog().info("Not adding this build to the FindBugs history, as it did not look for all bugs");
                     }
+                    renderer.setHistory(history.read(trendBuilds));
+                }catch (IOException e){
+                    getLog().warn("Could not update FindBugs history " + historyFile, e);
                 }
-                sink.bold();
-                sink.text(p2);
-                sink.bold_();
-                sink.text(" ");
-                sink.italic();
-                sink.text("Medium");
-                sink.italic_();
-                sink.text(" priority bug");
-                if (Integer.parseInt(p2) > 1){
-                    sink.text("s");
-                }
+                metrics.addTime("history", start);
             }
-            if (p3 != null && p3.length() > 0 && !p3.equals("0")){
-                if (hasP1 || hasP2){
-                    sink.text(" and ");
+            long start = System.nanoTime();
+            try{
+                if (multiPage && report.getSinkFactory() != null){
+                    renderer.renderPages(report.getSink(), report.getSinkFactory(), getReportOutputDirectory());
                 }else{
-                    sink.text(", consisting of ");
-                }
-                sink.bold();
-                sink.text(p3);
-                sink.bold_();
-                sink.text(" ");
-                sink.italic();
-                sink.text("Low");
-                sink.italic_();
-                sink.text(" priority bug");
-                if (Integer.parseInt(p3) > 1){
-                    sink.text("s");
+                    renderer.render(report.getSink());
                 }
+            }catch (IOException e){
+                throw new MavenReportException("Error writing report", e);
             }
-            sink.text(" found in ");
-            sink.bold();
-            sink.text(xpath.evaluate("/BugCollection/FindBugsSummary/attribute::total_size", doc));
-            sink.bold_();
-            sink.text(" lines of code, in ");
-            sink.bold();
-            sink.text(xpath.evaluate("/BugCollection/FindBugsSummary/attribute::total_classes", doc));
-            sink.bold_();
-            sink.text(" classes, in ");
-            sink.bold();
-            sink.text(xpath.evaluate("/BugCollection/FindBugsSummary/attribute::num_packages", doc));
-            sink.bold_();
-            sink.text(" package(s).");
-            sink.paragraph_();
-
-            sink.paragraph();
-            sink.text("Here are some entry points to the report:");
-            sink.paragraph_();
-
-            sink.list();
-            sink.listItem();
-            sink.link("#report.BugsByClass");
-            sink.text("Bugs by class");
-            sink.link_();
-            sink.listItem_();
-            sink.listItem();
-            sink.link("#report.BugsByCategory");
-            sink.text("Bugs by category");
-            sink.link_();
-            sink.listItem_();
-            sink.list_();
+            metrics.addTime("render", start);
+            if (sources != null){
+                metrics.setCount("sourceFilesRead", sources.getFilesRead());
+            }
+            writeMetrics(metrics, reported);
         }finally{
-            sink.section1_();
+            if (reported != model){
+                reported.close();
+            }
+            model.close();
         }
-        return true;
-    }
-
-    public String getOutputName()
-    {
-        return "findbugs";
-    }
-
-    public String getName(Locale locale)
-    {
-        return "FindBugs Report";
-    }
-
-    public String getDescription(Locale locale)
-    {
-        return "Source code static analysis and bug report";
     }
 
-    private void doBugsByClassReport(Sink sink, Document doc, XPath xpath)
-            throws XPathExpressionException, UnsupportedEncodingException
+    /**
+     * @return whether the analysis ran all detectors on all classes at the configured effort, so that the bugs it did
+     *         not find are fixed rather than not looked for.
+     */
+    private boolean isCompleteAnalysis(ReportModel model, List<String> skippedDetectors)
     {
-        sink.section1();
-        sink.sectionTitle1();
-        sink.text("Bugs By Class");
-        sink.anchor("report.BugsByClass");
-        sink.sectionTitle1_();
-        sink.paragraph();
-        sink.text("This is a list of bugs, by class.");
-        sink.paragraph_();
-
-        sink.table();
-        sink.tableRow();
-        sink.tableHeaderCell();
-        sink.text("Package");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Classes");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Lines");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Bugs");
-        sink.tableHeaderCell_();
-        sink.tableRow_();
-
-        NodeList packageNodes =
-                (NodeList)xpath.evaluate("/BugCollection/FindBugsSummary/PackageStats[@total_bugs>0]", doc, XPathConstants.NODESET);
-        for (int packageNo = 0; packageNo < packageNodes.getLength(); packageNo++){
-            Node packageNode = packageNodes.item(packageNo);
-            String packageName = xpath.evaluate("attribute::package", packageNode);
-            sink.tableRow();
-            sink.tableCell();
-            sink.link("#package." + packageName);
-            sink.text(packageName);
-            sink.link_();
-            sink.tableCell_();
-            sink.tableCell();
-            sink.text(xpath.evaluate("attribute::total_types", packageNode));
-            sink.tableCell_();
-            sink.tableCell();
-            sink.text(xpath.evaluate("attribute::total_size", packageNode));
-            sink.tableCell_();
-            sink.tableCell();
-            sink.text(xpath.evaluate("attribute::total_bugs", packageNode));
-            sink.tableCell_();
-            sink.tableRow_();
+        if (!skippedDetectors.isEmpty()){
+            return false;
         }
-        sink.table_();
-
-        for (int packageNo = 0; packageNo < packageNodes.getLength(); packageNo++){
-            Node packageNode = packageNodes.item(packageNo);
-            String packageName = xpath.evaluate("attribute::package", packageNode);
-            sink.section2();
-            sink.sectionTitle2();
-            sink.anchor("package." + packageName);
-            sink.text("Package: " + packageName);
-            sink.sectionTitle2_();
-
-            sink.table();
-            sink.tableRow();
-            sink.tableHeaderCell();
-            sink.text("Class Name");
-            sink.tableHeaderCell_();
-            sink.tableHeaderCell();
-            sink.text("Lines");
-            sink.tableHeaderCell_();
-            sink.tableHeaderCell();
-            sink.text("Bugs");
-            sink.tableHeaderCell_();
-            sink.tableRow_();
-
-            NodeList classNodes = (NodeList)xpath.evaluate("child::*[@bugs>0]", packageNode, XPathConstants.NODESET);
-            for (int classNo = 0; classNo < classNodes.getLength(); classNo++){
-                Node classNode = classNodes.item(classNo);
-                String className = xpath.evaluate("attribute::class", classNode);
-                String bugs = xpath.evaluate("attribute::bugs", classNode);
-                String lines = xpath.evaluate("attribute::size", classNode);
-                sink.tableRow();
-                sink.tableCell();
-                sink.link("#class." + className);
-                sink.text(className);
-                sink.link_();
-                sink.tableCell_();
-                sink.tableCell();
-                sink.text(lines);
-                sink.tableCell_();
-                sink.tableCell();
-                sink.text(bugs);
-                sink.tableCell_();
-                sink.tableRow_();
-            }
-            sink.table_();
-
-            for (int classNo = 0; classNo < classNodes.getLength(); classNo++){
-                Node classNode = classNodes.item(classNo);
-                String className = xpath.evaluate("attribute::class", classNode);
-                sink.section3();
-                sink.sectionTitle3();
-                sink.rawText("<a name=\"class." + className + "\"/>");
-                sink.text("Class: " + className);
-                sink.sectionTitle3_();
-
-                sink.table();
-                sink.tableRow();
-                sink.tableHeaderCell();
-                sink.text("Category");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Lines");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Bug");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Details");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Priority");
-                sink.tableHeaderCell_();
-                sink.tableRow_();
-
-                NodeList bugNodes = (NodeList)xpath.evaluate("/BugCollection/BugInstance[child::Class/attribute::classname=\""
-                        + className + "\" and child::Class/attribute::primary=\"true\"]", doc, XPathConstants.NODESET);
-                for (int bugNo = 0; bugNo < bugNodes.getLength(); bugNo++){
-                    Node bugNode = bugNodes.item(bugNo);
-                    String categoryCode = xpath.evaluate("attribute::category", bugNode);
-                    String categoryName = xpath.evaluate("/BugCollection/BugCategory[@category=\"" + categoryCode
-                            + "\"]/Description", doc);
-                    sink.tableRow();
-                    sink.tableCell();
-                    sink.text(categoryName);
-                    sink.tableCell_();
-                    sink.tableCell();
-                    String start = xpath.evaluate("child::SourceLine/attribute::start", bugNode);
-                    String end = xpath.evaluate("child::SourceLine/attribute::end", bugNode);
-                    if (xrefPath != null){
-                        sink.rawText(getXrefLink(className, start, end));
-                    }else{
-                        if (start.equals(end)){
-                            sink.text(start);
-                        }else{
-                            sink.text(start + "-" + end);
-                        }
-                    }
-                    sink.tableCell_();
-                    sink.tableCell();
-                    sink.text(xpath.evaluate("LongMessage", bugNode));
-                    sink.tableCell_();
-                    sink.tableCell();
-                    sink.link("#type." + xpath.evaluate("attribute::type", bugNode));
-                    sink.text("Details");
-                    sink.link_();
-                    sink.tableCell_();
-                    sink.tableCell();
-                    String priority = xpath.evaluate("attribute::priority", bugNode);
-                    if (priority.equals("1")){
-                        priority = "High";
-                    }else if (priority.equals("2")){
-                        priority = "Medium";
-                    }else{
-                        priority = "Low";
-                    }
-                    sink.text(priority);
-                    sink.tableCell_();
-                    sink.tableRow_();
+        if (model.getCoverage() != null){
+            int requestedEffort = BudgetedAnalyzer.getEffortIndex(getEffort().toLowerCase());
+            for (String classEffort : model.getCoverage().values()){
+                if (!BudgetedAnalyzer.isFullyAnalyzed(classEffort, requestedEffort)){
+                    return false;
                 }
-                sink.table_();
-
-                sink.section3_();
             }
-
-            sink.section2_();
         }
-
-        sink.section1_();
+        return true;
     }
 
-    private String getXrefLink(String className, String lineStart, String lineEnd)
+    /**
+     * @return the index of the source files of the analyzed projects, for the source snippets of the report.
+     * @throws MavenReportException if the source encoding is not supported.
+     */
+    private SourceIndex createSourceIndex()
+            throws MavenReportException
     {
-        if (!xrefPath.endsWith("/")){
-            xrefPath = xrefPath + "/";
-        }
-
-        className = className.replace(".", "/");
-        int idx = className.indexOf("$");
-        if (idx >= 0){
-            className = className.substring(0, idx);
+        Charset charset;
+        try{
+            charset = sourceEncoding == null ? Charset.defaultCharset() : Charset.forName(sourceEncoding);
+        }catch (IllegalArgumentException e){
+            throw new MavenReportException("Unsupported source encoding: " + sourceEncoding);
         }
-        String link = "<a href=\"" + xrefPath + className + ".html";
-        link += "#" + lineStart;
-        link += "\">" + lineStart;
-        if (!lineStart.equals(lineEnd)){
-            link += "-" + lineEnd;
+        List<String> sourceDirs = new ArrayList<String>();
+        List<File> classDirectories = new ArrayList<File>();
+        for (MavenProject analyzed : getAnalyzedProjects()){
+            for (Object o : analyzed.getCompileSourceRoots()){
+                sourceDirs.add(o.toString());
+            }
+            classDirectories.add(new File(analyzed.getBuild().getOutputDirectory()));
         }
-        link += "</a>";
-        return link;
+        return new SourceIndex(sourceDirs, classDirectories, charset, sourceSnippetLines);
     }
 
-    private void doBugsByCategoryReport(Sink sink, Document doc, XPath xpath)
-            throws XPathExpressionException, UnsupportedEncodingException
+    public String getOutputName()
     {
-        sink.section1();
-        sink.sectionTitle1();
-        sink.text("Bugs By Category");
-        sink.anchor("report.BugsByCategory");
-        sink.sectionTitle1_();
-        sink.paragraph();
-        sink.text("This is a list of bugs, by category.");
-        sink.paragraph_();
-
-        sink.table();
-        sink.tableRow();
-        sink.tableHeaderCell();
-        sink.text("Category / Bug Pattern");
-        sink.tableHeaderCell_();
-        sink.tableHeaderCell();
-        sink.text("Bugs");
-        sink.tableHeaderCell_();
-        sink.tableRow_();
-        NodeList categoryNodes = (NodeList)xpath.evaluate("/BugCollection/BugCategory", doc, XPathConstants.NODESET);
-        for (int categoryNo = 0; categoryNo < categoryNodes.getLength(); categoryNo++){
-            Node categoryNode = categoryNodes.item(categoryNo);
-            String categoryCode = xpath.evaluate("attribute::category", categoryNode);
-            String categoryDescription = xpath.evaluate("Description", categoryNode);
-            sink.tableRow();
-            sink.tableCell();
-            sink.bold();
-            sink.link("#category." + categoryCode);
-            sink.text(categoryDescription);
-            sink.link_();
-            sink.bold_();
-            sink.tableCell_();
-            sink.tableCell();
-            sink.bold();
-            sink.text(""
-                    + ((NodeList)xpath.evaluate("/BugCollection/BugInstance[@category=\"" + categoryCode + "\"]", doc, XPathConstants.NODESET)).getLength());
-            sink.bold_();
-            sink.tableCell_();
-            sink.tableRow_();
-            NodeList typeNodes =
-                    (NodeList)xpath.evaluate("/BugCollection/BugPattern[@category=\"" + categoryCode + "\"]", doc, XPathConstants.NODESET);
-            for (int typeNo = 0; typeNo < typeNodes.getLength(); typeNo++){
-                Node typeNode = typeNodes.item(typeNo);
-                String typeCode = xpath.evaluate("attribute::type", typeNode);
-                String typeDescription = xpath.evaluate("ShortDescription", typeNode);
-                sink.tableRow();
-                sink.tableCell();
-                sink.rawText("<ul style=\"margin-top: 0px; margin-bottom: 0px; padding-top: 0px; padding-bottom: 0px;\"><li>");
-                sink.link("#type." + typeCode);
-                sink.text(typeDescription);
-                sink.link_();
-                sink.rawText("</li></ul>");
-                sink.listItem_();
-                sink.list_();
-                sink.tableCell_();
-                sink.tableCell();
-                sink.text(""
-                        + ((NodeList)xpath.evaluate("/BugCollection/BugInstance[@type=\"" + typeCode + "\"]", doc, XPathConstants.NODESET)).getLength());
-                sink.tableCell_();
-                sink.tableRow_();
-            }
-        }
-        sink.table_();
-
-        for (int categoryNo = 0; categoryNo < categoryNodes.getLength(); categoryNo++){
-            Node categoryNode = categoryNodes.item(categoryNo);
-            String categoryCode = xpath.evaluate("attribute::category", categoryNode);
-            String categoryDescription = xpath.evaluate("Description", categoryNode);
-
-            sink.section2();
-            sink.sectionTitle2();
-            sink.text(categoryDescription);
-            sink.anchor("category." + categoryCode);
-            sink.sectionTitle2_();
-
-            sink.table();
-            sink.tableRow();
-            sink.tableHeaderCell();
-            sink.text("Bug Pattern");
-            sink.tableHeaderCell_();
-            sink.tableHeaderCell();
-            sink.text("Bugs");
-            sink.tableHeaderCell_();
-            sink.tableRow_();
-            NodeList typeNodes =
-                    (NodeList)xpath.evaluate("/BugCollection/BugPattern[@category=\"" + categoryCode + "\"]", doc, XPathConstants.NODESET);
-            for (int typeNo = 0; typeNo < typeNodes.getLength(); typeNo++){
-                Node typeNode = typeNodes.item(typeNo);
-                String typeCode = xpath.evaluate("attribute::type", typeNode);
-                String typeDescription = xpath.evaluate("ShortDescription", typeNode);
-                NodeList bugsNodes =
-                        (NodeList)xpath.evaluate("/BugCollection/BugInstance[@type=\"" + typeCode + "\"]", doc, XPathConstants.NODESET);
-                sink.tableRow();
-                sink.tableCell();
-                sink.link("#type." + typeCode);
-                sink.text(typeDescription);
-                sink.link_();
-                sink.tableCell_();
-                sink.tableCell();
-                sink.text("" + bugsNodes.getLength());
-                sink.tableCell_();
-                sink.tableRow_();
-            }
-            sink.table_();
-
-            for (int typeNo = 0; typeNo < typeNodes.getLength(); typeNo++){
-                Node typeNode = typeNodes.item(typeNo);
-                String typeCode = xpath.evaluate("attribute::type", typeNode);
-                String typeDescription = xpath.evaluate("ShortDescription", typeNode);
-                String typeDetails = xpath.evaluate("Details", typeNode);
-                sink.section3();
-                sink.sectionTitle3();
-                sink.text(typeDescription);
-                sink.anchor("type." + typeCode);
-                sink.sectionTitle3_();
-                sink.rawText(typeDetails);
-
-                sink.table();
-                sink.tableRow();
-                sink.tableHeaderCell();
-                sink.text("Class");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Lines");
-                sink.tableHeaderCell_();
-                sink.tableHeaderCell();
-                sink.text("Details");
-                sink.tableHeaderCell_();
-                sink.tableRow_();
-
-                SortedSet<String> bugTypeClasses = new TreeSet<String>();
-                NodeList bugNodes = (NodeList)xpath.evaluate("/BugCollection/BugInstance[@type=\"" + typeCode
-                        + "\"]/Class[@primary=\"true\"]", doc, XPathConstants.NODESET);
-                for (int bugno = 0; bugno < bugNodes.getLength(); bugno++){
-                    bugTypeClasses.add(xpath.evaluate("attribute::classname", bugNodes.item(bugno)));
-                }
-
-                for (String className : bugTypeClasses){
-                    bugNodes = (NodeList)xpath.evaluate("/BugCollection/BugInstance[@type=\"" + typeCode + "\"]/Class[@classname=\""
-                            + className + "\"]", doc, XPathConstants.NODESET);
-                    for (int bugno = 0; bugno < bugNodes.getLength(); bugno++){
-                        Node bugClassNode = bugNodes.item(bugno);
-                        sink.tableRow();
-                        sink.tableCell();
-                        sink.link("#class." + className);
-                        sink.text(className);
-                        sink.link_();
-                        sink.tableCell_();
-                        String start = xpath.evaluate("../child::SourceLine/attribute::start", bugClassNode);
-                        String end = xpath.evaluate("../child::SourceLine/attribute::end", bugClassNode);
-                        String details = xpath.evaluate("../LongMessage", bugClassNode);
-                        sink.tableCell();
-                        if (xrefPath == null){
-                            if (start.equals(end)){
-                                sink.text(start);
-                            }else{
-                                sink.text(start + "-" + end);
-                            }
-                        }else{
-                            sink.rawText(getXrefLink(className, start, end));
-                        }
-                        sink.tableCell_();
-                        sink.tableCell();
-                        sink.text(details);
-                        sink.tableCell_();
-                        sink.tableRow_();
-                    }
-                }
-
-                sink.table_();
-                sink.section3_();
-            }
+        return "findbugs";
+    }
 
-            sink.section2_();
-        }
+    public String getName(Locale locale)
+    {
+        return "FindBugs Report";
+    }
 
-        sink.section1_();
+    public String getDescription(Locale locale)
+    {
+        return "Source code static analysis and bug report";
     }
 }
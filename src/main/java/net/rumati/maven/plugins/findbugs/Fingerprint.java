@@ -0,0 +1,139 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Accumulates strings and file contents into a digest, used to detect whether analysis inputs have changed.
+ */
+class Fingerprint
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final MessageDigest digest = newDigest();
+
+    private static MessageDigest newDigest()
+    {
+        try{
+            return MessageDigest.getInstance("MD5");
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+
+    /**
+     * Adds a string. A <code>null</code> string is distinguished from an empty string.
+     * @return this fingerprint.
+     */
+    public Fingerprint add(String value)
+    {
+        try{
+            if (value == null){
+                digest.update((byte)0);
+            }else{
+                digest.update((byte)1);
+                digest.update(value.getBytes("UTF-8"));
+                digest.update((byte)0);
+            }
+        }catch (UnsupportedEncodingException e){
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+        return this;
+    }
+
+    public Fingerprint add(long value)
+    {
+        return add(Long.toString(value));
+    }
+
+    /**
+     * Adds the contents of a file, or a marker if the file does not exist. For a directory, the names and contents of
+     * the files in the directory are added, recursively and in a stable order.
+     * @return this fingerprint.
+     */
+    public Fingerprint addContents(File file)
+            throws IOException
+    {
+        if (file != null && file.isDirectory()){
+            File[] children = file.listFiles();
+            if (children != null){
+                Arrays.sort(children);
+                for (File child : children){
+                    add(child.getName());
+                    addContents(child);
+                }
+            }
+            return this;
+        }
+        if (file == null || !file.isFile()){
+            return add((String)null);
+        }
+        add(file.length());
+        InputStream in = new FileInputStream(file);
+        try{
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0){
+                digest.update(buffer, 0, read);
+            }
+        }finally{
+            in.close();
+        }
+        return this;
+    }
+
+    /**
+     * Adds the path, size and modification time of a file. For a directory, the files in the directory are added,
+     * recursively and in a stable order. This is much cheaper than adding contents, and suits files which are
+     * replaced rather than modified in place, such as dependency jars.
+     * @return this fingerprint.
+     */
+    public Fingerprint addStamp(File file)
+    {
+        add(file.getAbsolutePath());
+        if (file.isDirectory()){
+            File[] children = file.listFiles();
+            if (children != null){
+                Arrays.sort(children);
+                for (File child : children){
+                    addStamp(child);
+                }
+            }
+        }else{
+            add(file.length());
+            add(file.lastModified());
+        }
+        return this;
+    }
+
+    /**
+     * @return the hex encoded digest of everything added. The fingerprint must not be used afterwards.
+     */
+    public String getValue()
+    {
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the hex encoded digest of a byte array.
+     */
+    public static String digest(byte[] bytes)
+    {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++){
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,217 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs FindBugs in a separate JVM, through its command line launcher, and reads back the XML output. The heap and
+ * garbage collector of the JVM are chosen by {@link JvmSizing}, which learns from the peak heap use of each JVM.
+ * <p>
+ * If the request has a deadline, the JVM is destroyed when the deadline passes. FindBugs only writes its output when
+ * it finishes, so no results are kept, and an empty model is thrown in a {@link TimeBudgetExceededException}.
+ */
+class ForkedAnalyzer
+        implements Analyzer
+{
+    private final List<File> classpath;
+    private final JvmSizing sizing;
+    private final AnalysisMetrics metrics;
+    private final String phasePrefix;
+    private final Log log;
+
+    /**
+     * @param classpath the class path of the forked JVM, which must contain this plugin, FindBugs and its
+     *        dependencies.
+     * @param sizing the sizing of the forked JVM, to which its peak heap use is reported.
+     * @param metrics the metrics to which to add the time of writing the project file, of running FindBugs and of
+     *        parsing its output.
+     * @param log the log to which the output of the forked JVM is written, at debug level.
+     */
+    ForkedAnalyzer(List<File> classpath, JvmSizing sizing, AnalysisMetrics metrics, Log log)
+    {
+        this(classpath, sizing, metrics, null, log);
+    }
+
+    /**
+     * @param phasePrefix the prefix of the names of the phases added to the metrics, such as <tt>shard</tt> when
+     *        analyses run concurrently, so that the sum of their times is not taken for the time of the phase, or
+     *        <tt>null</tt> for the plain names.
+     */
+    ForkedAnalyzer(List<File> classpath, JvmSizing sizing, AnalysisMetrics metrics, String phasePrefix, Log log)
+    {
+        this.classpath = classpath;
+        this.sizing = sizing;
+        this.metrics = metrics;
+        this.phasePrefix = phasePrefix;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        try{
+            File tmpProjectFile = File.createTempFile("findbugs", ".fbp");
+            try{
+                long start = System.nanoTime();
+                LauncherAnalyzer.writeFindBugsProjectFile(request, tmpProjectFile);
+                metrics.addTime(getPhase("projectFile"), start);
+                File outputFile = File.createTempFile("findbug", ".xml");
+                File peakHeapFile = File.createTempFile("findbugs", ".heap");
+                try{
+                    long inputBytes = JvmSizing.getInputBytes(request);
+                    long maxHeap = sizing.getMaxHeap(inputBytes);
+                    List<String> command = new ArrayList<String>();
+                    command.add(getJavaExecutable());
+                    command.addAll(sizing.getJvmArguments(maxHeap));
+                    command.add("-cp");
+                    command.add(toPath(classpath));
+                    command.add(ForkedFindBugs.class.getName());
+                    command.add(peakHeapFile.getAbsolutePath());
+                    command.addAll(LauncherAnalyzer.getArguments(request, tmpProjectFile, outputFile));
+                    log.debug("Forking FindBugs with " + maxHeap / (1024 * 1024) + "MB heap for " + inputBytes
+                            + " bytes of input");
+                    start = System.nanoTime();
+                    boolean finished = run(command, request.getDeadline());
+                    metrics.addTime(getPhase("findbugs"), start);
+                    if (!finished){
+                        throw new TimeBudgetExceededException(new ReportModel());
+                    }
+                    recordPeakHeap(peakHeapFile, inputBytes, maxHeap);
+                    start = System.nanoTime();
+                    ReportModel model = BugCollectionParser.parse(outputFile, metrics);
+                    metrics.addTime(getPhase("parse"), start);
+                    return model;
+                }finally{
+                    outputFile.delete();
+                    peakHeapFile.delete();
+                }
+            }finally{
+                tmpProjectFile.delete();
+            }
+        }catch (AnalysisException e){
+            throw e;
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AnalysisException("FindBugs analysis was interrupted", e);
+        }catch (Exception e){
+            throw new AnalysisException("Error running FindBugs", e);
+        }
+    }
+
+    private String getPhase(String phase)
+    {
+        if (phasePrefix == null){
+            return phase;
+        }
+        return phasePrefix + Character.toUpperCase(phase.charAt(0)) + phase.substring(1);
+    }
+
+    /**
+     * Runs the forked JVM.
+     * @param deadline the time at which to destroy the JVM, or <tt>0</tt> to let it finish.
+     * @return whether the JVM finished, rather than being destroyed at the deadline.
+     */
+    private boolean run(List<String> command, long deadline)
+            throws IOException, InterruptedException, AnalysisException
+    {
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final AtomicBoolean destroyed = new AtomicBoolean();
+        Timer timer = null;
+        if (deadline > 0){
+            timer = new Timer(true);
+            timer.schedule(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    destroyed.set(true);
+                    process.destroy();
+                }
+            }, new Date(deadline));
+        }
+        try{
+            process.getOutputStream().close();
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try{
+                String line;
+                while ((line = in.readLine()) != null){
+                    if (log.isDebugEnabled()){
+                        log.debug("[findbugs] " + line);
+                    }
+                }
+            }finally{
+                in.close();
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0){
+                if (destroyed.get()){
+                    return false;
+                }
+                throw new AnalysisException("Forked FindBugs analysis failed with exit code " + exitCode);
+            }
+            return true;
+        }finally{
+            if (timer != null){
+                timer.cancel();
+            }
+            process.destroy();
+        }
+    }
+
+    /**
+     * Reports the peak heap use of a forked JVM to the sizing and the metrics.
+     */
+    private void recordPeakHeap(File peakHeapFile, long inputBytes, long maxHeap)
+    {
+        long peakHeap;
+        try{
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(peakHeapFile), "UTF-8"));
+            try{
+                peakHeap = Long.parseLong(in.readLine().trim());
+            }finally{
+                in.close();
+            }
+        }catch (Exception e){
+            log.debug("Could not read the peak heap use of the forked FindBugs JVM", e);
+            return;
+        }
+        metrics.setMaxCount("forkedPeakHeapBytes", peakHeap);
+        metrics.setMaxCount("forkedMaxHeapBytes", maxHeap);
+        sizing.record(inputBytes, peakHeap);
+        try{
+            sizing.save();
+        }catch (IOException e){
+            log.warn("Could not write FindBugs JVM sizing", e);
+        }
+    }
+
+    static String getJavaExecutable()
+    {
+        return new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+    }
+
+    /**
+     * @return the files as a path, separated by the platform path separator.
+     */
+    static String toPath(List<File> files)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (File entry : files){
+            if (sb.length() > 0){
+                sb.append(File.pathSeparatorChar);
+            }
+            sb.append(entry.getAbsolutePath());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package net.rumati.maven.plugins.findbugs;
+
+import edu.umd.cs.findbugs.LaunchAppropriateUI;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * The main class of the JVMs {@link ForkedAnalyzer} forks. It runs the FindBugs command line launcher, and when the
+ * JVM exits, writes the peak heap use of the JVM to a file, so that the heap of later forked JVMs can be sized to it.
+ * The peak use of the eden space is left out: it grows with the size of the heap rather than with the analysis.
+ * <p>
+ * Arguments: the file to which to write the peak heap use, in bytes, followed by the FindBugs arguments.
+ */
+public class ForkedFindBugs
+{
+    private ForkedFindBugs()
+    {
+    }
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        final File peakHeapFile = new File(args[0]);
+        /*
+         * FindBugs may call System.exit, so the peak is written from a shutdown hook.
+         */
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try{
+                    writePeakHeap(peakHeapFile);
+                }catch (IOException e){
+                    e.printStackTrace();
+                }
+            }
+        });
+        String[] findBugsArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, findBugsArgs, 0, findBugsArgs.length);
+        LaunchAppropriateUI.main(findBugsArgs);
+    }
+
+    private static void writePeakHeap(File file)
+            throws IOException
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getName().indexOf("Eden") < 0){
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try{
+            out.write(Long.toString(peak));
+        }finally{
+            out.close();
+        }
+    }
+}
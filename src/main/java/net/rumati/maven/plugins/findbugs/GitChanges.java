@@ -0,0 +1,142 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the classes compiled from the Java source files which changed in a git working tree, so that only those
+ * classes need to be analyzed.
+ */
+class GitChanges
+{
+    private GitChanges()
+    {
+    }
+
+    /**
+     * Lists the files under a directory which differ from a git revision: the files changed since the revision,
+     * whether committed, staged or not, and the untracked files which are not ignored. Deleted files are not listed.
+     * @param directory the directory, in a git working tree.
+     * @param ref the revision to compare with, such as <tt>origin/master</tt>.
+     * @return the changed files.
+     * @throws IOException if git could not be run, or failed.
+     */
+    static List<File> getChangedFiles(File directory, String ref)
+            throws IOException
+    {
+        if (ref.length() == 0 || ref.startsWith("-")){
+            throw new IOException("Invalid git revision: " + ref);
+        }
+        Set<String> paths = new TreeSet<String>();
+        paths.addAll(git(directory, "diff", "--name-only", "--relative", "--diff-filter=d", "-z", ref, "--"));
+        paths.addAll(git(directory, "ls-files", "--others", "--exclude-standard", "-z"));
+        List<File> files = new ArrayList<File>();
+        for (String path : paths){
+            File file = new File(directory, path);
+            if (file.isFile()){
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Finds the class files compiled from Java source files, including those of their nested, local and anonymous
+     * classes, and of other top level classes in the same source files.
+     * @param sourceDirs the source directories.
+     * @param classDirectory the directory with the compiled classes.
+     * @param sourceFiles the source files, of which the files which are not Java source files in a source directory
+     * are ignored.
+     * @return the class files, sorted.
+     * @throws IOException if a class file could not be read.
+     */
+    static List<File> getClassFiles(List<String> sourceDirs, File classDirectory, List<File> sourceFiles)
+            throws IOException
+    {
+        Set<File> classFiles = new TreeSet<File>();
+        for (File sourceFile : sourceFiles){
+            String sourcePath = sourceFile.getCanonicalPath();
+            if (!sourcePath.endsWith(".java")){
+                continue;
+            }
+            for (String sourceDir : sourceDirs){
+                String prefix = new File(sourceDir).getCanonicalPath() + File.separator;
+                if (!sourcePath.startsWith(prefix)){
+                    continue;
+                }
+                String relativePath = sourcePath.substring(prefix.length());
+                int idx = relativePath.lastIndexOf(File.separatorChar);
+                File packageDirectory = idx < 0 ? classDirectory
+                        : new File(classDirectory, relativePath.substring(0, idx));
+                addClassFiles(packageDirectory, relativePath.substring(idx + 1), classFiles);
+            }
+        }
+        return new ArrayList<File>(classFiles);
+    }
+
+    private static void addClassFiles(File packageDirectory, String sourceName, Set<File> classFiles)
+            throws IOException
+    {
+        File[] children = packageDirectory.listFiles();
+        if (children == null){
+            return;
+        }
+        String baseName = sourceName.substring(0, sourceName.length() - ".java".length());
+        for (File child : children){
+            if (!child.isFile() || !child.getName().endsWith(".class")){
+                continue;
+            }
+            String sourceFile = ClassFileInfo.read(child).getSourceFile();
+            if (sourceFile != null ? sourceFile.equals(sourceName)
+                    : child.getName().equals(baseName + ".class") || child.getName().startsWith(baseName + "$")){
+                classFiles.add(child);
+            }
+        }
+    }
+
+    /**
+     * Runs git and splits its output into lines, which may be separated by newlines or by NUL characters.
+     */
+    private static List<String> git(File directory, String... arguments)
+            throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add("git");
+        for (String argument : arguments){
+            command.add(argument);
+        }
+        Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+        String output;
+        try{
+            process.getOutputStream().close();
+            InputStream in = process.getInputStream();
+            try{
+                output = new String(ClassFileInfo.readFully(in, 0), "UTF-8");
+            }finally{
+                in.close();
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0){
+                throw new IOException("git " + arguments[0] + " failed with exit code " + exitCode + ": "
+                        + output.trim());
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running git");
+        }finally{
+            process.destroy();
+        }
+        List<String> lines = new ArrayList<String>();
+        for (String line : output.split("[\0\n]")){
+            if (line.length() > 0){
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
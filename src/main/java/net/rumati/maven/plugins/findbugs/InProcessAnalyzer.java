@@ -0,0 +1,255 @@
+package net.rumati.maven.plugins.findbugs;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugPattern;
+import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FieldAnnotation;
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.Version;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import edu.umd.cs.findbugs.log.Profiler;
+import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs FindBugs inside the Maven JVM through the FindBugs2 engine. Bugs are added to the report model as the engine
+ * reports them, rather than collected in the FindBugs bug collection first. No project file or XML output is written.
+ * <p>
+ * If bug limits are given, the engine is interrupted as soon as the bugs found exceed them, and the results found
+ * until then are thrown in a {@link BugLimitExceededException}. If the request has a deadline, the engine is
+ * interrupted in the same way when it starts on a class after the deadline, and the results found until then are
+ * thrown in a {@link TimeBudgetExceededException}.
+ */
+class InProcessAnalyzer
+        implements Analyzer
+{
+    private final AnalysisMetrics metrics;
+    private final BugLimits limits;
+
+    /**
+     * @param metrics the metrics to which to add the time of running FindBugs, and the time spent in each detector.
+     * @param limits the bug limits beyond which to stop the analysis, or <tt>null</tt> to always finish it.
+     */
+    InProcessAnalyzer(AnalysisMetrics metrics, BugLimits limits)
+    {
+        this.metrics = metrics;
+        this.limits = limits;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        /*
+         * The registry is timed on its own, so the findbugs phase starts after it.
+         */
+        long registryStart = System.nanoTime();
+        DetectorFactoryCollection detectorFactories = FindBugsRegistry.getDetectorFactories();
+        metrics.addTime("registry", registryStart);
+
+        long start = System.nanoTime();
+        Project project = createProject(request);
+        ReportModel model = new ReportModel();
+        model.setVersion(Version.RELEASE);
+        ModelBugReporter bugReporter = new ModelBugReporter(project, model, limits, request.getDeadline());
+        bugReporter.setPriorityThreshold(request.getPriorityThreshold());
+
+        FindBugs2 engine = new FindBugs2();
+        engine.setDetectorFactoryCollection(detectorFactories);
+        engine.setProject(project);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(getUserPreferences(request));
+        engine.setAnalysisFeatureSettings(getAnalysisFeatureSettings(request.getEffort()));
+        try{
+            if (request.getExcludeFilterFile() != null){
+                engine.addFilter(request.getExcludeFilterFile().getAbsolutePath(), false);
+            }
+            engine.finishSettings();
+            engine.execute();
+        }catch (InterruptedException e){
+            if (!bugReporter.stopped){
+                Thread.currentThread().interrupt();
+                throw new AnalysisException("FindBugs analysis was interrupted", e);
+            }
+        }catch (Exception e){
+            if (!bugReporter.stopped){
+                throw new AnalysisException("Error running FindBugs", e);
+            }
+        }finally{
+            FindBugsRegistry.releaseAnalysisState();
+        }
+        if (bugReporter.stopped){
+            /*
+             * Clear the interrupt the bug reporter raised, in case the engine finished before it noticed.
+             */
+            Thread.interrupted();
+        }
+        metrics.addTime("findbugs", start);
+        addDetectorTimes(bugReporter.getProjectStats().getProfiler());
+
+        for (PackageStats packageStats : bugReporter.getProjectStats().getPackageStats()){
+            for (PackageStats.ClassStats classStats : packageStats.getClassStats()){
+                model.addClass(classStats.getName(), classStats.size());
+            }
+        }
+        if (bugReporter.outOfTime){
+            throw new TimeBudgetExceededException(model);
+        }
+        if (bugReporter.stopped){
+            throw new BugLimitExceededException(model);
+        }
+        return model;
+    }
+
+    /**
+     * Adds the time spent in each detector, as recorded by the FindBugs profiler, to the metrics. The profile is
+     * read back from the XML the profiler writes, which is the same as the profile in the FindBugs XML output.
+     */
+    private void addDetectorTimes(Profiler profiler)
+    {
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            XMLOutput xmlOutput = new OutputStreamXMLOutput(out);
+            xmlOutput.beginDocument();
+            profiler.writeXML(xmlOutput);
+            xmlOutput.finish();
+            BugCollectionParser.parseProfile(new ByteArrayInputStream(out.toByteArray()), metrics);
+        }catch (Exception e){
+            // The detector times are only informational, the results of the analysis are still valid
+        }
+    }
+
+    /**
+     * @return the default preferences, with the omitted detectors disabled.
+     */
+    static UserPreferences getUserPreferences(AnalysisRequest request)
+    {
+        UserPreferences preferences = UserPreferences.createDefaultUserPreferences();
+        for (String detector : request.getOmittedDetectors()){
+            DetectorFactory factory = FindBugsRegistry.getDetectorFactories().getFactoryByClassName(detector);
+            if (factory != null){
+                preferences.enableDetector(factory, false);
+            }
+        }
+        return preferences;
+    }
+
+    static Project createProject(AnalysisRequest request)
+    {
+        Project project = new Project();
+        project.setProjectName(request.getProjectName());
+        for (File target : request.getTargets()){
+            project.addFile(target.getAbsolutePath());
+        }
+        for (String sourceDir : request.getSourceDirs()){
+            project.addSourceDir(sourceDir);
+        }
+        for (File entry : request.getAuxClasspath()){
+            project.addAuxClasspathEntry(entry.getAbsolutePath());
+        }
+        return project;
+    }
+
+    static AnalysisFeatureSetting[] getAnalysisFeatureSettings(String effort)
+    {
+        if (effort.equals("min")){
+            return FindBugs.MIN_EFFORT;
+        }else if (effort.equals("less")){
+            return FindBugs.LESS_EFFORT;
+        }else if (effort.equals("more")){
+            return FindBugs.MORE_EFFORT;
+        }else if (effort.equals("max")){
+            return FindBugs.MAX_EFFORT;
+        }else{
+            return FindBugs.DEFAULT_EFFORT;
+        }
+    }
+
+    static ReportBug toReportBug(BugInstance bugInstance)
+    {
+        SourceLineAnnotation sourceLine = bugInstance.getPrimarySourceLineAnnotation();
+        String className = bugInstance.getPrimaryClass().getClassName();
+        MethodAnnotation method = bugInstance.getPrimaryMethod();
+        FieldAnnotation field = bugInstance.getPrimaryField();
+        long fingerprint = ReportBug.getFingerprint(bugInstance.getType(), className,
+                method == null ? null : method.getMethodName() + method.getMethodSignature(),
+                field == null ? null : field.getFieldName(), bugInstance.getInstanceHash());
+        return new ReportBug(bugInstance.getType(), bugInstance.getBugPattern().getCategory(),
+                bugInstance.getPriority(), className, sourceLine.getStartLine(), sourceLine.getEndLine(),
+                bugInstance.getMessageWithoutPrefix(), fingerprint);
+    }
+
+    /**
+     * Adds the bugs to a report model as they are reported. The bugs are not added to the bug collection, which only
+     * keeps the project statistics, so the engine does not hold all bugs until the analysis is finished. When the
+     * bugs exceed the bug limits, or a class is about to be analyzed after the deadline, the analysis thread is
+     * interrupted, which makes the engine stop after the current detector.
+     */
+    private static class ModelBugReporter
+            extends BugCollectionBugReporter
+    {
+        private final ReportModel model;
+        private final BugLimits limits;
+        private final Set<Long> bugKeys = new HashSet<Long>();
+        private final int[] bugCounts = new int[3];
+        private final long deadline;
+        private boolean stopped;
+        private boolean outOfTime;
+
+        private ModelBugReporter(Project project, ReportModel model, BugLimits limits, long deadline)
+        {
+            super(project);
+            this.model = model;
+            this.limits = limits;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void observeClass(ClassDescriptor classDescriptor)
+        {
+            super.observeClass(classDescriptor);
+            if (deadline > 0 && !stopped && System.currentTimeMillis() > deadline){
+                stopped = true;
+                outOfTime = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void doReportBug(BugInstance bugInstance)
+        {
+            ReportBug bug = toReportBug(bugInstance);
+            if (!bugKeys.add(ReportModel.getBugKey(bug))){
+                return;
+            }
+            BugPattern pattern = bugInstance.getBugPattern();
+            if (!model.hasPattern(pattern.getType())){
+                model.addPattern(FindBugsRegistry.getPattern(pattern));
+                model.addCategory(FindBugsRegistry.getCategory(pattern.getCategory()));
+            }
+            model.addBug(bug);
+            notifyObservers(bugInstance);
+
+            if (limits != null && !stopped && bug.getPriority() <= bugCounts.length && limits.counts(bug)){
+                bugCounts[bug.getPriority() - 1]++;
+                if (limits.isExceeded(bugCounts)){
+                    stopped = true;
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package net.rumati.maven.plugins.findbugs;
+
+import edu.umd.cs.findbugs.Version;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Caches analysis results per class, so that only the classes whose results may have changed are analyzed again.
+ * Results for the other classes are taken from the cache.
+ * <p>
+ * FindBugs derives facts about a class from the whole program, such as the fields it writes and reads and the
+ * parameters its methods unconditionally dereference, and uses them when analyzing other classes. A change can
+ * therefore affect the results of classes which reach the changed class through other classes, and of the classes
+ * whose members the changed class uses. The classes analyzed again are the changed classes, the classes which
+ * reference a changed class directly or through other classes, and the classes which a changed class references
+ * now or referenced in the previous build.
+ * <p>
+ * The cache is discarded when anything else which can affect the results changes: the effort, the threshold, the
+ * exclude filter, the omitted detectors, the auxiliary class path or the FindBugs version.
+ */
+class IncrementalAnalyzer
+        implements Analyzer
+{
+    private static final String CACHE_FORMAT = "3";
+    private final Analyzer analyzer;
+    private final File cacheFile;
+    private final Log log;
+
+    /**
+     * @param analyzer the analyzer which analyzes changed classes.
+     * @param cacheFile the file in which results are cached between builds.
+     * @param log the log to which to report which classes are analyzed.
+     */
+    IncrementalAnalyzer(Analyzer analyzer, File cacheFile, Log log)
+    {
+        this.analyzer = analyzer;
+        this.cacheFile = cacheFile;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        if (request.getTargets().size() != 1 || !request.getTargets().get(0).isDirectory()){
+            return analyzer.analyze(request);
+        }
+        File classDirectory = request.getTargets().get(0);
+
+        Map<String, ClassFileInfo> classes = new HashMap<String, ClassFileInfo>();
+        String key;
+        try{
+            for (File file : ClassFileInfo.findClassFiles(classDirectory)){
+                ClassFileInfo info = ClassFileInfo.read(file);
+                classes.put(info.getClassName(), info);
+            }
+            key = getCacheKey(request);
+        }catch (IOException e){
+            throw new AnalysisException("Error reading classes for incremental analysis", e);
+        }
+        CacheData cache = load(key);
+
+        Set<String> changed = new HashSet<String>();
+        for (ClassFileInfo info : classes.values()){
+            ClassEntry entry = cache.classes.get(info.getClassName());
+            if (entry == null || !entry.digest.equals(info.getDigest())){
+                changed.add(info.getClassName());
+            }
+        }
+        for (String className : cache.classes.keySet()){
+            if (!classes.containsKey(className)){
+                changed.add(className);
+            }
+        }
+
+        Set<String> dirty = getDirtyClasses(classes, changed, cache);
+        cache.classes.keySet().retainAll(classes.keySet());
+
+        if (dirty.isEmpty()){
+            log.info("No classes changed since the last FindBugs analysis, using cached results");
+        }else{
+            log.info("Analyzing " + dirty.size() + " of " + classes.size() + " classes, using cached results for the rest");
+            AnalysisRequest subset = request.copy();
+            subset.getTargets().clear();
+            for (String className : dirty){
+                subset.getTargets().add(classes.get(className).getFile());
+            }
+            subset.getAuxClasspath().add(0, classDirectory);
+            ReportModel result = analyzer.analyze(subset);
+
+            try{
+                Map<String, Integer> sizes = new HashMap<String, Integer>();
+                for (ReportPackage reportPackage : result.getPackages()){
+                    for (ReportClass reportClass : reportPackage.getClasses()){
+                        sizes.put(reportClass.getName(), reportClass.getSize());
+                    }
+                }
+                cache.version = result.getVersion();
+                for (ReportCategory category : result.getCategories()){
+                    cache.categories.put(category.getCategory(), category);
+                }
+                for (ReportBugPattern pattern : result.getPatterns()){
+                    cache.patterns.put(pattern.getType(), pattern);
+                }
+                for (String className : dirty){
+                    ClassEntry entry = new ClassEntry();
+                    entry.digest = classes.get(className).getDigest();
+                    entry.size = sizes.containsKey(className) ? sizes.get(className) : 0;
+                    entry.references = new HashSet<String>(classes.get(className).getReferences());
+                    entry.bugs = new ArrayList<ReportBug>(result.getBugsByClass(className));
+                    cache.classes.put(className, entry);
+                }
+            }finally{
+                result.close();
+            }
+            save(cache);
+        }
+
+        return toReportModel(cache);
+    }
+
+    /**
+     * @param classes the classes to analyze, by name.
+     * @param changed the names of the classes which changed or were removed since the previous build.
+     * @param cache the results of the previous build, with the classes which were removed still in it.
+     * @return the names of the classes to analyze again: the changed classes which still exist, the classes which
+     *         reference them directly or transitively, and the classes which they reference now or referenced before.
+     */
+    private static Set<String> getDirtyClasses(Map<String, ClassFileInfo> classes, Set<String> changed,
+            CacheData cache)
+    {
+        Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+        for (ClassFileInfo info : classes.values()){
+            for (String reference : info.getReferences()){
+                List<String> list = dependents.get(reference);
+                if (list == null){
+                    list = new ArrayList<String>();
+                    dependents.put(reference, list);
+                }
+                list.add(info.getClassName());
+            }
+        }
+
+        Set<String> reached = new HashSet<String>(changed);
+        LinkedList<String> queue = new LinkedList<String>(changed);
+        while (!queue.isEmpty()){
+            List<String> list = dependents.get(queue.removeFirst());
+            if (list == null){
+                continue;
+            }
+            for (String dependent : list){
+                if (reached.add(dependent)){
+                    queue.add(dependent);
+                }
+            }
+        }
+        for (String className : changed){
+            ClassFileInfo info = classes.get(className);
+            if (info != null){
+                reached.addAll(info.getReferences());
+            }
+            ClassEntry entry = cache.classes.get(className);
+            if (entry != null && entry.references != null){
+                reached.addAll(entry.references);
+            }
+        }
+
+        Set<String> dirty = new TreeSet<String>();
+        for (String className : reached){
+            if (classes.containsKey(className)){
+                dirty.add(className);
+            }
+        }
+        return dirty;
+    }
+
+    private static String getCacheKey(AnalysisRequest request)
+            throws IOException
+    {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(CACHE_FORMAT);
+        fingerprint.add(Version.RELEASE);
+        fingerprint.add(request.getEffort());
+        fingerprint.add(request.getThreshold());
+        fingerprint.addContents(request.getExcludeFilterFile());
+        fingerprint.add(request.getOmittedDetectors().toString());
+        for (File entry : request.getAuxClasspath()){
+            fingerprint.addStamp(entry);
+        }
+        return fingerprint.getValue();
+    }
+
+    private static ReportModel toReportModel(CacheData cache)
+    {
+        ReportModel model = new ReportModel();
+        model.setVersion(cache.version);
+        for (ReportCategory category : cache.categories.values()){
+            model.addCategory(category);
+        }
+        for (ReportBugPattern pattern : cache.patterns.values()){
+            model.addPattern(pattern);
+        }
+        for (Map.Entry<String, ClassEntry> entry : cache.classes.entrySet()){
+            model.addClass(entry.getKey(), entry.getValue().size);
+            for (ReportBug bug : entry.getValue().bugs){
+                model.addBug(bug);
+            }
+        }
+        return model;
+    }
+
+    private CacheData load(String key)
+    {
+        if (cacheFile.isFile()){
+            try{
+                CacheData cache = (CacheData)ObjectFiles.read(cacheFile);
+                if (cache.key.equals(key)){
+                    return cache;
+                }
+                log.info("FindBugs analysis settings or dependencies changed, discarding cached results");
+            }catch (Exception e){
+                log.warn("Could not read FindBugs analysis cache " + cacheFile + ", discarding it", e);
+            }
+        }
+        CacheData cache = new CacheData();
+        cache.key = key;
+        return cache;
+    }
+
+    private void save(CacheData cache)
+    {
+        try{
+            ObjectFiles.write(cacheFile, cache);
+        }catch (IOException e){
+            log.warn("Could not write FindBugs analysis cache " + cacheFile, e);
+            cacheFile.delete();
+        }
+    }
+
+    private static class CacheData
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private String key;
+        private String version = "";
+        private final Map<String, ReportCategory> categories = new HashMap<String, ReportCategory>();
+        private final Map<String, ReportBugPattern> patterns = new HashMap<String, ReportBugPattern>();
+        private final Map<String, ClassEntry> classes = new TreeMap<String, ClassEntry>();
+    }
+
+    private static class ClassEntry
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private String digest;
+        private int size;
+        private Set<String> references;
+        private List<ReportBug> bugs;
+    }
+}
@@ -0,0 +1,38 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+
+/**
+ * A growable list of ints, used for the bug indexes of a report model, which are too large to keep as lists of
+ * objects.
+ */
+class IntList
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private int[] values = new int[4];
+    private int size;
+
+    public void add(int value)
+    {
+        if (size == values.length){
+            int[] newValues = new int[values.length * 2];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index)
+    {
+        if (index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+        return values[index];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,168 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Chooses the maximum heap and the garbage collector of forked FindBugs JVMs from the size of what they analyze.
+ * <p>
+ * The heap a FindBugs analysis needs is modelled as a fixed base plus an amount per byte of input, where the input
+ * is the size of the analyzed class files plus a fraction of the size of the auxiliary class path, of which FindBugs
+ * only loads the classes it needs. The amount per byte starts at an estimate, and is learnt from the peak heap use of
+ * each forked JVM. It follows a larger peak at once, so that a module which ran short gets a larger heap next time,
+ * and follows a smaller peak gradually. The heap is the modelled use plus half, within limits.
+ * <p>
+ * Small heaps use the serial collector, as FindBugs analyzes on one thread. Larger heaps use the parallel collector,
+ * with the processors divided over the JVMs which run concurrently.
+ */
+class JvmSizing
+{
+    private static final long MB = 1024L * 1024L;
+    private static final long BASE_HEAP = 64 * MB;
+    private static final long MIN_HEAP = 128 * MB;
+    private static final long SERIAL_GC_MAX_HEAP = 512 * MB;
+    private static final double DEFAULT_BYTES_PER_INPUT_BYTE = 40;
+    /**
+     * The auxiliary class path counts for this fraction of its size in the input.
+     */
+    private static final int AUX_CLASSPATH_WEIGHT = 8;
+    private static final String BYTES_PER_INPUT_BYTE = "bytesPerInputByte";
+    private final File file;
+    private final long fixedHeap;
+    private final long heapLimit;
+    private final int gcThreads;
+    private double bytesPerInputByte = DEFAULT_BYTES_PER_INPUT_BYTE;
+
+    /**
+     * @param file the file in which the learnt heap use is kept between builds.
+     * @param fixedHeapMb the maximum heap of forked JVMs in megabytes, or 0 to size it to the input.
+     * @param heapLimitMb the largest maximum heap, in megabytes, to which a forked JVM is sized.
+     * @param gcThreads the number of garbage collector threads of each forked JVM.
+     */
+    JvmSizing(File file, int fixedHeapMb, int heapLimitMb, int gcThreads)
+    {
+        this.file = file;
+        this.fixedHeap = fixedHeapMb * MB;
+        this.heapLimit = Math.max(heapLimitMb * MB, MIN_HEAP);
+        this.gcThreads = Math.max(gcThreads, 1);
+    }
+
+    /**
+     * Reads the learnt heap use, if the file exists.
+     */
+    synchronized void load()
+            throws IOException
+    {
+        if (!file.isFile()){
+            return;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try{
+            properties.load(in);
+        }finally{
+            in.close();
+        }
+        String value = properties.getProperty(BYTES_PER_INPUT_BYTE);
+        try{
+            if (value != null && Double.parseDouble(value) > 0){
+                bytesPerInputByte = Double.parseDouble(value);
+            }
+        }catch (NumberFormatException e){
+            throw new IOException("Invalid " + BYTES_PER_INPUT_BYTE + " in " + file + ": " + value);
+        }
+    }
+
+    synchronized void save()
+            throws IOException
+    {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Properties properties = new Properties();
+        properties.setProperty(BYTES_PER_INPUT_BYTE, Double.toString(bytesPerInputByte));
+        OutputStream out = new FileOutputStream(file);
+        try{
+            properties.store(out, "FindBugs forked JVM heap use");
+        }finally{
+            out.close();
+        }
+    }
+
+    /**
+     * @return the size of the input of an analysis, as used by the heap model.
+     */
+    static long getInputBytes(AnalysisRequest request)
+    {
+        long size = 0;
+        for (File target : request.getTargets()){
+            size += getSize(target);
+        }
+        for (File entry : request.getAuxClasspath()){
+            size += getSize(entry) / AUX_CLASSPATH_WEIGHT;
+        }
+        return size;
+    }
+
+    private static long getSize(File file)
+    {
+        if (!file.isDirectory()){
+            return file.length();
+        }
+        long size = 0;
+        for (File classFile : ClassFileInfo.findClassFiles(file)){
+            size += classFile.length();
+        }
+        return size;
+    }
+
+    /**
+     * @param inputBytes the size of the input of the analysis.
+     * @return the maximum heap for a JVM which runs the analysis, in bytes.
+     */
+    synchronized long getMaxHeap(long inputBytes)
+    {
+        if (fixedHeap > 0){
+            return fixedHeap;
+        }
+        long heap = (long)((BASE_HEAP + bytesPerInputByte * inputBytes) * 1.5);
+        heap = (heap + 64 * MB - 1) / (64 * MB) * (64 * MB);
+        return Math.min(Math.max(heap, MIN_HEAP), heapLimit);
+    }
+
+    /**
+     * @param maxHeap the maximum heap, in bytes.
+     * @return the JVM arguments which set the maximum heap and the garbage collector.
+     */
+    List<String> getJvmArguments(long maxHeap)
+    {
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("-Xmx" + maxHeap / MB + "m");
+        if (maxHeap <= SERIAL_GC_MAX_HEAP || gcThreads == 1){
+            arguments.add("-XX:+UseSerialGC");
+        }else{
+            arguments.add("-XX:+UseParallelGC");
+            arguments.add("-XX:ParallelGCThreads=" + gcThreads);
+        }
+        return arguments;
+    }
+
+    /**
+     * Learns from the peak heap use of an analysis.
+     * @param inputBytes the size of the input of the analysis.
+     * @param peakHeap the peak heap use of the JVM which ran the analysis, in bytes.
+     */
+    synchronized void record(long inputBytes, long peakHeap)
+    {
+        if (inputBytes <= 0 || peakHeap <= 0){
+            return;
+        }
+        double observed = Math.max(peakHeap - BASE_HEAP, 0) / (double)inputBytes;
+        bytesPerInputByte = observed > bytesPerInputByte ? observed : (bytesPerInputByte + observed) / 2;
+    }
+}
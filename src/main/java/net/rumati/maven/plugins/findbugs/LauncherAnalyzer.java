@@ -0,0 +1,152 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Runs FindBugs through its command line launcher, using a temporary project file, and reads back the XML output.
+ */
+class LauncherAnalyzer
+        implements Analyzer
+{
+    private final AnalysisMetrics metrics;
+
+    /**
+     * @param metrics the metrics to which to add the time of writing the project file, of running FindBugs and of
+     *        parsing its output.
+     */
+    LauncherAnalyzer(AnalysisMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        try{
+            File tmpProjectFile = File.createTempFile("findbugs", ".fbp");
+            try{
+                long start = System.nanoTime();
+                writeFindBugsProjectFile(request, tmpProjectFile);
+                metrics.addTime("projectFile", start);
+                File outputFile = File.createTempFile("findbug", ".xml");
+                try{
+                    List<String> args = getArguments(request, tmpProjectFile, outputFile);
+                    start = System.nanoTime();
+                    try{
+                        edu.umd.cs.findbugs.LaunchAppropriateUI.main(args.toArray(new String[args.size()]));
+                    }finally{
+                        FindBugsRegistry.releaseAnalysisState();
+                    }
+                    metrics.addTime("findbugs", start);
+                    start = System.nanoTime();
+                    ReportModel model = BugCollectionParser.parse(outputFile, metrics);
+                    metrics.addTime("parse", start);
+                    return model;
+                }finally{
+                    outputFile.delete();
+                }
+            }finally{
+                tmpProjectFile.delete();
+            }
+        }catch (AnalysisException e){
+            throw e;
+        }catch (Exception e){
+            throw new AnalysisException("Error running FindBugs", e);
+        }
+    }
+
+    /**
+     * Gets the FindBugs text UI arguments for an analysis.
+     * @param request the analysis to run.
+     * @param projectFile the FindBugs project file written for the analysis.
+     * @param outputFile the file to which FindBugs must write its XML output.
+     * @return the arguments.
+     */
+    static List<String> getArguments(AnalysisRequest request, File projectFile, File outputFile)
+    {
+        List<String> args = new LinkedList<String>();
+        args.add("-textui");
+        args.add("-effort:" + request.getEffort());
+        args.add("-" + request.getThreshold());
+
+        if (request.getExcludeFilterFile() != null){
+            args.add("-exclude");
+            args.add(request.getExcludeFilterFile().getAbsolutePath());
+        }
+
+        if (!request.getOmittedDetectors().isEmpty()){
+            StringBuilder visitors = new StringBuilder();
+            for (String detector : request.getOmittedDetectors()){
+                if (visitors.length() > 0){
+                    visitors.append(',');
+                }
+                visitors.append(detector.substring(detector.lastIndexOf('.') + 1));
+            }
+            args.add("-omitVisitors");
+            args.add(visitors.toString());
+        }
+
+        args.add("-project");
+        args.add(projectFile.getAbsolutePath());
+        args.add("-xml:withMessages");
+        args.add("-output");
+        args.add(outputFile.getAbsolutePath());
+        return args;
+    }
+
+    static void writeFindBugsProjectFile(AnalysisRequest request, File outputFile)
+            throws ParserConfigurationException, TransformerException, IOException
+    {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element projectElement = doc.createElement("Project");
+        doc.appendChild(projectElement);
+        projectElement.setAttribute("projectName", request.getProjectName());
+
+        for (File target : request.getTargets()){
+            Element jar = doc.createElement("Jar");
+            jar.setTextContent(target.getAbsolutePath());
+            projectElement.appendChild(jar);
+        }
+
+        for (String sourceDir : request.getSourceDirs()){
+            Element el = doc.createElement("SrcDir");
+            el.setTextContent(sourceDir);
+            projectElement.appendChild(el);
+        }
+
+        for (File entry : request.getAuxClasspath()){
+            Element el = doc.createElement("AuxClasspathEntry");
+            el.setTextContent(entry.getAbsolutePath());
+            projectElement.appendChild(el);
+        }
+
+        Transformer trans = TransformerFactory.newInstance().newTransformer();
+        trans.setOutputProperty(OutputKeys.METHOD, "xml");
+        trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        trans.setOutputProperty(OutputKeys.INDENT, "yes");
+        trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+        OutputStream out = new FileOutputStream(outputFile);
+        try {
+            trans.transform(new DOMSource(doc), new StreamResult(out));
+        }finally{
+            out.close();
+        }
+    }
+}
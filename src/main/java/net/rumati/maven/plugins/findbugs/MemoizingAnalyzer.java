@@ -0,0 +1,100 @@
+package net.rumati.maven.plugins.findbugs;
+
+import edu.umd.cs.findbugs.Version;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Reuses the results of the previous analysis when none of the analysis inputs changed, without running FindBugs.
+ * The inputs are the contents of the analyzed classes, the source directories, the auxiliary class path, the effort,
+ * the threshold, the exclude filter, the omitted detectors and the FindBugs version.
+ */
+class MemoizingAnalyzer
+        implements Analyzer
+{
+    private static final String RESULT_FORMAT = "3";
+    private final Analyzer analyzer;
+    private final File resultFile;
+    private final Log log;
+
+    /**
+     * @param analyzer the analyzer to use when an input changed.
+     * @param resultFile the file in which the previous result is kept.
+     * @param log the log to which to report whether the previous result is reused.
+     */
+    MemoizingAnalyzer(Analyzer analyzer, File resultFile, Log log)
+    {
+        this.analyzer = analyzer;
+        this.resultFile = resultFile;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        String fingerprint;
+        try{
+            fingerprint = getFingerprint(request);
+        }catch (IOException e){
+            throw new AnalysisException("Error reading FindBugs analysis inputs", e);
+        }
+
+        if (resultFile.isFile()){
+            try{
+                StoredResult stored = (StoredResult)ObjectFiles.read(resultFile);
+                if (stored.fingerprint.equals(fingerprint)){
+                    log.info("FindBugs analysis inputs have not changed, reusing the previous results");
+                    return stored.model;
+                }
+            }catch (Exception e){
+                log.warn("Could not read previous FindBugs results " + resultFile + ", discarding them", e);
+            }
+        }
+
+        ReportModel model = analyzer.analyze(request);
+        StoredResult stored = new StoredResult();
+        stored.fingerprint = fingerprint;
+        stored.model = model;
+        try{
+            ObjectFiles.write(resultFile, stored);
+        }catch (IOException e){
+            log.warn("Could not write FindBugs results " + resultFile, e);
+            resultFile.delete();
+        }
+        return model;
+    }
+
+    private static String getFingerprint(AnalysisRequest request)
+            throws IOException
+    {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.add(RESULT_FORMAT);
+        fingerprint.add(Version.RELEASE);
+        fingerprint.add(request.getProjectName());
+        fingerprint.add(request.getEffort());
+        fingerprint.add(request.getThreshold());
+        fingerprint.addContents(request.getExcludeFilterFile());
+        fingerprint.add(request.getOmittedDetectors().toString());
+        for (File target : request.getTargets()){
+            fingerprint.add(target.getAbsolutePath());
+            fingerprint.addContents(target);
+        }
+        for (String sourceDir : request.getSourceDirs()){
+            fingerprint.addStamp(new File(sourceDir));
+        }
+        for (File entry : request.getAuxClasspath()){
+            fingerprint.addStamp(entry);
+        }
+        return fingerprint.getValue();
+    }
+
+    private static class StoredResult
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private String fingerprint;
+        private ReportModel model;
+    }
+}
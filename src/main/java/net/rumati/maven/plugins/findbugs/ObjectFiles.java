@@ -0,0 +1,57 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes compressed, serialized objects, for data the plugin keeps between builds.
+ */
+final class ObjectFiles
+{
+    private ObjectFiles()
+    {
+    }
+
+    public static Object read(File file)
+            throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in =
+                new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+        try{
+            return in.readObject();
+        }finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Writes an object to a file, creating the parent directory if necessary. The file is written under a temporary
+     * name and then renamed, so that an interrupted build does not leave a truncated file behind.
+     */
+    public static void write(File file, Object object)
+            throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        ObjectOutputStream out =
+                new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))));
+        try{
+            out.writeObject(object);
+        }finally{
+            out.close();
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file)){
+            tmpFile.delete();
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+
+/**
+ * A single bug instance, reduced to the fields used by the report.
+ */
+class ReportBug
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private final String type;
+    private final String category;
+    private final int priority;
+    private final String className;
+    private final int startLine;
+    private final int endLine;
+    private final String message;
+    private final long fingerprint;
+
+    /**
+     * @param type the bug pattern type.
+     * @param category the bug category code.
+     * @param priority the bug priority, <tt>1</tt> being the highest.
+     * @param className the name of the primary class of the bug.
+     * @param startLine the first line of the bug, or <tt>-1</tt> if unknown.
+     * @param endLine the last line of the bug, or <tt>-1</tt> if unknown.
+     * @param message the long message describing the bug.
+     * @param fingerprint the fingerprint of the bug, as returned by {@link #getFingerprint(String, String, String,
+     *        String, String)}.
+     */
+    ReportBug(String type, String category, int priority, String className, int startLine, int endLine,
+            String message, long fingerprint)
+    {
+        this.type = type;
+        this.category = category;
+        this.priority = priority;
+        this.className = className;
+        this.startLine = startLine;
+        this.endLine = endLine;
+        this.message = message;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Computes the fingerprint of a bug, which identifies the bug independently of the lines at which it occurs, so
+     * that it is recognized after unrelated code has been added or removed.
+     * @param type the bug pattern type.
+     * @param className the name of the primary class of the bug.
+     * @param method the name and signature of the primary method of the bug, or <code>null</code>.
+     * @param field the name of the primary field of the bug, or <code>null</code>.
+     * @param instanceHash the FindBugs instance hash of the bug, which does not depend on line numbers, or
+     *        <code>null</code>.
+     * @return a 64 bit hash of the arguments.
+     */
+    static long getFingerprint(String type, String className, String method, String field, String instanceHash)
+    {
+        String key = type + ':' + className + ':' + (method == null ? "" : method) + ':' + (field == null ? "" : field)
+                + ':' + (instanceHash == null ? "" : instanceHash);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++){
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    public String getClassName()
+    {
+        return className;
+    }
+
+    public int getStartLine()
+    {
+        return startLine;
+    }
+
+    public int getEndLine()
+    {
+        return endLine;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * @return the line insensitive fingerprint of the bug, used to recognize bugs in a {@link BugBaseline}.
+     */
+    public long getFingerprint()
+    {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,47 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+
+/**
+ * A FindBugs bug pattern, with the descriptive text shown in the report.
+ */
+class ReportBugPattern
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private final String type;
+    private final String category;
+    private final String shortDescription;
+    private final String details;
+
+    ReportBugPattern(String type, String category, String shortDescription, String details)
+    {
+        this.type = type;
+        this.category = category;
+        this.shortDescription = shortDescription;
+        this.details = details;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public String getShortDescription()
+    {
+        return shortDescription;
+    }
+
+    /**
+     * @return the HTML description of the bug pattern.
+     */
+    public String getDetails()
+    {
+        return details;
+    }
+}
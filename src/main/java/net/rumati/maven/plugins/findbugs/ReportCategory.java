@@ -0,0 +1,30 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+
+/**
+ * A FindBugs bug category, such as <tt>CORRECTNESS</tt> or <tt>PERFORMANCE</tt>.
+ */
+class ReportCategory
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private final String category;
+    private final String description;
+
+    ReportCategory(String category, String description)
+    {
+        this.category = category;
+        this.description = description;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+}
@@ -0,0 +1,45 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+
+/**
+ * An analyzed class, with its size in lines of code.
+ */
+class ReportClass
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private final String name;
+    private int size;
+    private int bugCount;
+
+    ReportClass(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    void setSize(int size)
+    {
+        this.size = size;
+    }
+
+    public int getBugCount()
+    {
+        return bugCount;
+    }
+
+    void incrementBugCount()
+    {
+        bugCount++;
+    }
+}
@@ -0,0 +1,480 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The results of a FindBugs analysis, indexed for rendering. The indexes are maintained as bugs are added, so the
+ * report can be rendered without searching the results again.
+ * <p>
+ * The bugs are kept in a {@link BugStore}, and the indexes hold bug ids. The lists of bugs returned by the model are
+ * views, which create the bugs as they are requested, so a report can be rendered one group of bugs at a time
+ * without holding all bugs as objects. A model must be closed when it is no longer used, to delete the file to which
+ * the store may have spilled the bug messages.
+ */
+class ReportModel
+        implements Serializable, Closeable
+{
+    private static final long serialVersionUID = 1L;
+    private String version = "";
+    private final Map<String, ReportCategory> categories = new TreeMap<String, ReportCategory>();
+    private final Map<String, ReportBugPattern> patterns = new TreeMap<String, ReportBugPattern>();
+    private final Map<String, ReportPackage> packages = new TreeMap<String, ReportPackage>();
+    private final BugStore bugs = new BugStore();
+    private final Map<String, IntList> bugsByClass = new HashMap<String, IntList>();
+    private final Map<String, IntList> bugsByType = new HashMap<String, IntList>();
+    private final Map<String, IntList> bugsByCategory = new TreeMap<String, IntList>();
+    private final Map<String, IntList> bugsByPackage = new HashMap<String, IntList>();
+    private final int[] bugsByPriority = new int[4];
+    private int baselineBugCount;
+    private Map<String, String> coverage;
+
+    /**
+     * Merges the results of several analyses. A bug reported by more than one analysis is included once, and the
+     * size of a class analyzed more than once is taken from the last analysis.
+     * @param models the results to merge, which are still to be closed by the caller.
+     * @return the merged results.
+     */
+    static ReportModel merge(List<ReportModel> models)
+    {
+        ReportModel merged = new ReportModel();
+        Set<Long> bugKeys = new HashSet<Long>();
+        for (ReportModel model : models){
+            if (merged.version.length() == 0){
+                merged.version = model.version;
+            }
+            merged.categories.putAll(model.categories);
+            merged.patterns.putAll(model.patterns);
+            for (ReportPackage reportPackage : model.packages.values()){
+                for (ReportClass reportClass : reportPackage.getClasses()){
+                    merged.addClass(reportClass.getName(), reportClass.getSize());
+                }
+            }
+            for (ReportBug bug : model.getBugs()){
+                if (bugKeys.add(getBugKey(bug))){
+                    merged.addBug(bug);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Creates a model with the bugs of this model which are not in a baseline. The analyzed classes, the categories
+     * and the bug patterns are kept. This model is still to be closed by the caller.
+     * @param baseline the fingerprints of the known bugs.
+     * @return the model of the new bugs.
+     */
+    ReportModel withoutBaseline(BugBaseline baseline)
+    {
+        ReportModel filtered = new ReportModel();
+        filtered.version = version;
+        filtered.categories.putAll(categories);
+        filtered.patterns.putAll(patterns);
+        for (ReportPackage reportPackage : packages.values()){
+            for (ReportClass reportClass : reportPackage.getClasses()){
+                filtered.addClass(reportClass.getName(), reportClass.getSize());
+            }
+        }
+        filtered.baselineBugCount = baselineBugCount;
+        filtered.coverage = coverage;
+        for (int id = 0; id < bugs.size(); id++){
+            if (baseline.contains(bugs.getFingerprint(id))){
+                filtered.baselineBugCount++;
+            }else{
+                filtered.addBug(bugs.get(id));
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * @return a 64 bit hash identifying a bug by its type, class, lines and message, used to recognize a bug which is
+     *         reported more than once.
+     */
+    static long getBugKey(ReportBug bug)
+    {
+        String key = bug.getType() + ':' + bug.getClassName() + ':' + bug.getStartLine() + ':' + bug.getEndLine()
+                + ':' + bug.getMessage();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++){
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public String getVersion()
+    {
+        return version;
+    }
+
+    void setVersion(String version)
+    {
+        this.version = version;
+    }
+
+    /**
+     * @return the effort at which each class was analyzed, by class name, with {@link BudgetedAnalyzer#NOT_ANALYZED}
+     *         for the classes which were not analyzed and {@link BudgetedAnalyzer#PARTLY_ANALYZED} for those of which
+     *         the analysis was stopped, or <tt>null</tt> if the analysis had no time budget.
+     */
+    public Map<String, String> getCoverage()
+    {
+        return coverage;
+    }
+
+    void setCoverage(Map<String, String> coverage)
+    {
+        this.coverage = coverage;
+    }
+
+    void addCategory(ReportCategory category)
+    {
+        categories.put(category.getCategory(), category);
+    }
+
+    void addPattern(ReportBugPattern pattern)
+    {
+        patterns.put(pattern.getType(), pattern);
+    }
+
+    boolean hasPattern(String type)
+    {
+        return patterns.containsKey(type);
+    }
+
+    /**
+     * Records an analyzed class and its size in lines of code.
+     */
+    void addClass(String className, int size)
+    {
+        getOrCreateClass(className).setSize(size);
+    }
+
+    void addBug(ReportBug bug)
+    {
+        int id = bugs.add(bug);
+        ReportClass reportClass = getOrCreateClass(bug.getClassName());
+        reportClass.incrementBugCount();
+        packages.get(getPackageName(bug.getClassName())).incrementBugCount();
+        index(bugsByClass, bug.getClassName(), id);
+        index(bugsByType, bug.getType(), id);
+        index(bugsByCategory, bug.getCategory(), id);
+        index(bugsByPackage, getPackageName(bug.getClassName()), id);
+        bugsByPriority[Math.min(Math.max(bug.getPriority(), 1), 3)]++;
+    }
+
+    private static void index(Map<String, IntList> index, String key, int id)
+    {
+        IntList list = index.get(key);
+        if (list == null){
+            list = new IntList();
+            index.put(key, list);
+        }
+        list.add(id);
+    }
+
+    private ReportClass getOrCreateClass(String className)
+    {
+        String packageName = getPackageName(className);
+        ReportPackage reportPackage = packages.get(packageName);
+        if (reportPackage == null){
+            reportPackage = new ReportPackage(packageName);
+            packages.put(packageName, reportPackage);
+        }
+        return reportPackage.getOrCreateClass(className);
+    }
+
+    static String getPackageName(String className)
+    {
+        int idx = className.lastIndexOf('.');
+        return idx < 0 ? "" : className.substring(0, idx);
+    }
+
+    public int getBugCount()
+    {
+        return bugs.size();
+    }
+
+    /**
+     * @param priority the priority, <tt>1</tt> (high), <tt>2</tt> (medium) or <tt>3</tt> (low).
+     * @return the number of bugs of the priority.
+     */
+    public int getBugCount(int priority)
+    {
+        return bugsByPriority[priority];
+    }
+
+    /**
+     * @return the number of bugs which were left out of the model because they are in the baseline.
+     */
+    public int getBaselineBugCount()
+    {
+        return baselineBugCount;
+    }
+
+    public int getClassCount()
+    {
+        int count = 0;
+        for (ReportPackage reportPackage : packages.values()){
+            count += reportPackage.getClassCount();
+        }
+        return count;
+    }
+
+    public int getPackageCount()
+    {
+        return packages.size();
+    }
+
+    /**
+     * @return the total number of lines of code analyzed.
+     */
+    public int getSize()
+    {
+        int size = 0;
+        for (ReportPackage reportPackage : packages.values()){
+            size += reportPackage.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return the distinct fingerprints of the bugs, sorted.
+     */
+    public long[] getFingerprints()
+    {
+        long[] fingerprints = new long[bugs.size()];
+        for (int id = 0; id < fingerprints.length; id++){
+            fingerprints[id] = bugs.getFingerprint(id);
+        }
+        Arrays.sort(fingerprints);
+        int count = 0;
+        for (int i = 0; i < fingerprints.length; i++){
+            if (count == 0 || fingerprints[i] != fingerprints[count - 1]){
+                fingerprints[count++] = fingerprints[i];
+            }
+        }
+        if (count == fingerprints.length){
+            return fingerprints;
+        }
+        long[] distinct = new long[count];
+        System.arraycopy(fingerprints, 0, distinct, 0, count);
+        return distinct;
+    }
+
+    /**
+     * @return the number of bugs of each type which has bugs, sorted by type.
+     */
+    public Map<String, Integer> getBugCountsByType()
+    {
+        return getCounts(bugsByType);
+    }
+
+    /**
+     * @return the number of bugs in each category which has bugs, sorted by category code.
+     */
+    public Map<String, Integer> getBugCountsByCategory()
+    {
+        return getCounts(bugsByCategory);
+    }
+
+    private static Map<String, Integer> getCounts(Map<String, IntList> index)
+    {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (Map.Entry<String, IntList> entry : index.entrySet()){
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    /**
+     * @return all bugs, in the order in which they were added.
+     */
+    public List<ReportBug> getBugs()
+    {
+        return bugs.asList();
+    }
+
+    /**
+     * @return the packages containing bugs, sorted by name.
+     */
+    public List<ReportPackage> getPackagesWithBugs()
+    {
+        List<ReportPackage> list = new ArrayList<ReportPackage>();
+        for (ReportPackage reportPackage : packages.values()){
+            if (reportPackage.getBugCount() > 0){
+                list.add(reportPackage);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return all analyzed packages, sorted by name.
+     */
+    public Collection<ReportPackage> getPackages()
+    {
+        return Collections.unmodifiableCollection(packages.values());
+    }
+
+    /**
+     * @return all known categories, sorted by category code.
+     */
+    public Collection<ReportCategory> getCategories()
+    {
+        return Collections.unmodifiableCollection(categories.values());
+    }
+
+    /**
+     * @return all known bug patterns, sorted by type.
+     */
+    public Collection<ReportBugPattern> getPatterns()
+    {
+        return Collections.unmodifiableCollection(patterns.values());
+    }
+
+    /**
+     * @return the categories containing bugs, sorted by category code.
+     */
+    public List<ReportCategory> getCategoriesWithBugs()
+    {
+        List<ReportCategory> list = new ArrayList<ReportCategory>();
+        for (String category : bugsByCategory.keySet()){
+            list.add(getCategory(category));
+        }
+        return list;
+    }
+
+    /**
+     * @return the category, or a category described by its code if the category is unknown.
+     */
+    public ReportCategory getCategory(String category)
+    {
+        ReportCategory reportCategory = categories.get(category);
+        if (reportCategory == null){
+            reportCategory = new ReportCategory(category, category);
+        }
+        return reportCategory;
+    }
+
+    /**
+     * @return the bug patterns of the category which have bugs, sorted by type.
+     */
+    public List<ReportBugPattern> getPatternsWithBugs(String category)
+    {
+        Map<String, ReportBugPattern> categoryPatterns = new TreeMap<String, ReportBugPattern>();
+        IntList ids = bugsByCategory.get(category);
+        for (int i = 0; ids != null && i < ids.size(); i++){
+            String type = bugs.getType(ids.get(i));
+            if (!categoryPatterns.containsKey(type)){
+                categoryPatterns.put(type, getPattern(type));
+            }
+        }
+        return new ArrayList<ReportBugPattern>(categoryPatterns.values());
+    }
+
+    /**
+     * @return the bug pattern, or a pattern described by its type if the pattern is unknown.
+     */
+    public ReportBugPattern getPattern(String type)
+    {
+        ReportBugPattern pattern = patterns.get(type);
+        if (pattern == null){
+            pattern = new ReportBugPattern(type, "", type, "");
+        }
+        return pattern;
+    }
+
+    /**
+     * @return the bug with the given id.
+     */
+    public ReportBug getBug(int id)
+    {
+        return bugs.get(id);
+    }
+
+    /**
+     * Groups the bugs of a type by class, without reading their messages.
+     * @return the ids of the bugs of the type, by class name, sorted by class name.
+     */
+    public SortedMap<String, IntList> getBugIdsByClass(String type)
+    {
+        SortedMap<String, IntList> idsByClass = new TreeMap<String, IntList>();
+        IntList ids = bugsByType.get(type);
+        for (int i = 0; ids != null && i < ids.size(); i++){
+            index(idsByClass, bugs.getClassName(ids.get(i)), ids.get(i));
+        }
+        return idsByClass;
+    }
+
+    /**
+     * Adds the numbers of bugs of a class to counts, without reading their messages: the number of bugs at index
+     * <tt>0</tt>, and the number of bugs of each priority at the index of the priority.
+     */
+    public void addBugCounts(String className, int[] counts)
+    {
+        IntList ids = bugsByClass.get(className);
+        for (int i = 0; ids != null && i < ids.size(); i++){
+            counts[0]++;
+            int priority = bugs.getPriority(ids.get(i));
+            if (priority >= 1 && priority <= 3){
+                counts[priority]++;
+            }
+        }
+    }
+
+    public List<ReportBug> getBugsByClass(String className)
+    {
+        return lookup(bugsByClass, className);
+    }
+
+    public List<ReportBug> getBugsByType(String type)
+    {
+        return lookup(bugsByType, type);
+    }
+
+    public List<ReportBug> getBugsByCategory(String category)
+    {
+        return lookup(bugsByCategory, category);
+    }
+
+    public List<ReportBug> getBugsByPackage(String packageName)
+    {
+        return lookup(bugsByPackage, packageName);
+    }
+
+    private List<ReportBug> lookup(Map<String, IntList> index, String key)
+    {
+        IntList ids = index.get(key);
+        if (ids == null){
+            return Collections.emptyList();
+        }
+        return bugs.asList(ids);
+    }
+
+    /**
+     * Deletes the file to which the bug messages may have been spilled.
+     */
+    public void close()
+    {
+        try{
+            bugs.close();
+        }catch (IOException e){
+            // The spill file is deleted even if its streams could not be closed
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An analyzed package, and the classes analyzed in it.
+ */
+class ReportPackage
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private final String name;
+    private final Map<String, ReportClass> classes = new TreeMap<String, ReportClass>();
+    private int bugCount;
+
+    ReportPackage(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the classes of this package, sorted by name.
+     */
+    public Collection<ReportClass> getClasses()
+    {
+        return classes.values();
+    }
+
+    ReportClass getOrCreateClass(String className)
+    {
+        ReportClass reportClass = classes.get(className);
+        if (reportClass == null){
+            reportClass = new ReportClass(className);
+            classes.put(className, reportClass);
+        }
+        return reportClass;
+    }
+
+    public int getClassCount()
+    {
+        return classes.size();
+    }
+
+    public int getSize()
+    {
+        int size = 0;
+        for (ReportClass reportClass : classes.values()){
+            size += reportClass.getSize();
+        }
+        return size;
+    }
+
+    public int getBugCount()
+    {
+        return bugCount;
+    }
+
+    void incrementBugCount()
+    {
+        bugCount++;
+    }
+}
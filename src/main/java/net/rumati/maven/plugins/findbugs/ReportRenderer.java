@@ -0,0 +1,1217 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.doxia.sink.Sink;
+import org.apache.maven.doxia.sink.SinkFactory;
+
+/**
+ * Renders a report model to Doxia sinks, either as one page, or as an index page with a page per package and per bug
+ * pattern.
+ */
+class ReportRenderer
+{
+    /**
+     * The directory, relative to the report output directory, which holds the package and bug pattern pages.
+     */
+    static final String PAGE_DIRECTORY = "findbugs";
+    private final ReportModel model;
+    private final String effort;
+    private final String threshold;
+    private final String xrefPath;
+    private boolean multiPage;
+    private int renderThreads = 1;
+    private List<BugHistory.Build> history = Collections.emptyList();
+    private List<String> skippedDetectors = Collections.emptyList();
+    private Map<String, Set<String>> classesByModule = Collections.emptyMap();
+    private SourceIndex sources;
+
+    /**
+     * @param model the report model.
+     * @param effort the analysis effort, as shown on the report.
+     * @param threshold the priority threshold, as shown on the report.
+     * @param xrefPath the location of the JXR cross referenced source, relative to the report output directory, or
+     *        <code>null</code> to not link to the source.
+     */
+    ReportRenderer(ReportModel model, String effort, String threshold, String xrefPath)
+    {
+        this.model = model;
+        this.effort = effort;
+        this.threshold = threshold;
+        if (xrefPath != null && !xrefPath.endsWith("/")){
+            xrefPath = xrefPath + "/";
+        }
+        this.xrefPath = xrefPath;
+    }
+
+    /**
+     * Sets the number of threads on which the package, category and page sections of the report are rendered. The
+     * sections are written to the sinks in the same order, and with the same output, as when rendering on one thread.
+     */
+    public void setRenderThreads(int renderThreads)
+    {
+        this.renderThreads = renderThreads;
+    }
+
+    /**
+     * Sets the builds shown in the trend section. No trend section is rendered if there are no builds.
+     * @param history the builds, most recent first, including the build of the report.
+     */
+    public void setHistory(List<BugHistory.Build> history)
+    {
+        this.history = history;
+    }
+
+    /**
+     * Sets the detectors which were skipped in the analysis, which are listed on the report.
+     * @param skippedDetectors the class names of the detectors.
+     */
+    public void setSkippedDetectors(List<String> skippedDetectors)
+    {
+        this.skippedDetectors = skippedDetectors;
+    }
+
+    /**
+     * Sets the modules of an aggregate report, for which the report shows the bug counts per module.
+     * @param classesByModule the names of the classes of each module, by module name, in the order in which the
+     * modules are shown.
+     */
+    public void setModules(Map<String, Set<String>> classesByModule)
+    {
+        this.classesByModule = classesByModule;
+    }
+
+    /**
+     * Sets the source files from which the lines of each bug are shown, with the lines around them, in the bugs by
+     * class section. No source lines are shown if this is not set.
+     */
+    public void setSourceIndex(SourceIndex sources)
+    {
+        this.sources = sources;
+    }
+
+    /**
+     * Renders the whole report as one page.
+     * @param sink the sink of the page, which is closed afterwards.
+     * @throws IOException if the report could not be written.
+     */
+    public void render(Sink sink)
+            throws IOException
+    {
+        multiPage = false;
+        doHeader(sink, "FindBugs Report");
+        doIntroduction(sink);
+        boolean hasBugs = doSummary(sink);
+        doTrend(sink);
+        doSkippedDetectors(sink);
+        doCoverage(sink);
+        doModules(sink);
+        if (hasBugs){
+            /*
+             * Only do reports if bugs were actually found.
+             */
+            doBugsByClassReport(sink);
+            doBugsByCategoryReport(sink);
+        }
+        doFooter(sink);
+    }
+
+    /**
+     * Renders the report as an index page with the summary and the package and category tables, and a page per
+     * package and per bug pattern, in {@link #PAGE_DIRECTORY}. Each page is written and closed before the next one
+     * is started.
+     * @param indexSink the sink of the index page, which is closed afterwards.
+     * @param sinkFactory the factory for the sinks of the package and bug pattern pages.
+     * @param outputDirectory the report output directory.
+     * @throws IOException if a page could not be created.
+     */
+    public void renderPages(Sink indexSink, final SinkFactory sinkFactory, File outputDirectory)
+            throws IOException
+    {
+        multiPage = true;
+        doHeader(indexSink, "FindBugs Report");
+        doIntroduction(indexSink);
+        boolean hasBugs = doSummary(indexSink);
+        doTrend(indexSink);
+        doSkippedDetectors(indexSink);
+        doCoverage(indexSink);
+        doModules(indexSink);
+        if (hasBugs){
+            doPackageTable(indexSink);
+            doCategoryTable(indexSink);
+        }
+        doFooter(indexSink);
+        if (!hasBugs){
+            return;
+        }
+
+        final File pageDirectory = new File(outputDirectory, PAGE_DIRECTORY);
+        pageDirectory.mkdirs();
+        List<Section> sections = new ArrayList<Section>();
+        for (final ReportPackage reportPackage : model.getPackagesWithBugs()){
+            sections.add(new Section(null)
+            {
+                @Override
+                Sink open()
+                        throws IOException
+                {
+                    return sinkFactory.createSink(pageDirectory, getPackagePage(reportPackage.getName()));
+                }
+
+                @Override
+                void render(Sink sink)
+                {
+                    doHeader(sink, "FindBugs Report - Package " + reportPackage.getName());
+                    sink.section1();
+                    doPackage(sink, reportPackage);
+                    sink.section1_();
+                    doFooter(sink);
+                }
+            });
+        }
+        for (final ReportCategory category : model.getCategoriesWithBugs()){
+            for (final ReportBugPattern pattern : model.getPatternsWithBugs(category.getCategory())){
+                sections.add(new Section(null)
+                {
+                    @Override
+                    Sink open()
+                            throws IOException
+                    {
+                        return sinkFactory.createSink(pageDirectory, getPatternPage(pattern.getType()));
+                    }
+
+                    @Override
+                    void render(Sink sink)
+                    {
+                        doHeader(sink, "FindBugs Report - " + pattern.getShortDescription());
+                        sink.section1();
+                        sink.paragraph();
+                        sink.text(category.getDescription());
+                        sink.paragraph_();
+                        doPattern(sink, pattern);
+                        sink.section1_();
+                        doFooter(sink);
+                    }
+                });
+            }
+        }
+        renderSections(sections);
+    }
+
+    /**
+     * A part of the report which is rendered independently of the other parts.
+     */
+    private abstract static class Section
+    {
+        private final Sink target;
+
+        /**
+         * @param target the sink to which the section is written, or <code>null</code> if the section opens its own
+         *        sink.
+         */
+        Section(Sink target)
+        {
+            this.target = target;
+        }
+
+        /**
+         * @return the sink to which the section is written.
+         */
+        Sink open()
+                throws IOException
+        {
+            return target;
+        }
+
+        abstract void render(Sink sink);
+    }
+
+    /**
+     * Renders sections, in order. With more than one render thread, the sections are rendered concurrently into
+     * recordings, which are replayed to their sinks in order. Only a few sections ahead of the one being written
+     * are rendered at a time, to bound the memory held by the recordings.
+     */
+    private void renderSections(List<Section> sections)
+            throws IOException
+    {
+        if (renderThreads <= 1){
+            for (Section section : sections){
+                section.render(section.open());
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(renderThreads);
+        try{
+            LinkedList<Future<SinkRecording>> pending = new LinkedList<Future<SinkRecording>>();
+            LinkedList<Section> pendingSections = new LinkedList<Section>();
+            for (final Section section : sections){
+                pending.add(executor.submit(new Callable<SinkRecording>()
+                {
+                    public SinkRecording call()
+                    {
+                        SinkRecording recording = new SinkRecording();
+                        section.render(recording.getSink());
+                        return recording;
+                    }
+                }));
+                pendingSections.add(section);
+                if (pending.size() >= renderThreads * 2){
+                    pending.removeFirst().get().replay(pendingSections.removeFirst().open());
+                }
+            }
+            while (!pending.isEmpty()){
+                pending.removeFirst().get().replay(pendingSections.removeFirst().open());
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Rendering the report was interrupted", e);
+        }catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException){
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalStateException("Error rendering the report", e.getCause());
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    private static String getPackagePage(String packageName)
+    {
+        return "package-" + packageName + ".html";
+    }
+
+    private static String getPatternPage(String type)
+    {
+        return "pattern-" + type + ".html";
+    }
+
+    private void doHeader(Sink sink, String title)
+    {
+        sink.head();
+        sink.title();
+        sink.text(title);
+        sink.title_();
+        sink.head_();
+
+        sink.body();
+    }
+
+    private void doFooter(Sink sink)
+    {
+        sink.body_();
+
+        sink.flush();
+        sink.close();
+    }
+
+    private void doIntroduction(Sink sink)
+    {
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("FindBugs Report");
+        sink.sectionTitle1_();
+
+        sink.paragraph();
+        sink.text("This is a report of possible bugs found by the ");
+        sink.link("http://findbugs.sourceforge.net/");
+        sink.text("FindBugs");
+        sink.link_();
+        sink.text(" program, which uses static analysis to find bugs in Java code. The report was generated with the following parameters:");
+        sink.paragraph_();
+
+        sink.text("FindBugs version: " + model.getVersion());
+        sink.lineBreak();
+        sink.text("Effort: " + effort.toLowerCase());
+        sink.lineBreak();
+        sink.text("Bug Priority Threshold: " + threshold.toLowerCase());
+
+        sink.section1_();
+    }
+
+    /**
+     * Generates a section listing the detectors which were skipped, if any.
+     */
+    private void doSkippedDetectors(Sink sink)
+    {
+        if (skippedDetectors.isEmpty()){
+            return;
+        }
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Skipped Detectors");
+        sink.anchor("report.SkippedDetectors");
+        sink.sectionTitle1_();
+        sink.paragraph();
+        sink.text("These detectors were not run, because they found no bugs in recent builds and took long to run. "
+                + "Bugs they would find are not on this report.");
+        sink.paragraph_();
+        sink.list();
+        for (String detector : skippedDetectors){
+            sink.listItem();
+            sink.text(detector);
+            sink.listItem_();
+        }
+        sink.list_();
+        sink.section1_();
+    }
+
+    /**
+     * Generates a section with the number of classes analyzed at each effort, and the classes which were analyzed at
+     * a lower effort than configured, or not at all, if the analysis had a time budget.
+     */
+    private void doCoverage(Sink sink)
+    {
+        Map<String, String> coverage = model.getCoverage();
+        if (coverage == null){
+            return;
+        }
+        int requestedEffort = BudgetedAnalyzer.getEffortIndex(effort.toLowerCase());
+        Map<String, Integer> classCounts = new TreeMap<String, Integer>();
+        Map<String, String> partial = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : coverage.entrySet()){
+            Integer count = classCounts.get(entry.getValue());
+            classCounts.put(entry.getValue(), count == null ? 1 : count + 1);
+            if (!BudgetedAnalyzer.isFullyAnalyzed(entry.getValue(), requestedEffort)){
+                partial.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Coverage");
+        sink.anchor("report.Coverage");
+        sink.sectionTitle1_();
+        sink.paragraph();
+        if (partial.isEmpty()){
+            sink.text("The analysis had a time budget, within which all classes were analyzed at the configured "
+                    + "effort.");
+        }else{
+            sink.text("The analysis had a time budget, within which not all classes could be analyzed at the "
+                    + "configured effort. Bugs in the classes listed below may be missing from this report.");
+        }
+        sink.paragraph_();
+        sink.table();
+        sink.tableRow();
+        for (String header : new String[]{"Effort", "Classes"}){
+            sink.tableHeaderCell();
+            sink.text(header);
+            sink.tableHeaderCell_();
+        }
+        sink.tableRow_();
+        List<String> names = new ArrayList<String>();
+        for (int i = BudgetedAnalyzer.EFFORTS.length - 1; i >= 0; i--){
+            names.add(BudgetedAnalyzer.EFFORTS[i]);
+        }
+        names.add(BudgetedAnalyzer.PARTLY_ANALYZED);
+        names.add(BudgetedAnalyzer.NOT_ANALYZED);
+        for (String name : names){
+            Integer count = classCounts.get(name);
+            if (count == null){
+                continue;
+            }
+            sink.tableRow();
+            sink.tableCell();
+            sink.text(getCoverageText(name));
+            sink.tableCell_();
+            doTrendCell(sink, count);
+            sink.tableRow_();
+        }
+        sink.table_();
+
+        if (!partial.isEmpty()){
+            sink.table();
+            sink.tableRow();
+            for (String header : new String[]{"Class", "Effort"}){
+                sink.tableHeaderCell();
+                sink.text(header);
+                sink.tableHeaderCell_();
+            }
+            sink.tableRow_();
+            for (Map.Entry<String, String> entry : partial.entrySet()){
+                sink.tableRow();
+                sink.tableCell();
+                sink.text(entry.getKey());
+                sink.tableCell_();
+                sink.tableCell();
+                sink.text(getCoverageText(entry.getValue()));
+                sink.tableCell_();
+                sink.tableRow_();
+            }
+            sink.table_();
+        }
+        sink.section1_();
+    }
+
+    private static String getCoverageText(String classEffort)
+    {
+        if (classEffort.equals(BudgetedAnalyzer.NOT_ANALYZED)){
+            return "Not analyzed";
+        }else if (classEffort.equals(BudgetedAnalyzer.PARTLY_ANALYZED)){
+            return "Partly analyzed";
+        }else{
+            return classEffort;
+        }
+    }
+
+    /**
+     * Generates a section with the number of classes and bugs of each module, if this is an aggregate report.
+     */
+    private void doModules(Sink sink)
+    {
+        if (classesByModule.isEmpty()){
+            return;
+        }
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Modules");
+        sink.anchor("report.Modules");
+        sink.sectionTitle1_();
+        sink.table();
+        sink.tableRow();
+        for (String header : new String[]{"Module", "Classes", "Bugs", "High", "Medium", "Low"}){
+            sink.tableHeaderCell();
+            sink.text(header);
+            sink.tableHeaderCell_();
+        }
+        sink.tableRow_();
+        for (Map.Entry<String, Set<String>> module : classesByModule.entrySet()){
+            int[] bugCounts = new int[4];
+            for (String className : module.getValue()){
+                model.addBugCounts(className, bugCounts);
+            }
+            sink.tableRow();
+            sink.tableCell();
+            sink.text(module.getKey());
+            sink.tableCell_();
+            doTrendCell(sink, module.getValue().size());
+            for (int count : bugCounts){
+                doTrendCell(sink, count);
+            }
+            sink.tableRow_();
+        }
+        sink.table_();
+        sink.section1_();
+    }
+
+    /**
+     * Generates the trend section: the bug counts of each build in the history, and the bug counts per category and
+     * per package of each build.
+     */
+    private void doTrend(Sink sink)
+    {
+        if (history.isEmpty()){
+            return;
+        }
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Trend");
+        sink.anchor("report.Trend");
+        sink.sectionTitle1_();
+        sink.paragraph();
+        sink.text("The bugs found by the last " + history.size() + " build(s), most recent first."
+                + (model.getBaselineBugCount() > 0 ? " The counts include the bugs in the baseline." : ""));
+        sink.paragraph_();
+
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        sink.table();
+        sink.tableRow();
+        for (String header : new String[]{"Build", "Bugs", "High", "Medium", "Low", "New", "Fixed"}){
+            sink.tableHeaderCell();
+            sink.text(header);
+            sink.tableHeaderCell_();
+        }
+        sink.tableRow_();
+        for (BugHistory.Build build : history){
+            sink.tableRow();
+            sink.tableCell();
+            sink.text(dateFormat.format(new Date(build.getTimestamp())));
+            sink.tableCell_();
+            doTrendCell(sink, build.getBugCount());
+            doTrendCell(sink, build.getBugCount(1));
+            doTrendCell(sink, build.getBugCount(2));
+            doTrendCell(sink, build.getBugCount(3));
+            doTrendCell(sink, build.getNewBugCount());
+            doTrendCell(sink, build.getFixedBugCount());
+            sink.tableRow_();
+        }
+        sink.table_();
+
+        SortedSet<String> categories = new TreeSet<String>();
+        SortedSet<String> packageNames = new TreeSet<String>();
+        for (BugHistory.Build build : history){
+            categories.addAll(build.getBugsByCategory().keySet());
+            packageNames.addAll(build.getBugsByPackage().keySet());
+        }
+        if (!categories.isEmpty()){
+            sink.section2();
+            sink.sectionTitle2();
+            sink.text("Trend By Category");
+            sink.sectionTitle2_();
+            sink.table();
+            doTrendHeader(sink, "Category", dateFormat);
+            for (String category : categories){
+                sink.tableRow();
+                sink.tableCell();
+                sink.text(model.getCategory(category).getDescription());
+                sink.tableCell_();
+                for (BugHistory.Build build : history){
+                    Integer count = build.getBugsByCategory().get(category);
+                    doTrendCell(sink, count == null ? 0 : count);
+                }
+                sink.tableRow_();
+            }
+            sink.table_();
+            sink.section2_();
+        }
+        if (!packageNames.isEmpty()){
+            sink.section2();
+            sink.sectionTitle2();
+            sink.text("Trend By Package");
+            sink.sectionTitle2_();
+            sink.table();
+            doTrendHeader(sink, "Package", dateFormat);
+            for (String packageName : packageNames){
+                sink.tableRow();
+                sink.tableCell();
+                sink.text(packageName);
+                sink.tableCell_();
+                for (BugHistory.Build build : history){
+                    Integer count = build.getBugsByPackage().get(packageName);
+                    doTrendCell(sink, count == null ? 0 : count);
+                }
+                sink.tableRow_();
+            }
+            sink.table_();
+            sink.section2_();
+        }
+        sink.section1_();
+    }
+
+    private void doTrendHeader(Sink sink, String title, DateFormat dateFormat)
+    {
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text(title);
+        sink.tableHeaderCell_();
+        for (BugHistory.Build build : history){
+            sink.tableHeaderCell();
+            sink.text(dateFormat.format(new Date(build.getTimestamp())));
+            sink.tableHeaderCell_();
+        }
+        sink.tableRow_();
+    }
+
+    private static void doTrendCell(Sink sink, int count)
+    {
+        sink.tableCell();
+        sink.text(Integer.toString(count));
+        sink.tableCell_();
+    }
+
+    /**
+     * Generates a note with the number of bugs left out because they are in the baseline, if any.
+     */
+    private void doBaselineNote(Sink sink)
+    {
+        int baselineBugs = model.getBaselineBugCount();
+        if (baselineBugs == 0){
+            return;
+        }
+        sink.paragraph();
+        sink.bold();
+        sink.text(Integer.toString(baselineBugs));
+        sink.bold_();
+        sink.text(baselineBugs > 1 ? " known bugs from the baseline are" : " known bug from the baseline is");
+        sink.text(" not shown.");
+        sink.paragraph_();
+    }
+
+    /**
+     * Generated the summary part of the report, returning an indication of whether or not bugs were found.
+     * @param sink
+     * @return <code>true</code> if bugs were found, or <code>false</code> if no bugs were reported.
+     */
+    boolean doSummary(Sink sink)
+    {
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Summary");
+        sink.sectionTitle1_();
+        try{
+
+            int totalBugs = model.getBugCount();
+            if (totalBugs == 0){
+                sink.paragraph();
+                sink.text(model.getBaselineBugCount() > 0 ? "No new bugs were found!" : "No bugs were found!");
+                sink.paragraph_();
+                doBaselineNote(sink);
+                return false;
+            }
+
+            int p1 = model.getBugCount(1);
+            int p2 = model.getBugCount(2);
+            int p3 = model.getBugCount(3);
+            boolean hasP1 = p1 > 0;
+            boolean hasP2 = p2 > 0;
+            boolean hasP3 = p3 > 0;
+            sink.paragraph();
+            sink.bold();
+            sink.text(Integer.toString(totalBugs));
+            sink.bold_();
+            sink.text(" bug");
+            if (totalBugs > 1){
+                sink.text("s");
+            }
+            if (hasP1){
+                sink.text(", consisting of ");
+                sink.bold();
+                sink.text(Integer.toString(p1));
+                sink.bold_();
+                sink.text(" ");
+                sink.italic();
+                sink.text("High");
+                sink.italic_();
+                sink.text(" priority bug");
+                if (p1 > 1){
+                    sink.text("s");
+                }
+            }
+            if (hasP2){
+                if (!hasP1){
+                    sink.text(", consisting of ");
+                }else{
+                    if (hasP3){
+                        sink.text(", ");
+                    }else{
+                        sink.text(" and ");
+                    }
+                }
+                sink.bold();
+                sink.text(Integer.toString(p2));
+                sink.bold_();
+                sink.text(" ");
+                sink.italic();
+                sink.text("Medium");
+                sink.italic_();
+                sink.text(" priority bug");
+                if (p2 > 1){
+                    sink.text("s");
+                }
+            }
+            if (hasP3){
+                if (hasP1 || hasP2){
+                    sink.text(" and ");
+                }else{
+                    sink.text(", consisting of ");
+                }
+                sink.bold();
+                sink.text(Integer.toString(p3));
+                sink.bold_();
+                sink.text(" ");
+                sink.italic();
+                sink.text("Low");
+                sink.italic_();
+                sink.text(" priority bug");
+                if (p3 > 1){
+                    sink.text("s");
+                }
+            }
+            sink.text(" found in ");
+            sink.bold();
+            sink.text(Integer.toString(model.getSize()));
+            sink.bold_();
+            sink.text(" lines of code, in ");
+            sink.bold();
+            sink.text(Integer.toString(model.getClassCount()));
+            sink.bold_();
+            sink.text(" classes, in ");
+            sink.bold();
+            sink.text(Integer.toString(model.getPackageCount()));
+            sink.bold_();
+            sink.text(" package(s).");
+            sink.paragraph_();
+            doBaselineNote(sink);
+
+            sink.paragraph();
+            sink.text("Here are some entry points to the report:");
+            sink.paragraph_();
+
+            sink.list();
+            sink.listItem();
+            sink.link("#report.BugsByClass");
+            sink.text("Bugs by class");
+            sink.link_();
+            sink.listItem_();
+            sink.listItem();
+            sink.link("#report.BugsByCategory");
+            sink.text("Bugs by category");
+            sink.link_();
+            sink.listItem_();
+            sink.list_();
+        }finally{
+            sink.section1_();
+        }
+        return true;
+    }
+
+    void doBugsByClassReport(Sink sink)
+            throws IOException
+    {
+        doPackageTable(sink);
+        List<Section> sections = new ArrayList<Section>();
+        for (final ReportPackage reportPackage : model.getPackagesWithBugs()){
+            sections.add(new Section(sink)
+            {
+                @Override
+                void render(Sink sink)
+                {
+                    doPackage(sink, reportPackage);
+                }
+            });
+        }
+        renderSections(sections);
+        sink.section1_();
+    }
+
+    /**
+     * Starts the bugs by class section, with the table of packages. In multi page mode the section is ended too.
+     */
+    private void doPackageTable(Sink sink)
+    {
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Bugs By Class");
+        sink.anchor("report.BugsByClass");
+        sink.sectionTitle1_();
+        sink.paragraph();
+        sink.text("This is a list of bugs, by class.");
+        sink.paragraph_();
+
+        sink.table();
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text("Package");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Classes");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Lines");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Bugs");
+        sink.tableHeaderCell_();
+        sink.tableRow_();
+
+        for (ReportPackage reportPackage : model.getPackagesWithBugs()){
+            String packageName = reportPackage.getName();
+            sink.tableRow();
+            sink.tableCell();
+            if (multiPage){
+                sink.link(PAGE_DIRECTORY + "/" + getPackagePage(packageName));
+            }else{
+                sink.link("#package." + packageName);
+            }
+            sink.text(packageName);
+            sink.link_();
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(reportPackage.getClassCount()));
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(reportPackage.getSize()));
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(reportPackage.getBugCount()));
+            sink.tableCell_();
+            sink.tableRow_();
+        }
+        sink.table_();
+
+        if (multiPage){
+            sink.section1_();
+        }
+    }
+
+    private void doPackage(Sink sink, ReportPackage reportPackage)
+    {
+        String packageName = reportPackage.getName();
+        sink.section2();
+        sink.sectionTitle2();
+        sink.anchor("package." + packageName);
+        sink.text("Package: " + packageName);
+        sink.sectionTitle2_();
+
+        sink.table();
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text("Class Name");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Lines");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Bugs");
+        sink.tableHeaderCell_();
+        sink.tableRow_();
+
+        List<ReportClass> classes = new LinkedList<ReportClass>();
+        for (ReportClass reportClass : reportPackage.getClasses()){
+            if (reportClass.getBugCount() > 0){
+                classes.add(reportClass);
+            }
+        }
+        for (ReportClass reportClass : classes){
+            String className = reportClass.getName();
+            sink.tableRow();
+            sink.tableCell();
+            sink.link("#class." + className);
+            sink.text(className);
+            sink.link_();
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(reportClass.getSize()));
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(reportClass.getBugCount()));
+            sink.tableCell_();
+            sink.tableRow_();
+        }
+        sink.table_();
+
+        for (ReportClass reportClass : classes){
+            String className = reportClass.getName();
+            sink.section3();
+            sink.sectionTitle3();
+            sink.rawText("<a name=\"class." + className + "\"/>");
+            sink.text("Class: " + className);
+            sink.sectionTitle3_();
+
+            sink.table();
+            sink.tableRow();
+            sink.tableHeaderCell();
+            sink.text("Category");
+            sink.tableHeaderCell_();
+            sink.tableHeaderCell();
+            sink.text("Lines");
+            sink.tableHeaderCell_();
+            sink.tableHeaderCell();
+            sink.text("Bug");
+            sink.tableHeaderCell_();
+            sink.tableHeaderCell();
+            sink.text("Details");
+            sink.tableHeaderCell_();
+            sink.tableHeaderCell();
+            sink.text("Priority");
+            sink.tableHeaderCell_();
+            sink.tableRow_();
+
+            for (ReportBug bug : model.getBugsByClass(className)){
+                sink.tableRow();
+                sink.tableCell();
+                sink.text(model.getCategory(bug.getCategory()).getDescription());
+                sink.tableCell_();
+                sink.tableCell();
+                doLines(sink, bug);
+                sink.tableCell_();
+                sink.tableCell();
+                sink.text(bug.getMessage());
+                doSnippet(sink, bug);
+                sink.tableCell_();
+                sink.tableCell();
+                if (multiPage){
+                    sink.link(getPatternPage(bug.getType()));
+                }else{
+                    sink.link("#type." + bug.getType());
+                }
+                sink.text("Details");
+                sink.link_();
+                sink.tableCell_();
+                sink.tableCell();
+                sink.text(getPriorityName(bug.getPriority()));
+                sink.tableCell_();
+                sink.tableRow_();
+            }
+            sink.table_();
+
+            sink.section3_();
+        }
+
+        sink.section2_();
+    }
+
+    static String getPriorityName(int priority)
+    {
+        if (priority == 1){
+            return "High";
+        }else if (priority == 2){
+            return "Medium";
+        }else{
+            return "Low";
+        }
+    }
+
+    private void doSnippet(Sink sink, ReportBug bug)
+    {
+        if (sources == null){
+            return;
+        }
+        String snippet = sources.getSnippet(bug.getClassName(), bug.getStartLine(), bug.getEndLine());
+        if (snippet != null){
+            sink.verbatim(false);
+            sink.text(snippet);
+            sink.verbatim_();
+        }
+    }
+
+    private void doLines(Sink sink, ReportBug bug)
+    {
+        String start = bug.getStartLine() < 0 ? "" : Integer.toString(bug.getStartLine());
+        String end = bug.getEndLine() < 0 ? "" : Integer.toString(bug.getEndLine());
+        if (xrefPath != null){
+            sink.rawText(getXrefLink(bug.getClassName(), start, end));
+        }else{
+            if (start.equals(end)){
+                sink.text(start);
+            }else{
+                sink.text(start + "-" + end);
+            }
+        }
+    }
+
+    private String getXrefLink(String className, String lineStart, String lineEnd)
+    {
+        className = className.replace(".", "/");
+        int idx = className.indexOf("$");
+        if (idx >= 0){
+            className = className.substring(0, idx);
+        }
+        String link = "<a href=\"" + getXrefPath() + className + ".html";
+        link += "#" + lineStart;
+        link += "\">" + lineStart;
+        if (!lineStart.equals(lineEnd)){
+            link += "-" + lineEnd;
+        }
+        link += "</a>";
+        return link;
+    }
+
+    /**
+     * @return the cross referenced source location, relative to the page being rendered. Bugs are only rendered on
+     *         the package and bug pattern pages in multi page mode, which are one directory down.
+     */
+    private String getXrefPath()
+    {
+        if (multiPage && !xrefPath.startsWith("/") && xrefPath.indexOf("://") < 0){
+            return "../" + xrefPath;
+        }
+        return xrefPath;
+    }
+
+    void doBugsByCategoryReport(Sink sink)
+            throws IOException
+    {
+        doCategoryTable(sink);
+        List<Section> sections = new ArrayList<Section>();
+        for (final ReportCategory category : model.getCategoriesWithBugs()){
+            sections.add(new Section(sink)
+            {
+                @Override
+                void render(Sink sink)
+                {
+                    doCategory(sink, category);
+                }
+            });
+        }
+        renderSections(sections);
+        sink.section1_();
+    }
+
+    private void doCategory(Sink sink, ReportCategory category)
+    {
+        String categoryCode = category.getCategory();
+
+        sink.section2();
+        sink.sectionTitle2();
+        sink.text(category.getDescription());
+        sink.anchor("category." + categoryCode);
+        sink.sectionTitle2_();
+
+        sink.table();
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text("Bug Pattern");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Bugs");
+        sink.tableHeaderCell_();
+        sink.tableRow_();
+        List<ReportBugPattern> patterns = model.getPatternsWithBugs(categoryCode);
+        for (ReportBugPattern pattern : patterns){
+            String typeCode = pattern.getType();
+            sink.tableRow();
+            sink.tableCell();
+            sink.link("#type." + typeCode);
+            sink.text(pattern.getShortDescription());
+            sink.link_();
+            sink.tableCell_();
+            sink.tableCell();
+            sink.text(Integer.toString(model.getBugsByType(typeCode).size()));
+            sink.tableCell_();
+            sink.tableRow_();
+        }
+        sink.table_();
+
+        for (ReportBugPattern pattern : patterns){
+            doPattern(sink, pattern);
+        }
+
+        sink.section2_();
+    }
+
+    /**
+     * Starts the bugs by category section, with the table of categories and bug patterns. In multi page mode the
+     * section is ended too.
+     */
+    private void doCategoryTable(Sink sink)
+    {
+        sink.section1();
+        sink.sectionTitle1();
+        sink.text("Bugs By Category");
+        sink.anchor("report.BugsByCategory");
+        sink.sectionTitle1_();
+        sink.paragraph();
+        sink.text("This is a list of bugs, by category.");
+        sink.paragraph_();
+
+        sink.table();
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text("Category / Bug Pattern");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Bugs");
+        sink.tableHeaderCell_();
+        sink.tableRow_();
+        for (ReportCategory category : model.getCategoriesWithBugs()){
+            String categoryCode = category.getCategory();
+            sink.tableRow();
+            sink.tableCell();
+            sink.bold();
+            if (multiPage){
+                sink.text(category.getDescription());
+            }else{
+                sink.link("#category." + categoryCode);
+                sink.text(category.getDescription());
+                sink.link_();
+            }
+            sink.bold_();
+            sink.tableCell_();
+            sink.tableCell();
+            sink.bold();
+            sink.text(Integer.toString(model.getBugsByCategory(categoryCode).size()));
+            sink.bold_();
+            sink.tableCell_();
+            sink.tableRow_();
+            for (ReportBugPattern pattern : model.getPatternsWithBugs(categoryCode)){
+                String typeCode = pattern.getType();
+                sink.tableRow();
+                sink.tableCell();
+                sink.rawText("<ul style=\"margin-top: 0px; margin-bottom: 0px; padding-top: 0px; padding-bottom: 0px;\"><li>");
+                if (multiPage){
+                    sink.link(PAGE_DIRECTORY + "/" + getPatternPage(typeCode));
+                }else{
+                    sink.link("#type." + typeCode);
+                }
+                sink.text(pattern.getShortDescription());
+                sink.link_();
+                sink.rawText("</li></ul>");
+                sink.listItem_();
+                sink.list_();
+                sink.tableCell_();
+                sink.tableCell();
+                sink.text(Integer.toString(model.getBugsByType(typeCode).size()));
+                sink.tableCell_();
+                sink.tableRow_();
+            }
+        }
+        sink.table_();
+
+        if (multiPage){
+            sink.section1_();
+        }
+    }
+
+    private void doPattern(Sink sink, ReportBugPattern pattern)
+    {
+        String typeCode = pattern.getType();
+        sink.section3();
+        sink.sectionTitle3();
+        sink.text(pattern.getShortDescription());
+        sink.anchor("type." + typeCode);
+        sink.sectionTitle3_();
+        sink.rawText(pattern.getDetails());
+
+        sink.table();
+        sink.tableRow();
+        sink.tableHeaderCell();
+        sink.text("Class");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Lines");
+        sink.tableHeaderCell_();
+        sink.tableHeaderCell();
+        sink.text("Details");
+        sink.tableHeaderCell_();
+        sink.tableRow_();
+
+        /*
+         * The bugs are grouped by class by their ids, so only the bugs of the row being written are read.
+         */
+        for (Map.Entry<String, IntList> entry : model.getBugIdsByClass(typeCode).entrySet()){
+            String className = entry.getKey();
+            IntList ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i++){
+                ReportBug bug = model.getBug(ids.get(i));
+                sink.tableRow();
+                sink.tableCell();
+                if (multiPage){
+                    sink.link(getPackagePage(ReportModel.getPackageName(className)) + "#class." + className);
+                }else{
+                    sink.link("#class." + className);
+                }
+                sink.text(className);
+                sink.link_();
+                sink.tableCell_();
+                sink.tableCell();
+                doLines(sink, bug);
+                sink.tableCell_();
+                sink.tableCell();
+                sink.text(bug.getMessage());
+                sink.tableCell_();
+                sink.tableRow_();
+            }
+        }
+
+        sink.table_();
+        sink.section3_();
+    }
+}
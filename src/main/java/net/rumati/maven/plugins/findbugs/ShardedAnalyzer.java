@@ -0,0 +1,197 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Splits the classes to analyze into shards of similar size, analyzes the shards concurrently and merges the
+ * results. Classes are kept together by package, and each shard sees the rest of the analyzed classes on its
+ * auxiliary class path. If the deadline of the request stops some shards, the merged results of all shards are thrown
+ * in a {@link TimeBudgetExceededException}.
+ * <p>
+ * The shards run concurrently, so the time from the start of the first shard to the end of the last is added to the
+ * <tt>findbugs</tt> phase of the metrics. The analyzer of the shards should add its own times under other names.
+ */
+class ShardedAnalyzer
+        implements Analyzer
+{
+    private final Analyzer analyzer;
+    private final int shards;
+    private final AnalysisMetrics metrics;
+    private final Log log;
+
+    /**
+     * @param analyzer the analyzer for each shard. It is called concurrently, so it should run FindBugs in a forked
+     *        JVM.
+     * @param shards the maximum number of shards to analyze concurrently.
+     * @param metrics the metrics to which to add the time of analyzing the shards and of merging their results.
+     * @param log the log to which to report the shards.
+     */
+    ShardedAnalyzer(Analyzer analyzer, int shards, AnalysisMetrics metrics, Log log)
+    {
+        this.analyzer = analyzer;
+        this.shards = shards;
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    public ReportModel analyze(AnalysisRequest request)
+            throws AnalysisException
+    {
+        List<List<File>> partitions = partition(request.getTargets(), shards);
+        if (partitions.size() <= 1){
+            long start = System.nanoTime();
+            try{
+                return analyzer.analyze(request);
+            }finally{
+                metrics.addTime("findbugs", start);
+            }
+        }
+        log.info("Analyzing classes in " + partitions.size() + " shards");
+
+        List<AnalysisRequest> shardRequests = new ArrayList<AnalysisRequest>();
+        for (List<File> partition : partitions){
+            AnalysisRequest shardRequest = request.copy();
+            shardRequest.getTargets().clear();
+            shardRequest.getTargets().addAll(partition);
+            int idx = 0;
+            for (File target : request.getTargets()){
+                if (target.isDirectory()){
+                    shardRequest.getAuxClasspath().add(idx++, target);
+                }
+            }
+            shardRequests.add(shardRequest);
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(partitions.size());
+        try{
+            List<Future<ReportModel>> futures = new ArrayList<Future<ReportModel>>();
+            for (final AnalysisRequest shardRequest : shardRequests){
+                futures.add(executor.submit(new Callable<ReportModel>()
+                {
+                    public ReportModel call()
+                            throws AnalysisException
+                    {
+                        return analyzer.analyze(shardRequest);
+                    }
+                }));
+            }
+            List<ReportModel> results = new ArrayList<ReportModel>();
+            try{
+                boolean outOfTime = false;
+                for (Future<ReportModel> future : futures){
+                    try{
+                        results.add(future.get());
+                    }catch (ExecutionException e){
+                        if (!(e.getCause() instanceof TimeBudgetExceededException)){
+                            throw e;
+                        }
+                        results.add(((TimeBudgetExceededException)e.getCause()).getModel());
+                        outOfTime = true;
+                    }
+                }
+                metrics.addTime("findbugs", start);
+                start = System.nanoTime();
+                ReportModel model = ReportModel.merge(results);
+                metrics.addTime("merge", start);
+                if (outOfTime){
+                    throw new TimeBudgetExceededException(model);
+                }
+                return model;
+            }finally{
+                for (ReportModel result : results){
+                    result.close();
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AnalysisException("FindBugs analysis was interrupted", e);
+        }catch (ExecutionException e){
+            if (e.getCause() instanceof AnalysisException){
+                throw (AnalysisException)e.getCause();
+            }
+            throw new AnalysisException("Error running FindBugs", e.getCause());
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Partitions the analysis targets into at most <code>count</code> lists of files of similar total size. Class
+     * files in the same directory, that is, in the same package, are kept in the same list.
+     */
+    static List<List<File>> partition(List<File> targets, int count)
+    {
+        Map<File, Unit> units = new HashMap<File, Unit>();
+        for (File target : targets){
+            List<File> files;
+            if (target.isDirectory()){
+                files = ClassFileInfo.findClassFiles(target);
+            }else{
+                files = Collections.singletonList(target);
+            }
+            for (File file : files){
+                File key = file.getName().endsWith(".class") ? file.getParentFile() : file;
+                Unit unit = units.get(key);
+                if (unit == null){
+                    unit = new Unit();
+                    units.put(key, unit);
+                }
+                unit.files.add(file);
+                unit.size += file.length();
+            }
+        }
+
+        List<Unit> sortedUnits = new ArrayList<Unit>(units.values());
+        Collections.sort(sortedUnits, new Comparator<Unit>()
+        {
+            public int compare(Unit o1, Unit o2)
+            {
+                return o1.size > o2.size ? -1 : (o1.size < o2.size ? 1 : 0);
+            }
+        });
+
+        /*
+         * Largest first, each to the smallest partition, which keeps the partitions close in size.
+         */
+        List<Unit> partitions = new ArrayList<Unit>();
+        for (Unit unit : sortedUnits){
+            if (partitions.size() < count){
+                partitions.add(unit);
+                continue;
+            }
+            Unit smallest = partitions.get(0);
+            for (Unit partition : partitions){
+                if (partition.size < smallest.size){
+                    smallest = partition;
+                }
+            }
+            smallest.files.addAll(unit.files);
+            smallest.size += unit.size;
+        }
+
+        List<List<File>> result = new ArrayList<List<File>>();
+        for (Unit partition : partitions){
+            result.add(partition.files);
+        }
+        return result;
+    }
+
+    private static class Unit
+    {
+        private final List<File> files = new ArrayList<File>();
+        private long size;
+    }
+}
@@ -0,0 +1,68 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.doxia.sink.Sink;
+
+/**
+ * Records the calls made to a sink, so that part of a report can be rendered on another thread and written to the
+ * real sink later. Replaying the calls produces exactly the output the calls would have produced on the real sink.
+ */
+class SinkRecording
+        implements InvocationHandler
+{
+    private final List<Method> methods = new ArrayList<Method>();
+    private final List<Object[]> arguments = new ArrayList<Object[]>();
+    private final Sink sink;
+
+    SinkRecording()
+    {
+        sink = (Sink)Proxy.newProxyInstance(Sink.class.getClassLoader(), new Class<?>[]{Sink.class}, this);
+    }
+
+    /**
+     * @return the sink which records the calls made to it.
+     */
+    public Sink getSink()
+    {
+        return sink;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        if (method.getDeclaringClass() == Object.class){
+            if (method.getName().equals("equals")){
+                return proxy == args[0];
+            }else if (method.getName().equals("hashCode")){
+                return System.identityHashCode(proxy);
+            }
+            return "SinkRecording";
+        }
+        methods.add(method);
+        arguments.add(args);
+        return null;
+    }
+
+    /**
+     * Makes the recorded calls on a sink, in the order in which they were recorded.
+     */
+    public void replay(Sink target)
+    {
+        for (int i = 0; i < methods.size(); i++){
+            try{
+                methods.get(i).invoke(target, arguments.get(i));
+            }catch (IllegalAccessException e){
+                throw new IllegalStateException("Could not replay " + methods.get(i), e);
+            }catch (InvocationTargetException e){
+                if (e.getCause() instanceof RuntimeException){
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new IllegalStateException("Could not replay " + methods.get(i), e.getCause());
+            }
+        }
+    }
+}
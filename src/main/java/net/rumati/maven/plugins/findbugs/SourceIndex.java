@@ -0,0 +1,227 @@
+package net.rumati.maven.plugins.findbugs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the source lines of bugs, for the source snippets of the report. Each source file is read with one channel
+ * read and decoded once, and the offsets of its lines are indexed, so the snippets of all bugs in a file cost one
+ * read of the file. The most recently used files are kept; the report renders the bugs of a class, and of the classes
+ * of a package, together, so a file is rarely read twice.
+ * <p>
+ * The source file of a class is looked up by the name of its outermost class in the source directories, and
+ * otherwise by the source file attribute of its class file, which finds classes which are not declared in a source
+ * file of their own.
+ */
+class SourceIndex
+{
+    /**
+     * The number of bug lines beyond which only the first bug line is shown with its context.
+     */
+    private static final int MAX_BUG_LINES = 10;
+    private static final int CACHED_FILES = 64;
+    private final List<String> sourceDirs;
+    private final List<File> classDirectories;
+    private final Charset charset;
+    private final int contextLines;
+    private final Map<String, File> sourceFiles = new HashMap<String, File>();
+    private final Map<File, IndexedFile> files = new LinkedHashMap<File, IndexedFile>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, IndexedFile> eldest)
+        {
+            return size() > CACHED_FILES;
+        }
+    };
+    private int filesRead;
+
+    /**
+     * @param sourceDirs the source directories.
+     * @param classDirectories the directories with the classes compiled from the source directories.
+     * @param charset the encoding of the source files.
+     * @param contextLines the number of lines to show before and after the lines of a bug.
+     */
+    SourceIndex(List<String> sourceDirs, List<File> classDirectories, Charset charset, int contextLines)
+    {
+        this.sourceDirs = sourceDirs;
+        this.classDirectories = classDirectories;
+        this.charset = charset;
+        this.contextLines = Math.max(contextLines, 0);
+    }
+
+    /**
+     * @return the number of source files read so far.
+     */
+    synchronized int getFilesRead()
+    {
+        return filesRead;
+    }
+
+    /**
+     * Gets the source lines of a bug with the lines around them, each prefixed by its line number. The lines of the
+     * bug are marked with <tt>&gt;</tt>.
+     * @param className the class of the bug.
+     * @param startLine the first line of the bug, or a negative number if it is not known.
+     * @param endLine the last line of the bug.
+     * @return the lines, separated by newlines, or <tt>null</tt> if the lines or the source file are not known.
+     */
+    synchronized String getSnippet(String className, int startLine, int endLine)
+    {
+        if (startLine <= 0){
+            return null;
+        }
+        IndexedFile file = getFile(className);
+        if (file == null || startLine > file.getLineCount()){
+            return null;
+        }
+        if (endLine < startLine || endLine - startLine >= MAX_BUG_LINES){
+            endLine = startLine;
+        }
+        int first = Math.max(startLine - contextLines, 1);
+        int last = Math.min(endLine + contextLines, file.getLineCount());
+        int width = Integer.toString(last).length();
+        StringBuilder sb = new StringBuilder();
+        for (int line = first; line <= last; line++){
+            if (sb.length() > 0){
+                sb.append('\n');
+            }
+            sb.append(line >= startLine && line <= endLine ? "> " : "  ");
+            String number = Integer.toString(line);
+            for (int i = number.length(); i < width; i++){
+                sb.append(' ');
+            }
+            sb.append(number).append(": ").append(file.getLine(line));
+        }
+        return sb.toString();
+    }
+
+    private IndexedFile getFile(String className)
+    {
+        File sourceFile;
+        if (sourceFiles.containsKey(className)){
+            sourceFile = sourceFiles.get(className);
+        }else{
+            sourceFile = findSourceFile(className);
+            sourceFiles.put(className, sourceFile);
+        }
+        if (sourceFile == null){
+            return null;
+        }
+        IndexedFile file = files.get(sourceFile);
+        if (file == null){
+            try{
+                file = new IndexedFile(read(sourceFile));
+            }catch (IOException e){
+                return null;
+            }
+            filesRead++;
+            files.put(sourceFile, file);
+        }
+        return file;
+    }
+
+    private File findSourceFile(String className)
+    {
+        int idx = className.indexOf('$');
+        String outerClassName = idx < 0 ? className : className.substring(0, idx);
+        File sourceFile = findInSourceDirs(outerClassName.replace('.', '/') + ".java");
+        if (sourceFile != null){
+            return sourceFile;
+        }
+        String classPath = className.replace('.', '/') + ".class";
+        int packageEnd = className.lastIndexOf('.');
+        String packagePath = packageEnd < 0 ? "" : className.substring(0, packageEnd + 1).replace('.', '/');
+        for (File classDirectory : classDirectories){
+            File classFile = new File(classDirectory, classPath);
+            if (!classFile.isFile()){
+                continue;
+            }
+            try{
+                String sourceFileName = ClassFileInfo.read(classFile).getSourceFile();
+                return sourceFileName == null ? null : findInSourceDirs(packagePath + sourceFileName);
+            }catch (IOException e){
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private File findInSourceDirs(String path)
+    {
+        for (String sourceDir : sourceDirs){
+            File file = new File(sourceDir, path);
+            if (file.isFile()){
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private String read(File file)
+            throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try{
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer) < 0){
+                    break;
+                }
+            }
+            buffer.flip();
+            return charset.decode(buffer).toString();
+        }finally{
+            in.close();
+        }
+    }
+
+    /**
+     * The contents of a source file, with the offsets at which its lines start.
+     */
+    private static class IndexedFile
+    {
+        private final String text;
+        private final IntList lineStarts = new IntList();
+
+        private IndexedFile(String text)
+        {
+            this.text = text;
+            lineStarts.add(0);
+            int idx = text.indexOf('\n');
+            while (idx >= 0){
+                lineStarts.add(idx + 1);
+                idx = text.indexOf('\n', idx + 1);
+            }
+        }
+
+        private int getLineCount()
+        {
+            return lineStarts.size();
+        }
+
+        /**
+         * @param line the number of the line, starting from 1.
+         * @return the line, without its line terminator.
+         */
+        private String getLine(int line)
+        {
+            int start = lineStarts.get(line - 1);
+            int end = line < lineStarts.size() ? lineStarts.get(line) - 1 : text.length();
+            if (end > start && text.charAt(end - 1) == '\r'){
+                end--;
+            }
+            return text.substring(start, end);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package net.rumati.maven.plugins.findbugs;
+
+/**
+ * Thrown when an analysis is stopped because the deadline of the request passed. The results found until then are
+ * kept, so they can be reported; they do not cover all classes.
+ */
+class TimeBudgetExceededException
+        extends AnalysisException
+{
+    private static final long serialVersionUID = 1L;
+    private final ReportModel model;
+
+    TimeBudgetExceededException(ReportModel model)
+    {
+        super("The time budget of the analysis is spent");
+        this.model = model;
+    }
+
+    /**
+     * @return the results found before the analysis was stopped.
+     */
+    ReportModel getModel()
+    {
+        return model;
+    }
+}
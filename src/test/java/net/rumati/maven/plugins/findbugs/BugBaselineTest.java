@@ -0,0 +1,123 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BugBaselineTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEveryFingerprintAndNoOther()
+            throws Exception
+    {
+        Random random = new Random(42);
+        Set<Long> distinct = new HashSet<Long>();
+        distinct.add(Long.MIN_VALUE);
+        distinct.add(Long.MAX_VALUE);
+        distinct.add(0L);
+        while (distinct.size() < 10000){
+            distinct.add(random.nextLong());
+        }
+        long[] fingerprints = new long[distinct.size()];
+        int i = 0;
+        for (Long fingerprint : distinct){
+            fingerprints[i++] = fingerprint;
+        }
+        Arrays.sort(fingerprints);
+
+        File file = new File(folder.getRoot(), "baseline/findbugs-baseline.bin");
+        BugBaseline.write(file, fingerprints);
+        BugBaseline baseline = BugBaseline.load(file);
+        assertEquals(fingerprints.length, baseline.size());
+        for (long fingerprint : fingerprints){
+            assertTrue(baseline.contains(fingerprint));
+            if (!distinct.contains(fingerprint + 1)){
+                assertFalse(baseline.contains(fingerprint + 1));
+            }
+            if (!distinct.contains(fingerprint - 1)){
+                assertFalse(baseline.contains(fingerprint - 1));
+            }
+        }
+    }
+
+    @Test
+    public void containsNothingWhenEmpty()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "empty.bin");
+        BugBaseline.write(file, new long[0]);
+        BugBaseline baseline = BugBaseline.load(file);
+        assertEquals(0, baseline.size());
+        assertFalse(baseline.contains(0));
+        assertFalse(baseline.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void replacesExistingFile()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "baseline.bin");
+        BugBaseline.write(file, new long[]{1, 2, 3});
+        BugBaseline.write(file, new long[]{4});
+        BugBaseline baseline = BugBaseline.load(file);
+        assertEquals(1, baseline.size());
+        assertFalse(baseline.contains(1));
+        assertTrue(baseline.contains(4));
+    }
+
+    @Test
+    public void rejectsTruncatedFile()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "baseline.bin");
+        BugBaseline.write(file, new long[]{1, 2, 3});
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try{
+            out.setLength(file.length() - 4);
+        }finally{
+            out.close();
+        }
+        assertNotLoaded(file, "Truncated");
+    }
+
+    @Test
+    public void rejectsOtherFiles()
+            throws Exception
+    {
+        File file = folder.newFile("other.bin");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try{
+            out.writeLong(0);
+            out.writeLong(0);
+        }finally{
+            out.close();
+        }
+        assertNotLoaded(file, "Not a FindBugs baseline file");
+        assertNotLoaded(folder.newFile("empty.bin"), "Not a FindBugs baseline file");
+    }
+
+    private static void assertNotLoaded(File file, String message)
+    {
+        try{
+            BugBaseline.load(file);
+            fail();
+        }catch (IOException e){
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BugHistoryTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsNothingWithoutFile()
+            throws Exception
+    {
+        BugHistory history = new BugHistory(new File(folder.getRoot(), "history.bin"), "g:a", 10);
+        assertTrue(history.read(10).isEmpty());
+    }
+
+    @Test
+    public void readsCountsAndChangesSincePreviousBuild()
+            throws Exception
+    {
+        BugHistory history = new BugHistory(new File(folder.getRoot(), "history/history.bin"), "g:a", 10);
+        append(history, 1000, 1, 2, 3);
+        append(history, 2000, 2, 3, 4, 5);
+
+        List<BugHistory.Build> builds = history.read(10);
+        assertEquals(2, builds.size());
+        BugHistory.Build last = builds.get(0);
+        assertEquals(2000, last.getTimestamp());
+        assertEquals(4, last.getBugCount());
+        assertEquals(2, last.getNewBugCount());
+        assertEquals(1, last.getFixedBugCount());
+        assertEquals(2, last.getBugCount(1));
+        assertEquals(1, last.getBugCount(2));
+        assertEquals(1, last.getBugCount(3));
+        assertEquals(Integer.valueOf(2), last.getBugsByPackage().get("com.example.even"));
+        assertEquals(Integer.valueOf(2), last.getBugsByPackage().get("com.example.odd"));
+        assertEquals(Integer.valueOf(4), last.getBugsByCategory().get("CORRECTNESS"));
+
+        BugHistory.Build first = builds.get(1);
+        assertEquals(1000, first.getTimestamp());
+        assertEquals(3, first.getBugCount());
+        assertEquals(3, first.getNewBugCount());
+        assertEquals(0, first.getFixedBugCount());
+
+        assertEquals(1, history.read(1).size());
+    }
+
+    @Test
+    public void keepsModulesApart()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "history.bin");
+        BugHistory a = new BugHistory(file, "g:a", 10);
+        BugHistory b = new BugHistory(file, "g:b", 10);
+        append(a, 1000, 1, 2);
+        append(b, 1001, 7);
+        append(a, 2000, 1, 2, 3);
+        append(b, 2001, 8);
+
+        List<BugHistory.Build> builds = a.read(10);
+        assertEquals(2, builds.size());
+        assertEquals(2000, builds.get(0).getTimestamp());
+        assertEquals(1, builds.get(0).getNewBugCount());
+        assertEquals(0, builds.get(0).getFixedBugCount());
+
+        builds = b.read(10);
+        assertEquals(2, builds.size());
+        assertEquals(2001, builds.get(0).getTimestamp());
+        assertEquals(1, builds.get(0).getNewBugCount());
+        assertEquals(1, builds.get(0).getFixedBugCount());
+        assertEquals(1001, builds.get(1).getTimestamp());
+    }
+
+    @Test
+    public void compactsToRetainedBuildsOfEachModule()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "history.bin");
+        BugHistory a = new BugHistory(file, "g:a", 3);
+        BugHistory b = new BugHistory(file, "g:b", 3);
+        append(b, 1, 100);
+        append(b, 2, 100, 101);
+        for (int i = 1; i < 6; i++){
+            append(a, 1000 * i, 1, 2, i + 2);
+        }
+        assertEquals(5, a.read(100).size());
+        long uncompacted = file.length();
+
+        append(a, 6000, 1, 2, 8, 9);
+        assertTrue(file.length() < uncompacted);
+        List<BugHistory.Build> builds = a.read(100);
+        assertEquals(3, builds.size());
+        assertEquals(6000, builds.get(0).getTimestamp());
+        assertEquals(4000, builds.get(2).getTimestamp());
+        assertEquals(2, b.read(100).size());
+
+        append(a, 7000, 1, 2, 8);
+        builds = a.read(100);
+        assertEquals(4, builds.size());
+        assertEquals(0, builds.get(0).getNewBugCount());
+        assertEquals(1, builds.get(0).getFixedBugCount());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void discardsIncompleteRecord()
+            throws Exception
+    {
+        File file = new File(folder.getRoot(), "history.bin");
+        BugHistory history = new BugHistory(file, "g:a", 10);
+        append(history, 1000, 1, 2);
+        append(history, 2000, 1, 2, 3);
+        long complete = file.length();
+
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try{
+            out.seek(complete);
+            out.writeInt(1000);
+            out.writeInt(10);
+            out.writeUTF("g:a");
+        }finally{
+            out.close();
+        }
+        assertEquals(2, history.read(10).size());
+
+        append(history, 3000, 1, 2, 3, 4);
+        List<BugHistory.Build> builds = history.read(10);
+        assertEquals(3, builds.size());
+        assertEquals(3000, builds.get(0).getTimestamp());
+        assertEquals(1, builds.get(0).getNewBugCount());
+    }
+
+    @Test
+    public void rejectsOtherFiles()
+            throws Exception
+    {
+        File file = folder.newFile("history.bin");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try{
+            out.writeLong(0);
+        }finally{
+            out.close();
+        }
+        try{
+            new BugHistory(file, "g:a", 10).read(10);
+            fail();
+        }catch (IOException e){
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not a FindBugs history file"));
+        }
+    }
+
+    /**
+     * Appends a build with a bug for each fingerprint. Even fingerprints are in another package than odd ones, and
+     * the priorities cycle through high, medium and low.
+     */
+    private static void append(BugHistory history, long timestamp, long... fingerprints)
+            throws IOException
+    {
+        ReportModel model = new ReportModel();
+        try{
+            for (int i = 0; i < fingerprints.length; i++){
+                String className = (fingerprints[i] % 2 == 0 ? "com.example.even" : "com.example.odd") + ".Bugs";
+                model.addBug(new ReportBug("NP_NULL", "CORRECTNESS", i % 3 + 1, className, i, i,
+                        "Bug " + fingerprints[i], fingerprints[i]));
+            }
+            history.append(model, timestamp);
+        }finally{
+            model.close();
+        }
+    }
+}
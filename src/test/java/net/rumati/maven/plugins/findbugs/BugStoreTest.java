@@ -0,0 +1,144 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class BugStoreTest
+{
+    /**
+     * Enough bugs for their messages to exceed the spill threshold of 4M characters.
+     */
+    private static final int SPILLED_BUGS = 100;
+    private static final int MESSAGE_LENGTH = 50000;
+
+    @Test
+    public void keepsBugsInMemory()
+            throws Exception
+    {
+        BugStore store = new BugStore();
+        try{
+            int before = countSpillFiles();
+            for (int i = 0; i < 10; i++){
+                assertEquals(i, store.add(createBug(i, 100)));
+            }
+            assertEquals(before, countSpillFiles());
+            assertBugs(store, 10, 100);
+        }finally{
+            store.close();
+        }
+    }
+
+    @Test
+    public void readsSpilledBugsAndDeletesSpillFileOnClose()
+            throws Exception
+    {
+        int before = countSpillFiles();
+        BugStore store = new BugStore();
+        try{
+            for (int i = 0; i < SPILLED_BUGS; i++){
+                store.add(createBug(i, MESSAGE_LENGTH));
+            }
+            assertEquals(before + 1, countSpillFiles());
+            assertBugs(store, SPILLED_BUGS, MESSAGE_LENGTH);
+            assertEquals(SPILLED_BUGS, store.asList().size());
+            assertBug(store.asList().get(42), 42, MESSAGE_LENGTH);
+        }finally{
+            store.close();
+        }
+        assertEquals(before, countSpillFiles());
+        store.close();
+    }
+
+    @Test
+    public void serializesSpilledStore()
+            throws Exception
+    {
+        BugStore store = new BugStore();
+        BugStore copy;
+        try{
+            for (int i = 0; i < SPILLED_BUGS; i++){
+                store.add(createBug(i, MESSAGE_LENGTH));
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(store);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            copy = (BugStore)in.readObject();
+            in.close();
+        }finally{
+            store.close();
+        }
+        try{
+            assertBugs(copy, SPILLED_BUGS, MESSAGE_LENGTH);
+        }finally{
+            copy.close();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsUnknownIds()
+            throws Exception
+    {
+        BugStore store = new BugStore();
+        try{
+            store.add(createBug(0, 10));
+            store.get(1);
+        }finally{
+            store.close();
+        }
+    }
+
+    private static ReportBug createBug(int i, int messageLength)
+    {
+        char[] message = new char[messageLength];
+        Arrays.fill(message, (char)('\u00e0' + i % 16));
+        return new ReportBug("TYPE_" + i % 3, "CATEGORY", i % 3 + 1, "com.example.Class" + i, i, i + 10,
+                new String(message), 0x123456789abcL * i);
+    }
+
+    private static void assertBugs(BugStore store, int count, int messageLength)
+    {
+        assertEquals(count, store.size());
+        for (int i = count - 1; i >= 0; i--){
+            assertBug(store.get(i), i, messageLength);
+            assertEquals(0x123456789abcL * i, store.getFingerprint(i));
+            assertEquals("TYPE_" + i % 3, store.getType(i));
+            assertEquals("com.example.Class" + i, store.getClassName(i));
+            assertEquals(i % 3 + 1, store.getPriority(i));
+        }
+    }
+
+    private static void assertBug(ReportBug bug, int i, int messageLength)
+    {
+        ReportBug expected = createBug(i, messageLength);
+        assertEquals(expected.getType(), bug.getType());
+        assertEquals(expected.getCategory(), bug.getCategory());
+        assertEquals(expected.getPriority(), bug.getPriority());
+        assertEquals(expected.getClassName(), bug.getClassName());
+        assertEquals(expected.getStartLine(), bug.getStartLine());
+        assertEquals(expected.getEndLine(), bug.getEndLine());
+        assertEquals(expected.getMessage(), bug.getMessage());
+        assertEquals(expected.getFingerprint(), bug.getFingerprint());
+    }
+
+    private static int countSpillFiles()
+    {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith("findbugs-bugs") && name.endsWith(".tmp");
+            }
+        });
+        return names == null ? 0 : names.length;
+    }
+}
@@ -0,0 +1,140 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassFileInfoTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsNameSizeAndSourceFile()
+            throws Exception
+    {
+        File file = getClassFile(Fixture.class);
+        ClassFileInfo info = ClassFileInfo.read(file);
+        assertEquals(Fixture.class.getName(), info.getClassName());
+        assertEquals(file.length(), info.getSize());
+        assertEquals("ClassFileInfoTest.java", info.getSourceFile());
+        assertEquals(file, info.getFile());
+    }
+
+    @Test
+    public void readsReferencesAfterLongAndDoubleConstants()
+            throws Exception
+    {
+        ClassFileInfo info = ClassFileInfo.read(getClassFile(Fixture.class));
+        /*
+         * List and String only appear in the generic signature of a field, Thread in a field descriptor, and URI in
+         * the class constant of an array type. Fixture has long and double constants, which take two constant pool
+         * entries, so the references are only found if those are skipped correctly.
+         */
+        assertTrue(info.getReferences().contains("java.util.List"));
+        assertTrue(info.getReferences().contains("java.lang.String"));
+        assertTrue(info.getReferences().contains("java.lang.Thread"));
+        assertTrue(info.getReferences().contains("java.net.URI"));
+        assertTrue(info.getReferences().contains("java.lang.Object"));
+        assertFalse(info.getReferences().contains(Fixture.class.getName()));
+    }
+
+    @Test
+    public void digestDependsOnContents()
+            throws Exception
+    {
+        File file = getClassFile(Fixture.class);
+        ClassFileInfo same = ClassFileInfo.read(file);
+        assertEquals(same.getDigest(), ClassFileInfo.read(file).getDigest());
+
+        byte[] contents = readFile(file);
+        byte[] changed = new byte[contents.length + 1];
+        System.arraycopy(contents, 0, changed, 0, contents.length);
+        ClassFileInfo other = ClassFileInfo.read(file, changed);
+        assertEquals(same.getClassName(), other.getClassName());
+        assertFalse(same.getDigest().equals(other.getDigest()));
+    }
+
+    @Test
+    public void rejectsFilesWhichAreNotClassFiles()
+            throws Exception
+    {
+        File file = folder.newFile("Invalid.class");
+        OutputStream out = new FileOutputStream(file);
+        try{
+            out.write("not a class file".getBytes("US-ASCII"));
+        }finally{
+            out.close();
+        }
+        try{
+            ClassFileInfo.read(file);
+            fail();
+        }catch (IOException e){
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not a class file"));
+        }
+    }
+
+    @Test
+    public void findsClassFilesRecursively()
+            throws Exception
+    {
+        File root = folder.newFolder("classes");
+        new File(root, "a/b").mkdirs();
+        new File(root, "A.class").createNewFile();
+        new File(root, "a/b/B.class").createNewFile();
+        new File(root, "a/b/readme.txt").createNewFile();
+        List<File> files = ClassFileInfo.findClassFiles(root);
+        assertEquals(2, files.size());
+        assertTrue(files.contains(new File(root, "A.class")));
+        assertTrue(files.contains(new File(root, "a/b/B.class")));
+    }
+
+    static File getClassFile(Class<?> type)
+            throws Exception
+    {
+        String name = type.getName();
+        return new File(type.getResource(name.substring(name.lastIndexOf('.') + 1) + ".class").toURI());
+    }
+
+    static byte[] readFile(File file)
+            throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try{
+            return ClassFileInfo.readFully(in, (int)file.length());
+        }finally{
+            in.close();
+        }
+    }
+
+    static class Fixture
+    {
+        private long count = 1234567890123L;
+        private double ratio = 0.125d;
+        private List<String> names;
+        private Thread[][] threads;
+
+        Object createArray()
+        {
+            return new URI[count > 0 ? 1 : 0][(int)ratio];
+        }
+
+        Fixture self()
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DetectorProfileTest
+{
+    private static final long CLASS_BYTES = 100000;
+    /**
+     * An analysis engine, which reports no bugs and is therefore never skipped.
+     */
+    private static final String ENGINE = "edu.umd.cs.findbugs.classfile.engine.ClassInfoAnalysisEngine";
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /**
+     * A costly detector which finds no bugs.
+     */
+    private String idle;
+    /**
+     * A costly detector which finds bugs.
+     */
+    private String finding;
+    private String findingType;
+    /**
+     * A cheap detector which finds no bugs.
+     */
+    private String cheap;
+
+    @Before
+    public void setUp()
+    {
+        /*
+         * The detectors which find no bugs must not report the type of the bug the finding detector finds.
+         */
+        List<Map.Entry<String, Set<String>>> detectors
+                = new ArrayList<Map.Entry<String, Set<String>>>(FindBugsRegistry.getReportedBugTypes().entrySet());
+        finding = detectors.get(0).getKey();
+        findingType = detectors.get(0).getValue().iterator().next();
+        for (Map.Entry<String, Set<String>> detector : detectors.subList(1, detectors.size())){
+            if (detector.getValue().contains(findingType)){
+                continue;
+            }
+            if (idle == null){
+                idle = detector.getKey();
+            }else if (cheap == null){
+                cheap = detector.getKey();
+            }
+        }
+    }
+
+    @Test
+    public void skipsNothingWithoutFullRun()
+    {
+        assertEquals(Collections.emptyList(), new DetectorProfile().getDetectorsToSkip(0, 0, 10, CLASS_BYTES));
+    }
+
+    @Test
+    public void skipsCostlyDetectorsWhichFoundNoBugs()
+    {
+        DetectorProfile profile = new DetectorProfile();
+        for (int i = 0; i < 3; i++){
+            update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        }
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 3, 10, CLASS_BYTES));
+        assertEquals(Collections.emptyList(), profile.getDetectorsToSkip(100, 4, 10, CLASS_BYTES));
+        assertEquals(2, profile.getDetectorsToSkip(1, 3, 10, CLASS_BYTES).size());
+    }
+
+    @Test
+    public void countsRunsWithoutBugsSinceLastBug()
+    {
+        DetectorProfile profile = new DetectorProfile();
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        update(profile, false, Collections.<String>emptyList(), CLASS_BYTES);
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 3, 10, CLASS_BYTES));
+        assertEquals(sorted(Arrays.asList(finding, idle)),
+                sorted(profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES)));
+    }
+
+    @Test
+    public void runsAllDetectorsAgainAfterRecheckRuns()
+    {
+        DetectorProfile profile = new DetectorProfile();
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        update(profile, true, Arrays.asList(idle), CLASS_BYTES);
+        update(profile, true, Arrays.asList(idle), CLASS_BYTES);
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 1, 3, CLASS_BYTES));
+        assertEquals(Collections.emptyList(), profile.getDetectorsToSkip(100, 1, 2, CLASS_BYTES));
+
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 1, 2, CLASS_BYTES));
+    }
+
+    @Test
+    public void runsAllDetectorsAgainWhenClassesChangeSize()
+    {
+        DetectorProfile profile = new DetectorProfile();
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        long limit = CLASS_BYTES * DetectorProfile.CHANGE_THRESHOLD / 100;
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES + limit));
+        assertEquals(Arrays.asList(idle), profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES - limit));
+        assertEquals(Collections.emptyList(), profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES + limit + 1));
+        assertEquals(Collections.emptyList(), profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES - limit - 1));
+
+        update(profile, true, Arrays.asList(idle), CLASS_BYTES * 2);
+        assertEquals(Collections.emptyList(), profile.getDetectorsToSkip(100, 1, 10, CLASS_BYTES * 2));
+    }
+
+    @Test
+    public void savesAndLoads()
+            throws Exception
+    {
+        DetectorProfile profile = new DetectorProfile();
+        update(profile, true, Collections.<String>emptyList(), CLASS_BYTES);
+        update(profile, true, Arrays.asList(idle), CLASS_BYTES);
+        File file = new File(folder.getRoot(), "profile/detectors.tsv");
+        profile.save(file);
+
+        DetectorProfile loaded = DetectorProfile.load(file);
+        assertEquals(Arrays.asList(idle), loaded.getDetectorsToSkip(100, 1, 2, CLASS_BYTES));
+        assertEquals(Collections.emptyList(), loaded.getDetectorsToSkip(100, 1, 1, CLASS_BYTES));
+        assertEquals(Collections.emptyList(), loaded.getDetectorsToSkip(100, 2, 2, CLASS_BYTES));
+
+        assertEquals(Collections.emptyList(), DetectorProfile.load(new File(folder.getRoot(), "missing.tsv"))
+                .getDetectorsToSkip(0, 0, 10, CLASS_BYTES));
+    }
+
+    @Test
+    public void rejectsInvalidLines()
+            throws Exception
+    {
+        File file = folder.newFile("detectors.tsv");
+        OutputStream out = new FileOutputStream(file);
+        try{
+            out.write("#state\t100\t0\nDetector\t1\tx\t1\t1\t0\n".getBytes("UTF-8"));
+        }finally{
+            out.close();
+        }
+        try{
+            DetectorProfile.load(file);
+            fail();
+        }catch (IOException e){
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid line in detector profile"));
+        }
+    }
+
+    /**
+     * Records a build in which the costly detectors took 500ms, the cheap detector 5ms and the analysis engine 500ms.
+     * @param bugs whether the finding detector found a bug.
+     */
+    private void update(DetectorProfile profile, boolean bugs, List<String> skipped, long classBytes)
+    {
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        for (String detector : Arrays.asList(idle, finding, ENGINE)){
+            if (!skipped.contains(detector)){
+                metrics.addDetectorTime(detector, 500, 1);
+            }
+        }
+        metrics.addDetectorTime(cheap, 5, 1);
+        ReportModel model = new ReportModel();
+        try{
+            if (bugs){
+                model.addBug(new ReportBug(findingType, "CORRECTNESS", 1, "com.example.Bugs", 1, 1, "Bug", 1));
+            }
+            profile.update(metrics, model, skipped, classBytes);
+        }finally{
+            model.close();
+        }
+    }
+
+    private static List<String> sorted(List<String> list)
+    {
+        List<String> sorted = new ArrayList<String>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
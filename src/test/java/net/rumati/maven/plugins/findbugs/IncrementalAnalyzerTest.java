@@ -0,0 +1,164 @@
+package net.rumati.maven.plugins.findbugs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalAnalyzerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File classDirectory;
+    private RecordingAnalyzer delegate;
+    private IncrementalAnalyzer analyzer;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        classDirectory = folder.newFolder("classes");
+        for (Class<?> type : Arrays.asList(Referenced.class, Changed.class, Dependent.class,
+                TransitiveDependent.class, Unrelated.class)){
+            copy(type);
+        }
+        delegate = new RecordingAnalyzer();
+        analyzer = new IncrementalAnalyzer(delegate, new File(folder.getRoot(), "cache.ser"), new SystemStreamLog());
+    }
+
+    @Test
+    public void analyzesAllClassesWithoutCache()
+            throws Exception
+    {
+        analyze();
+        assertEquals(names(Referenced.class, Changed.class, Dependent.class, TransitiveDependent.class,
+                Unrelated.class), delegate.analyzed);
+    }
+
+    @Test
+    public void skipsAnalysisWhenNothingChanged()
+            throws Exception
+    {
+        analyze();
+        delegate.analyzed = null;
+        analyze();
+        assertNull(delegate.analyzed);
+    }
+
+    @Test
+    public void analyzesDependentsAndReferencesOfChangedClass()
+            throws Exception
+    {
+        analyze();
+        File file = getCopy(Changed.class);
+        OutputStream out = new FileOutputStream(file, true);
+        try{
+            out.write(0);
+        }finally{
+            out.close();
+        }
+        analyze();
+        assertEquals(names(Referenced.class, Changed.class, Dependent.class, TransitiveDependent.class),
+                delegate.analyzed);
+    }
+
+    @Test
+    public void analyzesDependentsOfRemovedClass()
+            throws Exception
+    {
+        analyze();
+        getCopy(Referenced.class).delete();
+        analyze();
+        assertEquals(names(Changed.class, Dependent.class, TransitiveDependent.class), delegate.analyzed);
+    }
+
+    private void analyze()
+            throws AnalysisException
+    {
+        AnalysisRequest request = new AnalysisRequest();
+        request.getTargets().add(classDirectory);
+        analyzer.analyze(request).close();
+    }
+
+    private void copy(Class<?> type)
+            throws Exception
+    {
+        File file = getCopy(type);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try{
+            out.write(ClassFileInfoTest.readFile(ClassFileInfoTest.getClassFile(type)));
+        }finally{
+            out.close();
+        }
+    }
+
+    private File getCopy(Class<?> type)
+    {
+        return new File(classDirectory, type.getName().replace('.', '/') + ".class");
+    }
+
+    private static Set<String> names(Class<?>... types)
+    {
+        Set<String> names = new TreeSet<String>();
+        for (Class<?> type : types){
+            names.add(type.getName());
+        }
+        return names;
+    }
+
+    private class RecordingAnalyzer
+            implements Analyzer
+    {
+        private Set<String> analyzed;
+
+        public ReportModel analyze(AnalysisRequest request)
+                throws AnalysisException
+        {
+            assertEquals(classDirectory, request.getAuxClasspath().get(0));
+            analyzed = new TreeSet<String>();
+            try{
+                for (File target : request.getTargets()){
+                    analyzed.add(ClassFileInfo.read(target).getClassName());
+                }
+            }catch (IOException e){
+                throw new AnalysisException("Could not read " + request.getTargets(), e);
+            }
+            return new ReportModel();
+        }
+    }
+
+    static class Referenced
+    {
+    }
+
+    static class Changed
+    {
+        private Referenced referenced;
+    }
+
+    static class Dependent
+    {
+        private Changed changed;
+    }
+
+    static class TransitiveDependent
+    {
+        private Dependent dependent;
+    }
+
+    static class Unrelated
+    {
+    }
+}